@@ -0,0 +1,113 @@
+package bench;
+
+import sql608.Heap.LoserTree;
+import sql608.Heap.SortKey;
+import sql608.Heap.SortKeyHeap;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+merge of k sorted runs in memory, the way MultiPass.merge takes the next
+tuple: a binary heap of sort keys (SortKeyHeap, the run in each key) against
+the loser tree keyed by run (LoserTree)
+2^20 (INT, STR20) tuples split into k runs sorted on (k, v); each merge is
+timed on the last of 5 repetitions, the first ones warming up the JVM, and
+both must give the same order
+usage: java bench.MergeBench [tuples] [k...]
+*/
+public class MergeBench {
+    private static final int REPETITIONS = 5;
+
+    public static void main(String[] args) {
+        int numTuples = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int[] numRuns = {2, 9, 49, 255};
+        if (args.length > 1) {
+            numRuns = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) numRuns[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        SchemaManager schemaManager = new SchemaManager(new MainMemory(), new Disk());
+        ArrayList<String> fieldNames = new ArrayList<>(Arrays.asList("k", "v"));
+        Relation relation = schemaManager.createRelation("r", new Schema(fieldNames,
+                new ArrayList<>(Arrays.asList(FieldType.INT, FieldType.STR20))));
+        SortKey.Encoder encoder = new SortKey.Encoder(relation.getSchema(), fieldNames);
+        Random random = new Random(1);
+
+        for (int k : numRuns) {
+            int perRun = numTuples / k;
+            SortKey[][] runs = new SortKey[k][perRun];
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < perRun; j++) {
+                    Tuple tuple = relation.createTuple();
+                    tuple.setField("k", random.nextInt());
+                    tuple.setField("v", "s" + random.nextInt(1000));
+                    runs[i][j] = encoder.encode(tuple);
+                }
+                Arrays.sort(runs[i]);
+            }
+            long heapTime = 0;
+            long treeTime = 0;
+            boolean same = true;
+            for (int rep = 0; rep < REPETITIONS; rep++) {
+                long start = System.nanoTime();
+                SortKey[] byHeap = mergeByHeap(runs);
+                long middle = System.nanoTime();
+                SortKey[] byTree = mergeByLoserTree(runs);
+                heapTime = middle - start;
+                treeTime = System.nanoTime() - middle;
+                for (int i = 0; i < byHeap.length; i++) same &= byHeap[i].compareTo(byTree[i]) == 0;
+            }
+            System.out.println("k=" + k + ", " + perRun * k + " tuples: heap " + heapTime / 1000000
+                    + " ms, loser tree " + treeTime / 1000000 + " ms" + (same ? "" : ", DIFFERENT ORDER"));
+        }
+    }
+
+    /* the smallest key on top, equal keys by run */
+    private static SortKey[] mergeByHeap(SortKey[][] runs) {
+        SortKeyHeap heap = new SortKeyHeap((o1, o2) -> {
+            int cmp = o1.compareTo(o2);
+            return cmp != 0 ? cmp : Integer.compare(o1.run, o2.run);
+        });
+        int[] next = new int[runs.length];
+        int total = 0;
+        for (int i = 0; i < runs.length; i++) {
+            total += runs[i].length;
+            if (runs[i].length == 0) continue;
+            runs[i][0].run = i;
+            heap.offer(runs[i][next[i]++]);
+        }
+        SortKey[] merged = new SortKey[total];
+        int n = 0;
+        while (!heap.isEmpty()) {
+            SortKey key = heap.poll();
+            merged[n++] = key;
+            int run = key.run;
+            if (next[run] == runs[run].length) continue;
+            runs[run][next[run]].run = run;
+            heap.offer(runs[run][next[run]++]);
+        }
+        return merged;
+    }
+
+    private static SortKey[] mergeByLoserTree(SortKey[][] runs) {
+        SortKey[] heads = new SortKey[runs.length];
+        int[] next = new int[runs.length];
+        int total = 0;
+        for (int i = 0; i < runs.length; i++) {
+            total += runs[i].length;
+            if (runs[i].length > 0) heads[i] = runs[i][next[i]++];
+        }
+        LoserTree<SortKey> tree = new LoserTree<>(heads, SortKey::compareTo);
+        SortKey[] merged = new SortKey[total];
+        int n = 0;
+        int run;
+        while ((run = tree.getWinner()) >= 0) {
+            merged[n++] = tree.getWinnerItem();
+            tree.replaceWinner(next[run] < runs[run].length ? runs[run][next[run]++] : null);
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,108 @@
+package bench;
+
+import sql608.Heap.HeapFunc;
+import sql608.Heap.SortKey;
+import sql608.Heap.SortKeyHeap;
+import sql608.algorithm.OnePass;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+one-pass sort of a relation held in main memory: OnePass.sort, which counting
+sorts the leading small-range INT fields, against sorting every tuple through
+the heap of sort keys, as OnePass does when counting sort does not apply
+2^18 tuples (exam, homework in 0..100, sid, name) in 2^17 blocks of memory;
+each sort is timed on the best of 5 repetitions and both must give the
+same order
+usage: java bench.OnePassBench [blocks]
+*/
+public class OnePassBench {
+    private static final int REPETITIONS = 5;
+
+    public static void main(String[] args) {
+        int numBlocks = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 17;
+        Config.SIMULATED_DISK_LATENCY_ON = false;
+        Config.NUM_OF_BLOCKS_IN_MEMORY = numBlocks;
+        MainMemory mainMemory = new MainMemory();
+        SchemaManager schemaManager = new SchemaManager(mainMemory, new Disk());
+        Schema schema = new Schema(new ArrayList<>(Arrays.asList("exam", "homework", "sid", "name")),
+                new ArrayList<>(Arrays.asList(FieldType.INT, FieldType.INT, FieldType.INT, FieldType.STR20)));
+
+        for (String[] fields : new String[][]{{"exam"}, {"exam", "homework"}, {"exam", "name"}}) {
+            ArrayList<String> sortFields = new ArrayList<>(Arrays.asList(fields));
+            long onePassTime = Long.MAX_VALUE;
+            long heapTime = Long.MAX_VALUE;
+            boolean same = true;
+            int numTuples = 0;
+            for (int rep = 0; rep < REPETITIONS; rep++) {
+                Relation counted = load(schemaManager, "counted", schema, mainMemory);
+                Relation heaped = load(schemaManager, "heaped", schema, mainMemory);
+                numTuples = counted.getNumOfTuples();
+                long start = System.nanoTime();
+                OnePass.sort(counted, sortFields, mainMemory);
+                long middle = System.nanoTime();
+                sortByHeap(heaped, sortFields, mainMemory);
+                onePassTime = Math.min(onePassTime, middle - start);
+                heapTime = Math.min(heapTime, System.nanoTime() - middle);
+                same &= sameOrder(counted, heaped, sortFields, mainMemory);
+                schemaManager.deleteRelation("counted");
+                schemaManager.deleteRelation("heaped");
+            }
+            System.out.println(sortFields + ", " + numTuples + " tuples: heap " + heapTime / 1000000
+                    + " ms, OnePass " + onePassTime / 1000000 + " ms" + (same ? "" : ", DIFFERENT ORDER"));
+        }
+    }
+
+    /* a relation filling the main memory, the same tuples every time */
+    private static Relation load(SchemaManager schemaManager, String name, Schema schema, MainMemory mainMemory) {
+        Relation relation = schemaManager.createRelation(name, schema);
+        Random random = new Random(5);
+        for (int i = 0; i < mainMemory.getMemorySize(); i++) {
+            Block block = mainMemory.getBlock(i);
+            block.clear();
+            while (!block.isFull()) {
+                Tuple tuple = relation.createTuple();
+                tuple.setField(0, random.nextInt(101));
+                tuple.setField(1, random.nextInt(101));
+                tuple.setField(2, random.nextInt());
+                tuple.setField(3, "s" + random.nextInt(1000));
+                block.appendTuple(tuple);
+            }
+        }
+        relation.setBlocks(0, 0, mainMemory.getMemorySize());
+        return relation;
+    }
+
+    /* the heap path of OnePass.sort for every sort */
+    private static void sortByHeap(Relation relation, ArrayList<String> sortFields, MainMemory mainMemory) {
+        int numBlocks = relation.getNumOfBlocks();
+        relation.getBlocks(0, 0, numBlocks);
+        SortKeyHeap heap = new SortKeyHeap(SortKey::compareTo);
+        HeapFunc.offer(heap, new SortKey.Encoder(relation.getSchema(), sortFields), mainMemory);
+        ArrayList<Tuple> sorted = new ArrayList<>();
+        while (!heap.isEmpty()) sorted.add(heap.poll().tuple);
+        for (int i = 0; i < numBlocks; i++) mainMemory.getBlock(i).clear();
+        int tuplesPerBlock = relation.getSchema().getTuplesPerBlock();
+        for (int i = 0; i < sorted.size(); i++) mainMemory.getBlock(i / tuplesPerBlock).appendTuple(sorted.get(i));
+        relation.setBlocks(0, 0, numBlocks);
+    }
+
+    /* the relations are equal on the sort fields tuple by tuple */
+    private static boolean sameOrder(Relation r1, Relation r2, ArrayList<String> sortFields,
+                                     MainMemory mainMemory) {
+        SortKey.Encoder encoder = new SortKey.Encoder(r1.getSchema(), sortFields);
+        ArrayList<SortKey> keys = new ArrayList<>();
+        r1.getBlocks(0, 0, r1.getNumOfBlocks());
+        for (Tuple tuple : mainMemory.getTuples(0, r1.getNumOfBlocks())) keys.add(encoder.encode(tuple));
+        r2.getBlocks(0, 0, r2.getNumOfBlocks());
+        ArrayList<Tuple> tuples = mainMemory.getTuples(0, r2.getNumOfBlocks());
+        if (tuples.size() != keys.size()) return false;
+        for (int i = 0; i < keys.size(); i++) {
+            if (keys.get(i).compareTo(encoder.encode(tuples.get(i))) != 0) return false;
+        }
+        return true;
+    }
+}
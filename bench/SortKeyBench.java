@@ -0,0 +1,70 @@
+package bench;
+
+import sql608.Heap.SortKey;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/*
+sort of tuples in memory compared field by field (Tuple.compareField on the
+field offsets, as the sorts did before sort keys) against encoding a SortKey
+once per tuple and sorting the keys
+2^20 (INT, STR20) tuples sorted on (k, v) then on (v, k); each sort is timed
+on the last of 5 repetitions, the first ones warming up the JVM, and both
+must give the same order
+usage: java bench.SortKeyBench [tuples]
+*/
+public class SortKeyBench {
+    private static final int REPETITIONS = 5;
+
+    public static void main(String[] args) {
+        int numTuples = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+
+        SchemaManager schemaManager = new SchemaManager(new MainMemory(), new Disk());
+        Relation relation = schemaManager.createRelation("r", new Schema(
+                new ArrayList<>(Arrays.asList("k", "v")),
+                new ArrayList<>(Arrays.asList(FieldType.INT, FieldType.STR20))));
+        Schema schema = relation.getSchema();
+        Random random = new Random(1);
+        Tuple[] tuples = new Tuple[numTuples];
+        for (int i = 0; i < numTuples; i++) {
+            tuples[i] = relation.createTuple();
+            tuples[i].setField("k", random.nextInt(1000));
+            tuples[i].setField("v", "student" + random.nextInt(100000));
+        }
+
+        for (String[] fields : new String[][]{{"k", "v"}, {"v", "k"}}) {
+            ArrayList<String> sortFields = new ArrayList<>(Arrays.asList(fields));
+            int[] offsets = new int[fields.length];
+            for (int i = 0; i < fields.length; i++) offsets[i] = schema.getFieldOffset(fields[i]);
+            Comparator<Tuple> byField = (t1, t2) -> {
+                for (int offset : offsets) {
+                    int cmp = t1.compareField(offset, t2, offset);
+                    if (cmp != 0) return cmp;
+                }
+                return 0;
+            };
+            long fieldTime = 0;
+            long keyTime = 0;
+            boolean same = true;
+            for (int rep = 0; rep < REPETITIONS; rep++) {
+                long start = System.nanoTime();
+                Tuple[] sorted = tuples.clone();
+                Arrays.sort(sorted, byField);
+                long middle = System.nanoTime();
+                SortKey.Encoder encoder = new SortKey.Encoder(schema, sortFields);
+                SortKey[] keys = new SortKey[numTuples];
+                for (int i = 0; i < numTuples; i++) keys[i] = encoder.encode(tuples[i]);
+                Arrays.sort(keys);
+                fieldTime = middle - start;
+                keyTime = System.nanoTime() - middle;
+                for (int i = 0; i < numTuples; i++) same &= byField.compare(sorted[i], keys[i].tuple) == 0;
+            }
+            System.out.println(sortFields + ", " + numTuples + " tuples: compareField " + fieldTime / 1000000
+                    + " ms, encode + sort on keys " + keyTime / 1000000 + " ms" + (same ? "" : ", DIFFERENT ORDER"));
+        }
+    }
+}
@@ -2,12 +2,21 @@ package sql608;
 
 
 import sql608.algorithm.*;
+import sql608.buffer.BufferPool;
+import sql608.buffer.FreeSpaceMap;
+import sql608.buffer.SequentialScan;
 import sql608.helper.*;
+import sql608.index.Index;
+import sql608.index.IndexManager;
+import sql608.operator.Aggregates;
+import sql608.operator.Operator;
+import sql608.operator.Planner;
 import sql608.parse.Parser;
 import sql608.parse.ParserContainer;
 import storageManager.*;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
@@ -15,10 +24,11 @@ import java.util.*;
 /*
 physical implementation for sql
 use expressionTree structure to deal with the WHERE clause
-use Heap to deal with the ORDER BY and DISTINCT
-optimize the selection
-implement natural join with two pass merge sort
-optimize join order
+use Heap to deal with the ORDER BY, hashing with GROUP BY and DISTINCT
+stream multiple-table queries through an operator tree:
+selections pushed down, nested-loop joins, join order by estimated I/O
+cache disk blocks between statements in a buffer pool
+look up B+tree and hash indexes for the WHERE conditions of SELECT and DELETE
 */
 
 public class Executor {
@@ -26,18 +36,36 @@ public class Executor {
     public Disk disk;
     public MainMemory mainMemory;
     public SchemaManager schemaManager;
-
-    Executor() {
+    public BufferPool bufferPool;
+    public FreeSpaceMap freeSpaceMap;
+    public IndexManager indexManager;
+    /* tuples appended by bulkInsert and their positions, for the indexes once the cursor is closed */
+    private ArrayList<Tuple> appendedTuples = new ArrayList<>();
+    private ArrayList<Integer> appendedPositions = new ArrayList<>();
+
+    Executor() throws IOException {
         parser = new Parser();
         mainMemory = new MainMemory();
-        disk = new Disk();
+        /* keep the relations in files when a data directory is given */
+        if (Config.DISK_DIRECTORY == null) disk = new Disk();
+        else disk = new MappedDisk(new File(Config.DISK_DIRECTORY));
         schemaManager = new SchemaManager(mainMemory, disk);
+        bufferPool = new BufferPool(mainMemory);
+        freeSpaceMap = new FreeSpaceMap();
+        indexManager = new IndexManager(schemaManager, bufferPool, mainMemory);
         disk.resetDiskIOs();
         disk.resetDiskTimer();
     }
 
-    /* clear all blocks of Main Memory */
+    /* flush the disk before exit */
+    void close() {
+        bufferPool.flushAll();
+        disk.close();
+    }
+
+    /* clear all blocks of Main Memory, the buffer pool gives up its cached blocks first */
     private void clearMainMemory() {
+        bufferPool.evictAll();
         int numberOfBlocks = mainMemory.getMemorySize();
         for (int i = 0; i < numberOfBlocks; i++) {
             mainMemory.getBlock(i).clear();
@@ -46,6 +74,7 @@ public class Executor {
 
     void exec(String sql) {
         String action = sql.trim().toLowerCase().split("[\\s]+")[0];
+        bufferPool.resetCounts();
         try {
             switch (action) {
                 case "create":
@@ -57,6 +86,12 @@ public class Executor {
                 case "insert":
                     this.insertQuery(sql);
                     break;
+                case "load":
+                    this.loadQuery(sql);
+                    break;
+                case "vacuum":
+                    this.vacuumQuery(sql);
+                    break;
                 case "delete":
                     this.deleteQuery(sql);
                     break;
@@ -74,9 +109,22 @@ public class Executor {
         } catch (Exception e) {
             System.out.println("Exception: Debug Required");
         }
+        /* the reports of a statement without disk I/Os printed */
+        Report.print();
+        /* the disk is up to date after every statement */
+        bufferPool.flushAll();
         System.out.println("-------------------------------------------------------");
     }
 
+    /* the blocks the statement found cached in the buffer pool */
+    private void printBufferHits() {
+        long hits = bufferPool.getHits();
+        long pins = hits + bufferPool.getMisses();
+        if (pins == 0) return;
+        System.out.println("Buffer pool hits: " + hits + " of " + pins + " blocks ("
+                + Math.round(1000.0 * hits / pins) / 10.0 + "%)");
+    }
+
     private void executeFile(String file_name) throws Exception {
         try (BufferedReader br = new BufferedReader(new FileReader(file_name))) {
             String line;
@@ -90,14 +138,67 @@ public class Executor {
     }
 
     private void createQuery(String sql) throws Exception {
+        if (sql.trim().toLowerCase().split("[\\s]+")[1].equals("index")) {
+            createIndex(sql);
+            return;
+        }
         TableContainer<String, ArrayList<String>, ArrayList<FieldType>> tableContainer = parser.parseCreate(sql);
         String tableName = tableContainer.tableName;
         Schema schema = new Schema(tableContainer.fieldList, tableContainer.fieldType);
         schemaManager.createRelation(tableName, schema);
     }
 
+    /*
+    CREATE INDEX idx ON table (field) [USING HASH]: a B+tree, or a linear hash index, on the field,
+    built from the sorted entries; report its shape and the cost of building it
+    */
+    private void createIndex(String sql) {
+        double startTime = System.currentTimeMillis();
+        long startDiskIO = disk.getDiskIOs();
+
+        TableContainer<String, String, String> indexContainer = parser.parseCreateIndex(sql);
+        if (indexContainer == null) {
+            System.out.println("Invalid query, try again");
+            return;
+        }
+        Relation relation = schemaManager.getRelation(indexContainer.tableName);
+        if (relation == null) return;
+        Index index = indexManager.create(indexContainer.fieldType, relation, indexContainer.fieldList,
+                parser.isHashIndex(sql));
+        if (index == null) return;
+
+        System.out.println("Index " + index.getName() + " on " + indexContainer.tableName + "("
+                + index.getFieldName() + "): " + index.describe());
+        double stopTime = System.currentTimeMillis();
+        long stopDiskIO = disk.getDiskIOs();
+        double timeSpent = (stopTime - startTime)/1000;
+        long diskIOTaken = stopDiskIO - startDiskIO;
+        Report.print();
+        System.out.println("Execution time: " + timeSpent + "seconds");
+        System.out.println("Disk IO taken: " + diskIOTaken);
+        printBufferHits();
+        System.out.println();
+    }
+
+    /* DROP TABLE drops the indexes of the table too, DROP INDEX a single index */
     private void dropQuery(String sql) {
-        schemaManager.deleteRelation(parser.parseDrop(sql));
+        String name = parser.parseDrop(sql);
+        if (sql.trim().toLowerCase().split("[\\s]+")[1].equals("index")) {
+            if (!indexManager.drop(name)) System.out.println("Invalid query, try again");
+            return;
+        }
+        if (schemaManager.relationExists(name)) indexManager.dropAll(schemaManager.getRelation(name));
+        deleteRelation(name);
+    }
+
+    /* drop the relation together with its blocks cached in the buffer pool */
+    private void deleteRelation(String relationName) {
+        if (schemaManager.relationExists(relationName)) {
+            Relation relation = schemaManager.getRelation(relationName);
+            bufferPool.discard(relation);
+            freeSpaceMap.remove(relation);
+        }
+        schemaManager.deleteRelation(relationName);
     }
 
     private void insertQuery(String sql) {
@@ -114,8 +215,10 @@ public class Executor {
         long stopDiskIO = disk.getDiskIOs();
         double timeSpent = (stopTime - startTime)/1000;
         long diskIOTaken = stopDiskIO - startDiskIO;
+        Report.print();
         System.out.println("Execution time: " + timeSpent + "seconds");
         System.out.println("Disk IO taken: " + diskIOTaken);
+        printBufferHits();
         System.out.println();
     }
 
@@ -126,15 +229,18 @@ public class Executor {
 
         ParserContainer parserContainer = parser.parseSelect(sql);
 
-        if (parserContainer.getTables() == null) selectFromSingleTable(parserContainer);
+        if (parserContainer.isGroup() || parserContainer.isDistinct()) selectHashed(parserContainer);
+        else if (parserContainer.getTables() == null) selectFromSingleTable(parserContainer);
         else selectFromMultipleTables(parserContainer);
 
         double stopTime = System.currentTimeMillis();
         long stopDiskIO = disk.getDiskIOs();
         double timeSpent = (stopTime - startTime)/1000;
         long diskIOTaken = stopDiskIO - startDiskIO;
+        Report.print();
         System.out.println("Execution time: " + timeSpent + "seconds");
         System.out.println("Disk IO taken: " + diskIOTaken);
+        printBufferHits();
         System.out.println();
     }
 
@@ -143,59 +249,171 @@ public class Executor {
         String tableName = parserContainer.getTable();
         String whereCondition = parserContainer.getConditions();
         Relation relation = schemaManager.getRelation(tableName);
-        int numOfMemoryBlocks = mainMemory.getMemorySize();
-        int numOfRelationBlocks = relation.getNumOfBlocks();
-        int curPofRelationBlocks = 0;
-        /* read into memory and invalidate */
-        while (numOfRelationBlocks > 0) {
-            // remaining unprocessed relation blocks may be smaller than 10
-            int numberOfBlocksToMemory = Math.min(numOfMemoryBlocks, numOfRelationBlocks);
-            // read into memory
-            relation.getBlocks(curPofRelationBlocks, 0, numberOfBlocksToMemory);
-            // start processing block by block in main memory
-            for (int i = 0; i < numberOfBlocksToMemory; i++) {
-                Block block = mainMemory.getBlock(i);
-                if (block.getNumTuples() == 0) continue;
-                // returns all the Tuples inside this block
-                ArrayList<Tuple> tuples = block.getTuples();
-                if (parserContainer.isWhere()) {
-                    for (int j = 0; j < tuples.size(); j++) {
-                        Tuple tuple = tuples.get(j);
-                        ExpressionTree expressionTree =
-                                new ExpressionTree(whereCondition, parserContainer.getTable());
-                        if (ExpressionTree.checkCondition(tuple, expressionTree.getRoot()))
-                            block.invalidateTuple(j);
+        Predicate where = PredicateCompiler.compile(whereCondition, relation.getSchema());
+        /* only the blocks an index finds may hold tuples to delete */
+        int[] blocks = parserContainer.isWhere() ? indexManager.lookup(relation, whereCondition) : null;
+        int numOfRelationBlocks = bufferPool.getNumOfBlocks(relation);
+        if (blocks == null) {
+            blocks = new int[numOfRelationBlocks];
+            for (int i = 0; i < numOfRelationBlocks; i++) blocks[i] = i;
+        }
+        int tuplesPerBlock = relation.getSchema().getTuplesPerBlock();
+        /* pin block by block and invalidate, only modified blocks are written back */
+        for (int k = 0; k < blocks.length; k++) {
+            int i = blocks[k];
+            // read the following blocks in one run if they are not cached
+            int run = 1;
+            while (k + run < blocks.length && blocks[k + run] == i + run) run++;
+            bufferPool.readAhead(relation, i, run);
+            int frame = bufferPool.pin(relation, i);
+            if (frame < 0) return;
+            Block block = mainMemory.getBlock(frame);
+            if (block.getNumTuples() == 0) {
+                bufferPool.unpin(frame, false);
+                continue;
+            }
+            boolean modified = false;
+            // returns all the Tuples inside this block
+            ArrayList<Tuple> tuples = block.getTuples();
+            if (parserContainer.isWhere()) {
+                for (int j = 0; j < tuples.size(); j++) {
+                    Tuple tuple = tuples.get(j);
+                    if (tuple.isNull()) continue;
+                    if (where.test(tuple)) {
+                        block.invalidateTuple(j);
+                        indexManager.delete(relation, tuple, i * tuplesPerBlock + j);
+                        modified = true;
                     }
-                } else {
-                    block.invalidateTuples();
                 }
+            } else {
+                block.invalidateTuples();
+                modified = true;
             }
-            //reads several blocks from the memory and stores on the disk
-            relation.setBlocks(curPofRelationBlocks, 0, numberOfBlocksToMemory);
-            // minus processed portion
-            numOfRelationBlocks -= numberOfBlocksToMemory;
-            // log current progress by this pointer
-            curPofRelationBlocks += numberOfBlocksToMemory;
+            /* later inserts fill the holes */
+            if (modified) freeSpaceMap.add(relation, i);
+            bufferPool.unpin(frame, modified);
         }
+        /* no tuple left, the indexes are built again empty */
+        if (!parserContainer.isWhere()) indexManager.invalidate(relation);
+        bufferPool.flush(relation);
         System.out.println("Number of blocks of " + tableName + ": " + relation.getNumOfBlocks());
         System.out.println("Number of twoTuples of " + tableName + ": " + relation.getNumOfTuples());
         /*
-        delete possible hole, it's too slow, will do it while select
-        sort(relation, relation.getSchema().getFieldName(0));
+        holes are left in place and reused by later inserts,
+        compact the relation once too much of it is free
         */
+        if (Config.AUTO_VACUUM_RATIO > 0 && relation.getNumOfBlocks() > 0) {
+            int numSlots = relation.getNumOfBlocks() * relation.createTuple().getTuplesPerBlock();
+            double freeRatio = 1 - (double) relation.getNumOfTuples() / numSlots;
+            if (freeRatio >= Config.AUTO_VACUUM_RATIO) vacuum(tableName);
+        }
     }
 
-    private void insertQueryWithValues(String sql) {
+    private void vacuumQuery(String sql) {
+        String tableName = parser.parseVacuum(sql);
+        if (tableName == null) {
+            System.out.println("Invalid query, try again");
+            return;
+        }
+        vacuum(tableName);
+    }
+
+    /* rewrite the relation into densely packed blocks, report the blocks reclaimed and the cost */
+    private void vacuum(String tableName) {
+        double startTime = System.currentTimeMillis();
+        long startDiskIO = disk.getDiskIOs();
+
+        Relation relation = schemaManager.getRelation(tableName);
+        if (relation == null) return;
+        int numBlocksBefore = relation.getNumOfBlocks();
+        /* compaction uses the whole main memory, and no hole is left afterwards */
         clearMainMemory();
-        TableContainer<String, ArrayList<String>, ArrayList<Field>> tableContainer = parser.parseInsertOneTuple(sql, null);
+        freeSpaceMap.remove(relation);
+        indexManager.invalidate(relation);
+        int reclaimed = Vacuum.relation(relation, mainMemory);
+
+        System.out.println("Number of blocks of " + tableName + " before vacuum: " + numBlocksBefore);
+        System.out.println("Number of blocks reclaimed: " + reclaimed);
+        System.out.println("Number of blocks of " + tableName + ": " + relation.getNumOfBlocks());
+        double stopTime = System.currentTimeMillis();
+        long stopDiskIO = disk.getDiskIOs();
+        double timeSpent = (stopTime - startTime)/1000;
+        long diskIOTaken = stopDiskIO - startDiskIO;
+        Report.print();
+        System.out.println("Execution time: " + timeSpent + "seconds");
+        System.out.println("Disk IO taken: " + diskIOTaken);
+        printBufferHits();
+        System.out.println();
+    }
+
+    private void insertQueryWithValues(String sql) {
+        TableContainer<String, ArrayList<String>, ArrayList<ArrayList<Field>>> tableContainer =
+                parser.parseInsertTuples(sql, null);
         String relationName = tableContainer.tableName;
         Relation relation = schemaManager.getRelation(relationName);
         if (relation == null) { return; }
-        tableContainer = parser.parseInsertOneTuple(sql, relation);
+        tableContainer = parser.parseInsertTuples(sql, relation);
+        if (tableContainer == null) {
+            System.out.println("Invalid query, try again");
+            return;
+        }
+        ArrayList<String> filedNames = tableContainer.fieldList;
+        ArrayList<ArrayList<Field>> rows = tableContainer.fieldType;
+        if (rows.size() == 1) {
+            /* a single row goes through the buffer pool, the final block stays cached */
+            Tuple tuple = createTuple(relation, filedNames, rows.get(0));
+            int position = Write.tuple(tuple, relation, bufferPool, freeSpaceMap, mainMemory);
+            indexManager.insert(relation, tuple, position);
+        } else {
+            AppendCursor cursor = null;
+            for (ArrayList<Field> fields : rows)
+                cursor = bulkInsert(createTuple(relation, filedNames, fields), relation, cursor);
+            closeBulkInsert(relation, cursor);
+        }
+        bufferPool.flush(relation);
+        System.out.println("Number of blocks of " + relationName + ": " + relation.getNumOfBlocks());
+        System.out.println("Number of twoTuples of " + relationName + ": " + relation.getNumOfTuples());
+    }
+
+    /*
+    insert one of many tuples: fill the holes of the relation through the buffer pool first,
+    then append the rest through a cursor that fills the whole main memory
+    and writes it block by block
+    the indexes take the tuples put in holes at once, the appended ones when the cursor
+    is closed, in the order of their keys
+    pass null as cursor for the first tuple, then the returned one; close it with closeBulkInsert
+    */
+    private AppendCursor bulkInsert(Tuple tuple, Relation relation, AppendCursor cursor) {
+        if (cursor == null) {
+            int position = Write.toHole(tuple, relation, bufferPool, freeSpaceMap, mainMemory);
+            if (position >= 0) {
+                indexManager.insert(relation, tuple, position);
+                return null;
+            }
+            clearMainMemory();
+            cursor = new AppendCursor(relation, mainMemory, 0, mainMemory.getMemorySize());
+        }
+        int position = cursor.append(tuple);
+        /* the indexes need the buffer pool, they take the tuples once the cursor hands the memory back */
+        if (indexManager.hasFreshIndex(relation)) {
+            appendedTuples.add(tuple);
+            appendedPositions.add(position);
+        }
+        return cursor;
+    }
+
+    /* close the cursor of bulkInsert, null if none, then the indexes take the tuples it appended */
+    private void closeBulkInsert(Relation relation, AppendCursor cursor) {
+        if (cursor != null) cursor.close();
+        indexManager.insert(relation, appendedTuples, appendedPositions);
+        appendedTuples.clear();
+        appendedPositions.clear();
+    }
+
+    /* creates a tuple of the relation holding the given values */
+    private Tuple createTuple(Relation relation, ArrayList<String> filedNames, ArrayList<Field> fields) {
         // creates an empty tuple of Schema
         Tuple tuple = relation.createTuple();
-        ArrayList<String> filedNames = tableContainer.fieldList;
-        ArrayList<Field> fields = tableContainer.fieldType;
         // loop over all fields within Schema
         for (int i = 0; i < filedNames.size(); i++) {
             Field field = fields.get(i);
@@ -210,9 +428,70 @@ public class Executor {
                 }
             }
         }
-        Write.tuple(tuple, relation, mainMemory, 5);
+        return tuple;
+    }
+
+    /*
+    LOAD DATA FROM 'file.csv' INTO table
+    stream the file line by line, the tuples fill the whole main memory
+    and reach the disk a full run of blocks at a time
+    */
+    private void loadQuery(String sql) {
+        double startTime = System.currentTimeMillis();
+        long startDiskIO = disk.getDiskIOs();
+
+        ValueContainer<String, String> valueContainer = parser.parseLoad(sql);
+        if (valueContainer == null) {
+            System.out.println("Invalid query, try again");
+            return;
+        }
+        String fileName = valueContainer.nodeName;
+        String relationName = valueContainer.condition;
+        Relation relation = schemaManager.getRelation(relationName);
+        if (relation == null) return;
+        ArrayList<String> fieldNames = relation.getSchema().getFieldNames();
+
+        /* a bulk load builds the indexes again when they are used next, cheaper than entry by entry */
+        indexManager.invalidate(relation);
+        AppendCursor cursor = null;
+        int numOfRows = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) continue;
+                ArrayList<Field> fields;
+                try {
+                    fields = parser.parseCsvLine(line, relation);
+                } catch (NumberFormatException e) {
+                    fields = null;
+                }
+                if (fields == null) {
+                    System.out.println("Skip invalid line " + lineNumber + ": " + line);
+                    continue;
+                }
+                cursor = bulkInsert(createTuple(relation, fieldNames, fields), relation, cursor);
+                numOfRows++;
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+        closeBulkInsert(relation, cursor);
+        bufferPool.flush(relation);
+
+        System.out.println(numOfRows + " rows loaded");
         System.out.println("Number of blocks of " + relationName + ": " + relation.getNumOfBlocks());
         System.out.println("Number of twoTuples of " + relationName + ": " + relation.getNumOfTuples());
+        double stopTime = System.currentTimeMillis();
+        long stopDiskIO = disk.getDiskIOs();
+        double timeSpent = (stopTime - startTime)/1000;
+        long diskIOTaken = stopDiskIO - startDiskIO;
+        Report.print();
+        System.out.println("Execution time: " + timeSpent + "seconds");
+        System.out.println("Disk IO taken: " + diskIOTaken);
+        printBufferHits();
+        System.out.println();
     }
 
     /* get rows in Select statement and insert into the table */
@@ -237,36 +516,42 @@ public class Executor {
             selectFieldNamesList = selectAttributes;
         }
 
-        clearMainMemory();
+        /* field offsets on both sides, resolved once for the whole statement */
+        int[] selectOffsets = new int[selectFieldNamesList.size()];
+        int[] insertOffsets = new int[selectFieldNamesList.size()];
+        for (int j = 0; j < selectFieldNamesList.size(); j++) {
+            selectOffsets[j] = fromRelation.getSchema().getFieldOffset(selectFieldNamesList.get(j));
+            insertOffsets[j] = insertRelation.getSchema().getFieldOffset(selectFieldNamesList.get(j));
+        }
+
+        /*
+        holes are filled only when inserting into another table,
+        holes in the table being read could be read again
+        */
+        FreeSpaceMap freeSpace = insertRelation == fromRelation ? null : freeSpaceMap;
         /* Read in tuple from Select From part and append it to insert table */
         /* query in the "test.txt" is without DISTINCT and ORDER BY */
-        int numRelationBlocks = fromRelation.getNumOfBlocks();
         if (!selectParser.isDistinct() && !selectParser.isOrder()) {
-            for (int i = 0; i < numRelationBlocks; i++) {
-                mainMemory.getBlock(0).clear();
-                /* read a block of Select From table, get tuples from it */
-                fromRelation.getBlock(i, 0);
-                Block block = mainMemory.getBlock(0);
-                if (block.getNumTuples() == 0) continue;
-                for (Tuple tuple : block.getTuples()) {
+            String whereCondition = selectParser.isWhere() ? selectParser.getConditions() : null;
+            Predicate where = PredicateCompiler.compile(whereCondition, fromRelation.getSchema());
+            /* read the blocks of Select From table through the pool, get tuples from them */
+            SequentialScan scan = new SequentialScan(bufferPool, fromRelation, mainMemory);
+            ArrayList<Tuple> tuples;
+            while ((tuples = scan.nextBlock()) != null) {
+                for (Tuple tuple : tuples) {
+                    if (tuple.isNull()) continue;
                     /* check where condition */
-                    if (selectParser.isWhere()) {
-                        ExpressionTree expressionTree = new ExpressionTree(selectParser.getConditions(),
-                                selectParser.getTable());
-                        if (!ExpressionTree.checkCondition(tuple, expressionTree.getRoot())) {
-                            continue;
-                        }
-                    }
+                    if (!where.test(tuple)) continue;
                     /* creates an empty tuple of the Schema */
                     Tuple newTuple = insertRelation.createTuple();
-                    for (String fieldName : selectFieldNamesList) {
-                        Field curField = tuple.getField(fieldName);
-                        if (curField.type == FieldType.INT) newTuple.setField(fieldName, curField.integer);
-                        else newTuple.setField(fieldName, curField.str);
+                    for (int j = 0; j < selectFieldNamesList.size(); j++) {
+                        newTuple.copyField(insertOffsets[j], tuple, selectOffsets[j]);
                     }
-                    Write.tuple(newTuple, insertRelation, mainMemory, 9);
+                    int position = Write.tuple(newTuple, insertRelation, bufferPool, freeSpace, mainMemory);
+                    indexManager.insert(insertRelation, newTuple, position);
                 }
             }
+            bufferPool.flush(insertRelation);
             return;
         }
 
@@ -289,363 +574,67 @@ public class Executor {
             fieldNames = relation.getSchema().getFieldNames();
         } else fieldNames = attributes;
 
-        /* if no distinct or order by condition, just print result */
-        if (!parserContainer.isDistinct() && !parserContainer.isOrder()) {
-            Show.tuples(parserContainer, relation, fieldNames, mainMemory);
+        /* if no order by condition, just print result, from the blocks an index finds if any */
+        if (!parserContainer.isOrder()) {
+            int[] blocks = parserContainer.isWhere() ? indexManager.lookup(relation, parserContainer.getConditions())
+                    : null;
+            Show.tuples(parserContainer, relation, fieldNames, blocks, bufferPool, mainMemory);
             return;
         }
 
-        int numRelationBlocks = relation.getNumOfBlocks();
-        int numMemBlocks = mainMemory.getMemorySize();
-        /* relation can fit into main memory, use one pass algorithm */
-        if (numRelationBlocks <= numMemBlocks) {
-            if (parserContainer.isOrder()) {
-                ArrayList<String> sortFields = new ArrayList<>();
-                String orderAttr = parserContainer.getOrderAttribute();
-                sortFields.add(orderAttr);
-                for (String field : fieldNames) if (!field.equals(orderAttr)) sortFields.add(field);
-                OnePass.sort(relation, sortFields, mainMemory);
-            }
-            else OnePass.sort(relation, fieldNames, mainMemory);
-            Show.tuples(parserContainer, relation, fieldNames, mainMemory);
-        } else {
-        /* the table cannot fit into main memory, use two pass algorithm */
-            if (parserContainer.isOrder()) {
-            /*
-            check ORDER field
-            sortField should start with the ORDER BY attr (For Heap Comparator)
-            then the other attributes
-            */
-                ArrayList<String> sortFields = new ArrayList<>();
-                String orderAttr = parserContainer.getOrderAttribute();
-                sortFields.add(orderAttr);
-                for (String field : fieldNames) if (!field.equals(orderAttr)) sortFields.add(field);
-                TwoPass.sort(relation, sortFields, mainMemory);
-            } else TwoPass.sort(relation, fieldNames, mainMemory);
-
-            /* able to do DISTINCT (eliminate duplication) after sorting */
-            Show.tuples(parserContainer, relation, fieldNames, mainMemory);
-        }
-    }
-
-    private void selectFromMultipleTables(ParserContainer parserContainer) {
-        ExpressionTree expressionTree = new ExpressionTree(parserContainer.getConditions(), "");
+        /* sorting uses the whole main memory, and moves the tuples the indexes point to */
+        bufferPool.evictAll();
+        indexManager.invalidate(relation);
 
         /*
-        consider push down the row selection in the conditions
-        delete those satisfied conditions in the parser container
-        satisfied condition: e.g. course.homework = 100
-        and generate a new tempcourse table substitute original one
+        sortField should start with the ORDER BY attr (For Heap Comparator)
+        then the other attributes
         */
-        if (parserContainer.isWhere()) selectFirst(expressionTree, parserContainer);
-
-        ArrayList<String> attributes = parserContainer.getAttributes();
-        ArrayList<String> tableLists = parserContainer.getTables();  // reference
-
-        /*
-        command: SELECT DISTINCT table.attr FROM tables
-        distinct needs the sorting on the attr
-        from table.attrs get related tables for attrs
-        store tables and its corresponding field names start by attrs
-        */
-        Map<String, ArrayList<String>> tableToAttr = new HashMap<>();
-        if (parserContainer.isDistinct()) {
-            if (attributes.get(0).equals("*")) {
-                for (String table : tableLists) {
-                    tableToAttr.put(table, schemaManager.getRelation(table).getSchema().getFieldNames());
-                }
-            }
-            else {
-                /* split0: table | split1: attr ; get related tables from attr*/
-                for (String attr : attributes) {
-                    String[] split = attr.split("\\.");
-                    if (!tableToAttr.containsKey(split[0])) tableToAttr.put(split[0], new ArrayList<>());
-                    /* always start attr */
-                    tableToAttr.get(split[0]).add(split[1]);
-                }
-                /* for each related table add rest of attrs */
-                for (Map.Entry<String, ArrayList<String>> entry : tableToAttr.entrySet()) {
-                    for (String attr : schemaManager.getRelation(entry.getKey()).getSchema().getFieldNames())
-                    {
-                        if (!entry.getValue().contains(attr)) {
-                            entry.getValue().add(attr);
-                        }
-                    }
-                }
-            }
-        }
-
-        String joinedTableName;
-        if (parserContainer.isWhere()) {
-            /* First check if the Natural Join is feasible */
-            ExpressionTree expressionTree2 = new ExpressionTree(parserContainer.getConditions(), "");
-            ArrayList<ExpressionTreeNode> subNodes = ExpressionTree.getSubTreeNodes(expressionTree2).nodeName;
-
-            /*
-            check conditions satisfy natural join or not
-            e.g. course.sid = course2.sid
-            */
-            ArrayList<ExpressionTreeNode> normalNodes = new ArrayList<>();
-            ArrayList<ExpressionTreeNode> naturalJoinNodes = new ArrayList<>();
-            for (ExpressionTreeNode node : subNodes) {
-                if (isNaturalJoin(node)) naturalJoinNodes.add(node);
-                else normalNodes.add(node);
-            }
-            /*
-            do the Natural Join if there is satisfied condition node
-            return tmp joined table
-            natural joined table, without duplicate
-            */
-            // get undergoing tables (tmp) after select done first
-            ArrayList<String> newTableList = parserContainer.getTables();
-            HashSet<String> joinedTableSet = new HashSet<>();
-            for (ExpressionTreeNode naturalJoinNode : naturalJoinNodes) {
-                /* these names will not contain temp */
-                ArrayList<String> tableNames = getTableNames(naturalJoinNode);
-                if (tableNames.size() == 2) {
-                    String tableOne = tableNames.get(0);
-                    String tableTwo = tableNames.get(1);
-                    /* both tables have been joined */
-                    if (joinedTableSet.contains(tableOne) &&
-                            joinedTableSet.contains(tableTwo)) {
-                        normalNodes.add(naturalJoinNode);
-                        continue;
-                    }
-                    /* check if the table already been joined, if so, use the joined table */
-                    if (joinedTableSet.contains(tableOne)) {
-                        // table name can become rnaturalJoint
-                        for (String table : newTableList) {
-                            String[] tables = table.split("temp|naturalJoin");
-                            if (Arrays.asList(tables).contains(tableOne)) tableOne = table;
-                        }
-                    } else joinedTableSet.add(tableOne);
-                    if (joinedTableSet.contains(tableTwo)) {
-                        for (String newTable : newTableList) {
-                            String[] tables = newTable.split("temp|naturalJoin");
-                            if (Arrays.asList(tables).contains(tableTwo)) tableTwo = newTable;
-                        }
-                    } else joinedTableSet.add(tableTwo);
-                    /* if selection optimized before, use temp table */
-                    if (!parserContainer.getTables().contains(tableOne) &&
-                            parserContainer.getTables().contains("temp" + tableOne)) {
-                        tableOne = "temp" + tableOne;
-                    }
-                    if (!parserContainer.getTables().contains(tableTwo) &&
-                            parserContainer.getTables().contains("temp" + tableTwo)) {
-                        tableTwo = "temp" + tableTwo;
-                    }
-                    /* return a temporary table, delete old ones in tableList of parserContainer */
-                    String tableName = Natural.join(tableOne, tableTwo,
-                            naturalJoinNode.getString(naturalJoinNode), mainMemory, schemaManager);
-                    newTableList.remove(tableOne);  // r
-                    newTableList.remove(tableTwo);  // s
-                    newTableList.add(tableName);  // rnaturalJoins
-                }
-            }
-            /* store new temporary tables like r naturalJoin t naturalJoin s */
-            parserContainer.setTables(newTableList);
-            /* check if there is left table, if so, reset the condition in parserContainer */
-            if(normalNodes.size() == 0) {
-                parserContainer.setWhere(false);
-                parserContainer.setConditions(null);
-            } else {
-                ExpressionTreeNode remainConditions = mergeNodes(normalNodes);
-                parserContainer.setConditions(remainConditions.getString(remainConditions));
-            }
-
-            /* Cross Join */
-            joinedTableName = Join.crossJoinTables(tableLists, parserContainer.isDistinct(), tableToAttr,
-                    mainMemory, schemaManager);
-        }
-        else {
-            /* no WHERE do cross join directly */
-            joinedTableName = Join.crossJoinTables(tableLists, parserContainer.isDistinct(), tableToAttr,
-                    mainMemory, schemaManager);
-        }
-
-        /* Finish Join: now it comes down to single table case */
-        parserContainer.setTable(joinedTableName);
-        parserContainer.setTables(null);
+        ArrayList<String> sortFields = new ArrayList<>();
+        String orderAttr = parserContainer.getOrderAttribute();
+        sortFields.add(orderAttr);
+        for (String field : fieldNames) if (!field.equals(orderAttr)) sortFields.add(field);
+        /* relation can fit into main memory, use one pass algorithm, else the multi-pass merge sort */
+        if (relation.getNumOfBlocks() <= mainMemory.getMemorySize()) OnePass.sort(relation, sortFields, mainMemory);
+        else MultiPass.sort(relation, sortFields, mainMemory);
+        Show.tuples(parserContainer, relation, fieldNames, bufferPool, mainMemory);
+    }
 
-        /*
-        only when table is larger than main mem size
-        set distinct and do two pass sort before output
-        If using one-pass, distinct is already done after join
-        */
-        if (parserContainer.isDistinct()) {
-            parserContainer.setDistinct(false);
-            for (String table : tableLists) {
-                if (schemaManager.getRelation(table).getNumOfBlocks() > 10) {
-                    parserContainer.setDistinct(true);
-                    break;
-                }
+    /* GROUP BY, aggregates and DISTINCT go by hashing; a single table prints the head line once planned */
+    private void selectHashed(ParserContainer parserContainer) {
+        Planner planner = new Planner(schemaManager, bufferPool, mainMemory, indexManager);
+        Operator plan = planner.plan(parserContainer);
+        Relation relation = parserContainer.getTables() == null
+                ? schemaManager.getRelation(parserContainer.getTable()) : null;
+        if (relation != null) {
+            ArrayList<String> attributes = parserContainer.getAttributes();
+            if (attributes.get(0).equals("*")) attributes = relation.getSchema().getFieldNames();
+            for (String attribute : attributes) {
+                String head = attribute;
+                if (!Aggregates.isAggregate(head) && head.contains(".")) head = head.split("\\.")[1];
+                System.out.print(head + "\t");
             }
         }
-
-        selectFromSingleTable(parserContainer);
-        schemaManager.deleteRelation(joinedTableName);
-    }
-
-    /* Natural Join Condition: two tables and their selected fields are same */
-    private boolean isNaturalJoin(ExpressionTreeNode node) {
-        boolean twoTable = getTableNames(node).size() == 2;
-        boolean equals = node.getValue().equals("=");
-        if (!twoTable || !equals) return false;
-        String leftAttr = node.getLeft().getValue().split("\\.")[1];
-        String rightAttr = node.getRight().getValue().split("\\.")[1];
-        return leftAttr.equals(rightAttr);
+        run(planner, plan);
     }
 
     /*
-    Below is for doing the selection first which means
-    if there is condition like "exam = 100"
-    it will be executed before join
+    the planner streams the tuples through an operator tree:
+    scans with the selections pushed down, nested-loop joins, sort, output
     */
-    private void selectFirst(ExpressionTree expressionTree, ParserContainer parserContainer) {
-        // retrieve the expression tree nodes separated by AND
-        ArrayList<ExpressionTreeNode> subNodes = ExpressionTree.getSubTreeNodes(expressionTree).nodeName;
-        ArrayList<ExpressionTreeNode> nodeWithMultiTable = new ArrayList<>();
-        for (ExpressionTreeNode node : subNodes) {
-            // find those relation coupled with selection
-//            if (!node.getString(node).contains("|")) {
-                ArrayList<String> relevantTables = getTableNames(node);
-                if (relevantTables.size() > 1) nodeWithMultiTable.add(node);
-//            }
-        }
-        // may have several course.id = course2.id which should be left
-        ExpressionTreeNode mergeNode = mergeNodes(nodeWithMultiTable);
-        // TODO influence the Condition parentheses
-        String mergeCondition = mergeNode.getString(mergeNode).trim();
-        parserContainer.setConditions(mergeCondition);
-
-        ArrayList<String> tmpRelations = generateTempRelations(subNodes);
-
-        /* modify the tables name to tempTableName in parser container Tables */
-        for (String tmpName : tmpRelations) {
-            String originalName = tmpName.replace("temp", "");
-            for (int i = 0; i < parserContainer.getTables().size(); i++) {
-                if (parserContainer.getTables().get(i).equals(originalName)) {
-                    parserContainer.getTables().set(i, tmpName);
-                }
-            }
-        }
-    }
-
-    private ExpressionTreeNode mergeNodes(ArrayList<ExpressionTreeNode> nodeList) {
-        // only one node
-        if (nodeList.size() == 1) return nodeList.get(0);
-
-        ExpressionTreeNode root = new ExpressionTreeNode("&");
-        ExpressionTreeNode left = nodeList.get(0);
-        ExpressionTreeNode right;
-        for (int i = 1; i < nodeList.size(); i++) {
-            right = nodeList.get(i);
-            ExpressionTreeNode tmp = new ExpressionTreeNode("&", left, right);
-            root = tmp;
-            left = tmp;
-        }
-        return root;
-    }
-
-    /* recursive retrieve relevant table names corresponding to one condition tree node */
-    private ArrayList<String> getTableNames(ExpressionTreeNode node) {
-        ArrayList<String> tables = new ArrayList<>();
-        if (node == null) return tables;
-        String nodeValue = node.getValue();
-        String tableName = "";
-        if (!nodeValue.contains(".")  &&
-            nodeValue.matches("^[a-zA-Z]+[\\w\\d]*")) {
-            tableName = nodeValue;
-        } else if (nodeValue.contains(".")) {
-            // in case course2.exam, don't need attr_name, just table name course2
-            tableName = nodeValue.split("\\.")[0];
-        }
-        if (!tables.contains(tableName) &&
-            !Objects.equals(tableName, "")) {
-            tables.add(tableName);
-        }
-        tables.addAll(getTableNames(node.getLeft()));
-        tables.addAll(getTableNames(node.getRight()));
-        return tables;
-    }
-
-    /* depends on conditions type, we may need a new temp table with selection done first */
-    private ArrayList<String> generateTempRelations(ArrayList<ExpressionTreeNode> subConditions) {
-        ArrayList<String> tempTables = new ArrayList<>();
-        HashMap<String, ArrayList<ExpressionTreeNode>> tableSelectionMap = new HashMap<>();
-
-        if (subConditions == null || subConditions.size() == 0) return tempTables;
-
-        for (ExpressionTreeNode subCondition : subConditions) {
-            ArrayList<String> tableList = getTableNames(subCondition);
-            // we want condition doing selection like course.homework = 100
-            if (tableList.size() != 1) continue;
-            String table = tableList.get(0);
-            if (tableSelectionMap.containsKey(table)) {
-                // may contain multiple conditions on same table
-                ArrayList<ExpressionTreeNode> list = tableSelectionMap.get(table);
-                list.add(subCondition);
-            } else {
-                ArrayList<ExpressionTreeNode> list = new ArrayList<>();
-                list.add(subCondition);
-                tableSelectionMap.put(table, list);
-            }
-        }
-        for (String tableName : tableSelectionMap.keySet()) {
-            ArrayList<ExpressionTreeNode> conditions = tableSelectionMap.get(tableName);
-            createTempRelation(tableName, conditions);
-            tempTables.add("temp" + tableName);
-        }
-        return tempTables;
-    }
-
-    private void createTempRelation(String table, ArrayList<ExpressionTreeNode> nodeList) {
-        String relationName = "temp" + table;
-        if (schemaManager.relationExists(relationName)) schemaManager.deleteRelation(relationName);
-        // need an expression tree to check
-        ExpressionTreeNode node;
-        if (nodeList.size() > 1) node = mergeNodes(nodeList);
-        else node = nodeList.get(0);
-
-        Relation relation = schemaManager.getRelation(table);
-        int relationBlocks = relation.getNumOfBlocks();
-        int memBlocks = mainMemory.getMemorySize() - 1;
-        int processedBlocks = 0;
-
-        ArrayList<String> fieldNames = new ArrayList<>();
-        for (String str : relation.getSchema().getFieldNames()) {
-            fieldNames.add(table + "." + str);
-        }
-        Relation tmpRelation = schemaManager.createRelation(relationName,
-                new Schema(fieldNames, relation.getSchema().getFieldTypes()));
-        do {
-            int blocksToMem = relationBlocks < memBlocks ? relationBlocks : memBlocks;
-            //reads several blocks from the relation (the disk) and stores in the memory
-            relation.getBlocks(processedBlocks, 0, blocksToMem);
-            for (int i = 0; i < blocksToMem; i++) {
-                Block block = mainMemory.getBlock(i);
-                // this is to handle the holes after deletion
-                if (block.getNumTuples() == 0) continue;
-                for (Tuple tuple : block.getTuples()) {
-                    Tuple tmpTuple = createTempTuple(tmpRelation, tuple);
-                    if (node == null || ExpressionTree.checkCondition(tmpTuple, node))
-                        Write.tuple(tmpTuple, tmpRelation, mainMemory, memBlocks);
-                }
-            }
-            relationBlocks -= blocksToMem;
-            processedBlocks += blocksToMem;
-        } while (relationBlocks > 0);
+    private void selectFromMultipleTables(ParserContainer parserContainer) {
+        Planner planner = new Planner(schemaManager, bufferPool, mainMemory, indexManager);
+        run(planner, planner.plan(parserContainer));
     }
 
-    private Tuple createTempTuple(Relation relation, Tuple tuple) {
-        Tuple tmpTuple = relation.createTuple();
-        if (tmpTuple.getNumOfFields() != tuple.getNumOfFields()) return null;
-        for (int i = 0; i < tuple.getNumOfFields(); i++) {
-            Field field = tuple.getField(i);
-            if (field.type == FieldType.INT) tmpTuple.setField(i, field.integer);
-            else tmpTuple.setField(i, field.str);
+    /* run the plan, if any, then delete the relations the planner created */
+    private void run(Planner planner, Operator plan) {
+        if (plan != null) {
+            plan.open();
+            while (plan.next() != null) ;
+            plan.close();
         }
-        return tmpTuple;
+        for (String temp : planner.getTempRelations()) deleteRelation(temp);
     }
 
 }
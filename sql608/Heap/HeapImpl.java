@@ -3,18 +3,15 @@ package sql608.Heap;
 import java.util.Arrays;
 import java.util.Comparator;
 
+// the array doubles when full, size is only the initial capacity
 public class HeapImpl {
     private int lastIndex;
-    private int[] posArray;
     private HeapNode[] dataArray;
     private Comparator comparator;
 
     public HeapImpl(int size, Comparator comparator) {
         lastIndex = 0;
-        posArray = new int[size];
-        Arrays.fill(posArray, -1);
-
-        dataArray = new HeapNode[size];
+        dataArray = new HeapNode[Math.max(1, size)];
         this.comparator = comparator;
     }
 
@@ -33,16 +30,20 @@ public class HeapImpl {
     }
 
     public void offer(HeapNode node) {
+        if (lastIndex == dataArray.length) dataArray = Arrays.copyOf(dataArray, 2 * dataArray.length);
         dataArray[lastIndex] = node;
-        posArray[node.id] = lastIndex;
         moveUp(lastIndex);
         lastIndex++;
     }
 
+    // remove the root, the last node takes its place and moves down
     public HeapNode poll() {
         if (isEmpty()) return null;
         HeapNode ans = dataArray[0];
-        delete(ans);
+        lastIndex--;
+        dataArray[0] = dataArray[lastIndex];
+        dataArray[lastIndex] = null;
+        moveDown(0);
         return ans;
     }
 
@@ -54,27 +55,6 @@ public class HeapImpl {
         moveUp((pos-1) / 2);
     }
 
-    public void delete(HeapNode node) {
-        int pos = posArray[node.id];
-        if (pos < 0) return;
-        // fix corner case, the one to delete is the last one
-        if (pos == lastIndex - 1) {
-            posArray[node.id] = -1;
-            dataArray[pos] = null;
-            lastIndex--;
-            return;
-        }
-        dataArray[pos] = dataArray[lastIndex - 1];
-        posArray[dataArray[pos].id] = pos;
-        dataArray[lastIndex - 1] = null;
-        lastIndex--;
-        if (pos != 0 && compareData(dataArray[pos], dataArray[(pos-1)/2],-1)) {
-            moveUp(pos);
-        } else {
-            moveDown(pos);
-        }
-    }
-
     private void moveDown(int pos) {
         int maxChildPos;
         if (2 * pos + 1 >= lastIndex) return;
@@ -92,9 +72,7 @@ public class HeapImpl {
     private void swap(int pos1, int pos2) {
         HeapNode tmp = dataArray[pos1];
         dataArray[pos1] = dataArray[pos2];
-        posArray[dataArray[pos1].id] = pos1;
         dataArray[pos2] = tmp;
-        posArray[dataArray[pos2].id] = pos2;
     }
 
 
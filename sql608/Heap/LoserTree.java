@@ -0,0 +1,71 @@
+package sql608.Heap;
+
+import java.util.Comparator;
+
+/*
+tournament tree of losers for merging k sorted sources, keyed by source index
+every inner node keeps the source that lost the match played there, the
+overall winner is kept apart; replacing the winner's item replays only the
+matches on its path to the root, about log2(k) comparisons and no allocation
+an exhausted source (null item) loses to every item, equal items are won
+by the lower source index
+*/
+public class LoserTree<T> {
+    private int numSources;
+    private int[] losers;  // losers[1..k-1], node i has children 2i and 2i+1, leaf of source s is k+s
+    private int winner;
+    private T[] items;  // current item of each source
+    private Comparator<T> comparator;
+
+    public LoserTree(T[] items, Comparator<T> comparator) {
+        this.numSources = items.length;
+        this.items = items;
+        this.comparator = comparator;
+        this.losers = new int[Math.max(1, numSources)];
+        this.winner = numSources == 0 ? -1 : play(1);
+    }
+
+    /* the source of the smallest item, -1 once all sources are exhausted */
+    public int getWinner() {
+        return winner < 0 || items[winner] == null ? -1 : winner;
+    }
+
+    public T getWinnerItem() {
+        return winner < 0 ? null : items[winner];
+    }
+
+    /* the winner's source goes on with item, null if it is exhausted */
+    public void replaceWinner(T item) {
+        items[winner] = item;
+        int source = winner;
+        for (int node = (winner + numSources) / 2; node > 0; node /= 2) {
+            if (beats(losers[node], source)) {
+                int loser = source;
+                source = losers[node];
+                losers[node] = loser;
+            }
+        }
+        winner = source;
+    }
+
+    /* fill the subtree of node with the losers of its matches, return its winner */
+    private int play(int node) {
+        if (node >= numSources) return node - numSources;
+        int left = play(2 * node);
+        int right = play(2 * node + 1);
+        if (beats(right, left)) {
+            losers[node] = left;
+            return right;
+        }
+        losers[node] = right;
+        return left;
+    }
+
+    private boolean beats(int s1, int s2) {
+        T item1 = items[s1], item2 = items[s2];
+        if (item1 == null) return false;
+        if (item2 == null) return true;
+        int result = comparator.compare(item1, item2);
+        return result < 0 || result == 0 && s1 < s2;
+    }
+}
@@ -0,0 +1,113 @@
+package sql608.Heap;
+
+import storageManager.FieldType;
+import storageManager.Schema;
+import storageManager.Tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+normalized sort key of a tuple: its sort fields encoded once into bytes
+which compare as unsigned bytes in the order of the tuples, the first 8
+bytes in a long prefix and the others in a tail
+INT: 4 bytes big-endian with the sign bit flipped
+STR20: 1 byte, 0 for null and 1 otherwise, the 20 bytes padded with zeros,
+1 byte of length, so a string sorts after its prefixes as in compareField
+a descending field has all its bytes inverted, an unknown field is skipped
+keys are equal when the tuples are equal on the sort fields, so a key also
+serves as the hash key of a group
+*/
+public class SortKey implements Comparable<SortKey> {
+    private static final int STR_WIDTH = 20;
+    private static final byte[] NO_TAIL = new byte[0];
+
+    public final Tuple tuple;
+    public int run;  // free for the sort, e.g. the run of the tuple
+    private final long prefix;
+    private final byte[] tail;
+
+    private SortKey(Tuple tuple, long prefix, byte[] tail) {
+        this.tuple = tuple;
+        this.prefix = prefix;
+        this.tail = tail;
+    }
+
+    @Override
+    public int compareTo(SortKey other) {
+        if (prefix != other.prefix) return Long.compareUnsigned(prefix, other.prefix);
+        byte[] tail2 = other.tail;
+        for (int i = 0; i < tail.length; i++) {
+            if (tail[i] != tail2[i]) return (tail[i] & 0xff) - (tail2[i] & 0xff);
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SortKey && prefix == ((SortKey) o).prefix && Arrays.equals(tail, ((SortKey) o).tail);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(prefix) + Arrays.hashCode(tail);
+    }
+
+    /* encodes the keys of the tuples of one schema on the given sort fields */
+    public static class Encoder {
+        private int[] offsets;
+        private boolean[] isInt;
+        private boolean[] descending;
+        private byte[] buffer;
+
+        public Encoder(Schema schema, ArrayList<String> sortFields) {
+            this(schema, sortFields, new boolean[sortFields.size()]);
+        }
+
+        public Encoder(Schema schema, ArrayList<String> sortFields, boolean[] descending) {
+            int numFields = 0;
+            for (String sortField : sortFields) if (schema.fieldNameExists(sortField)) numFields++;
+            offsets = new int[numFields];
+            isInt = new boolean[numFields];
+            this.descending = new boolean[numFields];
+            int length = 0;
+            for (int i = 0, j = 0; i < sortFields.size(); i++) {
+                if (!schema.fieldNameExists(sortFields.get(i))) continue;
+                offsets[j] = schema.getFieldOffset(sortFields.get(i));
+                isInt[j] = schema.getFieldType(offsets[j]) == FieldType.INT;
+                this.descending[j] = descending[i];
+                length += isInt[j] ? 4 : STR_WIDTH + 2;
+                j++;
+            }
+            buffer = new byte[Math.max(8, length)];
+        }
+
+        public SortKey encode(Tuple tuple) {
+            int pos = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                int start = pos;
+                if (isInt[i]) {
+                    int value = tuple.getInt(offsets[i]) ^ Integer.MIN_VALUE;
+                    buffer[pos++] = (byte) (value >>> 24);
+                    buffer[pos++] = (byte) (value >>> 16);
+                    buffer[pos++] = (byte) (value >>> 8);
+                    buffer[pos++] = (byte) value;
+                } else {
+                    int length = tuple.getBytes(offsets[i], buffer, pos + 1);
+                    buffer[pos] = (byte) (length < 0 ? 0 : 1);
+                    for (int k = pos + 1 + Math.max(0, length); k <= pos + STR_WIDTH; k++) buffer[k] = 0;
+                    buffer[pos + STR_WIDTH + 1] = (byte) Math.max(0, length);
+                    pos += STR_WIDTH + 2;
+                }
+                if (descending[i]) {
+                    for (int k = start; k < pos; k++) buffer[k] = (byte) ~buffer[k];
+                }
+            }
+            long prefix = 0;
+            for (int k = 0; k < 8; k++) prefix = prefix << 8 | (buffer[k] & 0xff);
+            byte[] tail = pos > 8 ? new byte[pos - 8] : NO_TAIL;
+            System.arraycopy(buffer, 8, tail, 0, tail.length);
+            return new SortKey(tuple, prefix, tail);
+        }
+    }
+}
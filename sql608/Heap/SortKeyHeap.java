@@ -0,0 +1,31 @@
+package sql608.Heap;
+
+import java.util.Comparator;
+
+// definition for Heap which returns the SortKey of a Tuple
+public class SortKeyHeap implements Heap<SortKey> {
+    private HeapImpl heapImpl;
+    private int count;
+
+    public SortKeyHeap(Comparator<SortKey> comparator) {
+        count = 0;
+        this.heapImpl = new HeapImpl(16, comparator);
+    }
+
+    @Override
+    public void offer(SortKey key) {
+        HeapNode<SortKey> heapNode = new HeapNode<>(count++, key);
+        heapImpl.offer(heapNode);
+    }
+
+    @Override
+    public SortKey poll() {
+        HeapNode heapNode = heapImpl.poll();
+        return (SortKey) heapNode.data;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return heapImpl.isEmpty();
+    }
+}
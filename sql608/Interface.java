@@ -23,6 +23,7 @@ class Interface {
                 }
             }
             while (readString != null);
+            virtualSQL.close();
         } catch (Exception e) {
             System.out.println("IO error, please check your input");
         }
@@ -1,7 +1,11 @@
 package sql608;
 
+import storageManager.Config;
+
 public class Main {
     public static void main(String[] args) {
+        // optional argument: directory to keep the relations on disk
+        if (args.length > 0) Config.DISK_DIRECTORY = args[0];
         Interface inf = new Interface();
         inf.start();
     }
@@ -1,30 +1,27 @@
 package sql608.algorithm;
 
 import sql608.helper.ValueContainer;
-import storageManager.Tuple;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Stack;
 
-// expression tree is for condition check under WHERE clause
+// expression tree of the condition under WHERE clause, PredicateCompiler evaluates it
 public class ExpressionTree {
     // each operator corresponds to ValueContainer operands
     private Stack<String> operator;
     private Stack<ExpressionTreeNode> operand;
     private ExpressionTreeNode root;
     private String condition;
-    static String relationName;
 
     public ExpressionTreeNode getRoot() {
         return root;
     }
 
-    public ExpressionTree(String whereCondition, String relationName) {
+    public ExpressionTree(String whereCondition) {
         operand = new Stack<>();
         operator = new Stack<>();
-        this.relationName = relationName;
         this.root = constructTree(whereCondition);
     }
 
@@ -116,68 +113,6 @@ public class ExpressionTree {
         }
     }
 
-    /* check the tuple satisfy the where condition or not */
-    public static boolean checkCondition(Tuple tuple, ExpressionTreeNode treeNode) {
-        /* string is equal, ignoring case, to the string "true" then return True */
-        return Boolean.parseBoolean(evaluate(tuple, treeNode));
-    }
-
-    private static String evaluate(Tuple tuple, ExpressionTreeNode treeNode) {
-        /*
-        evaluate the subCondition in WHERE recursively follow the tree
-        always return String like "true" or operand's value(INT, STR)
-        */
-        String nodeOperand = treeNode.getValue();
-        String leftOperand, rightOperand;
-        boolean tempResult;
-        switch (nodeOperand) {
-            default:
-                if (isInteger(nodeOperand)) return nodeOperand;
-                else return getTupleField(tuple, nodeOperand);
-            case "&":
-                tempResult = Boolean.parseBoolean(evaluate(tuple, treeNode.getLeft()))
-                        && Boolean.parseBoolean(evaluate(tuple, treeNode.getRight()));
-                return String.valueOf(tempResult);
-            case "|":
-                tempResult = Boolean.parseBoolean(evaluate(tuple, treeNode.getLeft()))
-                        || Boolean.parseBoolean(evaluate(tuple, treeNode.getRight()));
-                return String.valueOf(tempResult);
-            case "=":
-                leftOperand = evaluate(tuple, treeNode.getLeft());
-                rightOperand = evaluate(tuple, treeNode.getRight());
-                if (isInteger(leftOperand)) {
-                        return String.valueOf(Integer.parseInt(leftOperand) == Integer.parseInt(rightOperand));
-                } else {
-                        return String.valueOf(leftOperand.toLowerCase().
-                                equals(rightOperand.replaceAll("\"", "")));
-                }
-            case ">":
-                leftOperand = evaluate(tuple, treeNode.getLeft());
-                rightOperand = evaluate(tuple, treeNode.getRight());
-                return String.valueOf(Integer.parseInt(leftOperand) > Integer.parseInt(rightOperand));
-            case "<":
-                leftOperand = evaluate(tuple, treeNode.getLeft());
-                rightOperand = evaluate(tuple, treeNode.getRight());
-                return String.valueOf(Integer.parseInt(leftOperand) < Integer.parseInt(rightOperand));
-            case "+":
-                leftOperand = evaluate(tuple, treeNode.getLeft());
-                rightOperand = evaluate(tuple, treeNode.getRight());
-                return String.valueOf(Integer.parseInt(leftOperand) + Integer.parseInt(rightOperand));
-            case "-":
-                leftOperand = evaluate(tuple, treeNode.getLeft());
-                rightOperand = evaluate(tuple, treeNode.getRight());
-                return String.valueOf(Integer.parseInt(leftOperand) - Integer.parseInt(rightOperand));
-            case "*":
-                leftOperand = evaluate(tuple, treeNode.getLeft());
-                rightOperand = evaluate(tuple, treeNode.getRight());
-                return String.valueOf(Integer.parseInt(leftOperand) * Integer.parseInt(rightOperand));
-            case "/":
-                leftOperand = evaluate(tuple, treeNode.getLeft());
-                rightOperand = evaluate(tuple, treeNode.getRight());
-                return String.valueOf(Integer.parseInt(leftOperand) / Integer.parseInt(rightOperand));
-        }
-    }
-
     // split by AND
     public static ValueContainer<ArrayList<ExpressionTreeNode>, ArrayList<String>> getSubTreeNodes(ExpressionTree tree) {
         if (tree.getRoot() == null || tree.getRoot() == null) {
@@ -206,7 +141,6 @@ public class ExpressionTree {
     public ExpressionTree(ExpressionTreeNode expressionTreeNode) {
         operand = new Stack<>();
         operator = new Stack<>();
-        this.relationName = "";
         this.root = expressionTreeNode;
     }
 
@@ -229,23 +163,4 @@ public class ExpressionTree {
         final String[] operators = new String[] { "-", "/", "=", ">", "<", "+", "*", "&", "|" };
         return Arrays.asList(operators).contains(str);
     }
-
-    public static boolean isInteger(String str) {
-        return str.matches("\\d+");
-    }
-
-    private static String getTupleField(Tuple tuple, String field) {
-        if (!Objects.equals(relationName, "")
-            && !relationName.contains("naturalJoin")
-            && !relationName.contains("Join")
-            && field.contains(".")) {
-            field = field.split("\\.")[1];
-        }
-        if (tuple.getSchema().getFieldNames().contains(field)) {
-            return tuple.getField(field).toString();
-        } else {
-            return field;
-        }
-    }
-
 }
@@ -0,0 +1,251 @@
+package sql608.algorithm;
+
+import sql608.Heap.LoserTree;
+import sql608.Heap.SortKey;
+import sql608.Heap.SortKeyHeap;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+external merge sort of a relation in place, for any size of main memory (M blocks)
+pass 0 makes sorted runs by replacement selection, about 2(M-2) blocks long
+on random input and a single run on sorted input; the runs are then merged
+up to M-1 at a time, one block of each in memory and one output block,
+with a loser tree, until a single run is left
+tuples are compared on their SortKey, encoded when the tuple is read
+the smallest runs are merged first, the first merge taking just enough of
+them for every later merge to take M-1 runs, so no tuple is merged more
+often than needed
+the first run is written over the relation, so a single run is the sorted
+relation; the other runs are written after the relation and the blocks past
+the sorted relation are deleted at the end
+the last merge writes from block 0, over the first run: it merges from the
+largest tuple down and writes the last block first, so a block is written
+only when all the tuples still to merge fit before it, the unread blocks
+of the first run among them
+*/
+public class MultiPass {
+    /* a sorted run, blocks [start, start + numBlocks) of the relation, all full but the last */
+    private static class Run {
+        int start;
+        int numBlocks;
+        int numTuples;
+
+        Run(int start, int numBlocks, int numTuples) {
+            this.start = start;
+            this.numBlocks = numBlocks;
+            this.numTuples = numTuples;
+        }
+    }
+
+    /* the tuples of a run, read a block at a time into one memory block, last to first if backward */
+    private static class RunReader {
+        private Relation relation;
+        private Run run;
+        private int memBlockIndex;
+        private MainMemory mainMemory;
+        private boolean backward;
+        private int numRead;
+        private ArrayList<Tuple> tuples = new ArrayList<>();
+        private int nextTuple;
+
+        RunReader(Relation relation, Run run, int memBlockIndex, MainMemory mainMemory, boolean backward) {
+            this.relation = relation;
+            this.run = run;
+            this.memBlockIndex = memBlockIndex;
+            this.mainMemory = mainMemory;
+            this.backward = backward;
+        }
+
+        /* the next tuple, null at the end of the run */
+        Tuple next() {
+            while (nextTuple == tuples.size()) {
+                if (numRead == run.numBlocks) return null;
+                int block = backward ? run.numBlocks - 1 - numRead : numRead;
+                numRead++;
+                relation.getBlock(run.start + block, memBlockIndex);
+                tuples.clear();
+                nextTuple = 0;
+                for (Tuple tuple : mainMemory.getBlock(memBlockIndex).getTuples()) {
+                    if (!tuple.isNull()) tuples.add(tuple);
+                }
+                if (backward) Collections.reverse(tuples);
+            }
+            return tuples.get(nextTuple++);
+        }
+    }
+
+    /*
+    a run written from block start through one memory block
+    backward: numTuples tuples added largest first, the last block is written first
+    */
+    private static class RunWriter {
+        private Relation relation;
+        private int start;
+        private int memBlockIndex;
+        private MainMemory mainMemory;
+        private boolean backward;
+        private int tuplesPerBlock;
+        private int numBlocks;
+        private int numTuples;
+        private int numLeft;  // backward: the tuples still to add
+
+        RunWriter(Relation relation, int start, int memBlockIndex, MainMemory mainMemory) {
+            this.relation = relation;
+            this.start = start;
+            this.memBlockIndex = memBlockIndex;
+            this.mainMemory = mainMemory;
+            mainMemory.getBlock(memBlockIndex).clear();
+        }
+
+        RunWriter(Relation relation, int start, int memBlockIndex, MainMemory mainMemory, int numTuples) {
+            this(relation, start, memBlockIndex, mainMemory);
+            this.backward = true;
+            this.tuplesPerBlock = relation.getSchema().getTuplesPerBlock();
+            this.numLeft = numTuples;
+            this.numBlocks = (numTuples + tuplesPerBlock - 1) / tuplesPerBlock;
+        }
+
+        void add(Tuple tuple) {
+            Block block = mainMemory.getBlock(memBlockIndex);
+            if (backward) {
+                int offset = --numLeft % tuplesPerBlock;
+                block.setTuple(offset, tuple);
+                if (offset == 0) {
+                    relation.setBlock(start + numLeft / tuplesPerBlock, memBlockIndex);
+                    block.clear();
+                }
+            } else {
+                if (block.isFull()) {
+                    relation.setBlock(start + numBlocks++, memBlockIndex);
+                    block.clear();
+                }
+                block.appendTuple(tuple);
+            }
+            numTuples++;
+        }
+
+        Run close() {
+            Block block = mainMemory.getBlock(memBlockIndex);
+            if (!block.isEmpty()) relation.setBlock(start + numBlocks++, memBlockIndex);
+            block.clear();
+            return new Run(start, numBlocks, numTuples);
+        }
+    }
+
+    public static void sort(Relation relation, ArrayList<String> sortFields,
+                            MainMemory mainMemory) {
+        int numMemBlocks = mainMemory.getMemorySize();
+        int numRelationBlocks = relation.getNumOfBlocks();
+        if (numRelationBlocks == 0) return;
+        if (numMemBlocks < 3) {
+            System.err.print("sort ERROR: merging needs at least 3 memory blocks" + "\n");
+            return;
+        }
+        int fanIn = numMemBlocks - 1;
+        SortKey.Encoder encoder = new SortKey.Encoder(relation.getSchema(), sortFields);
+
+        ArrayList<Run> runs = createRuns(relation, encoder, mainMemory);
+        if (runs.size() > 1) {
+            int end = numRelationBlocks;
+            for (Run run : runs) end = Math.max(end, run.start + run.numBlocks);
+            int groupSize = (runs.size() - 2) % (fanIn - 1) + 2;
+            while (runs.size() > fanIn) {
+                runs.sort(Comparator.comparingInt(run -> run.numBlocks));
+                List<Run> group = runs.subList(0, groupSize);
+                Run merged = merge(relation, group, end, encoder, mainMemory, false);
+                group.clear();
+                runs.add(merged);
+                end += merged.numBlocks;
+                groupSize = fanIn;
+            }
+            Run sorted = merge(relation, runs, 0, encoder, mainMemory, true);
+            runs.clear();
+            runs.add(sorted);
+        }
+
+        /* delete the blocks of the earlier passes */
+        int numSortedBlocks = runs.get(0).numBlocks;
+        if (numSortedBlocks < relation.getNumOfBlocks()) relation.deleteBlocks(numSortedBlocks);
+    }
+
+    /*
+    pass 0 by replacement selection: the tuples of M-2 blocks wait in a heap
+    ordered by run then by sort key; the smallest goes to the output,
+    replaced by the next tuple of the relation, which waits for the next run
+    if it is smaller than the tuple just written
+    the first run is written over the relation, which is safe as the output
+    never has more blocks than were read; the others after the relation
+    */
+    private static ArrayList<Run> createRuns(Relation relation, SortKey.Encoder encoder, MainMemory mainMemory) {
+        int numMemBlocks = mainMemory.getMemorySize();
+        int numRelationBlocks = relation.getNumOfBlocks();
+        int capacity = (numMemBlocks - 2) * relation.getSchema().getTuplesPerBlock();
+        RunReader reader = new RunReader(relation, new Run(0, numRelationBlocks, 0), 0, mainMemory, false);
+        SortKeyHeap heap = new SortKeyHeap((o1, o2) -> o1.run != o2.run
+                ? Integer.compare(o1.run, o2.run) : o1.compareTo(o2));
+        Tuple tuple;
+        for (int i = 0; i < capacity && (tuple = reader.next()) != null; i++) {
+            heap.offer(encoder.encode(tuple));
+        }
+
+        ArrayList<Run> runs = new ArrayList<>();
+        int output = numMemBlocks - 1;
+        int end = numRelationBlocks;
+        int curRun = 0;
+        RunWriter writer = new RunWriter(relation, 0, output, mainMemory);
+        while (!heap.isEmpty()) {
+            SortKey min = heap.poll();
+            if (min.run != curRun) {
+                Run run = writer.close();
+                runs.add(run);
+                if (run.start != 0) end += run.numBlocks;
+                curRun = min.run;
+                writer = new RunWriter(relation, end, output, mainMemory);
+            }
+            writer.add(min.tuple);
+            if ((tuple = reader.next()) == null) continue;
+            SortKey key = encoder.encode(tuple);
+            key.run = key.compareTo(min) >= 0 ? curRun : curRun + 1;
+            heap.offer(key);
+        }
+        runs.add(writer.close());
+        return runs;
+    }
+
+    /*
+    merge the runs into one written from block start
+    run i is read into memory block i, a loser tree keyed by run picks the
+    next tuple, the last memory block is the output; backward merges from
+    the largest tuple down
+    */
+    private static Run merge(Relation relation, List<Run> runs, int start, SortKey.Encoder encoder,
+                             MainMemory mainMemory, boolean backward) {
+        RunReader[] readers = new RunReader[runs.size()];
+        SortKey[] keys = new SortKey[runs.size()];
+        int numTuples = 0;
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new RunReader(relation, runs.get(i), i, mainMemory, backward);
+            numTuples += runs.get(i).numTuples;
+            Tuple tuple = readers[i].next();
+            if (tuple != null) keys[i] = encoder.encode(tuple);
+        }
+        LoserTree<SortKey> tree = new LoserTree<>(keys, backward
+                ? (o1, o2) -> o2.compareTo(o1) : SortKey::compareTo);
+
+        int output = mainMemory.getMemorySize() - 1;
+        RunWriter writer = backward ? new RunWriter(relation, start, output, mainMemory, numTuples)
+                : new RunWriter(relation, start, output, mainMemory);
+        int run;
+        while ((run = tree.getWinner()) >= 0) {
+            writer.add(tree.getWinnerItem().tuple);
+            Tuple tuple = readers[run].next();
+            tree.replaceWinner(tuple == null ? null : encoder.encode(tuple));
+        }
+        return writer.close();
+    }
+}
@@ -1,17 +1,23 @@
 package sql608.algorithm;
 
-import sql608.helper.Fields;
 import sql608.Heap.HeapFunc;
-import sql608.Heap.TupleHeap;
-import sql608.helper.Write;
+import sql608.Heap.SortKey;
+import sql608.Heap.SortKeyHeap;
 import storageManager.*;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-
+import java.util.Arrays;
+
+/*
+sorts a relation fitting in main memory
+when the first sort fields are INT spanning a small range (at most the
+number of tuples plus MAX_EXTRA_RANGE values) the tuples are counting sorted
+on them, in linear time, and only tuples equal on those fields are compared
+on the other sort fields; otherwise all tuples go through the heap
+*/
 public class OnePass {
+    private static final int MAX_EXTRA_RANGE = 1024;
+
     // clear all blocks of Main Memory
     private static void clearMainMemory(MainMemory mainMemory) {
         int numberOfBlocks = mainMemory.getMemorySize();
@@ -27,121 +33,92 @@ public class OnePass {
         int numBlocks = relation.getNumOfBlocks();
         relation.getBlocks(0, 0, numBlocks);
 
-        TupleHeap heap = HeapFunc.build(sortFields);
-        HeapFunc.offer(heap, mainMemory);
-
-        clearMainMemory(mainMemory);
-        int curBlockId = 0;
-        boolean isLastDiskBlockFull = false;
-
-        while (!heap.isEmpty()) {
-            isLastDiskBlockFull = false;
-            mainMemory.getBlock(curBlockId).appendTuple(heap.poll());
-            if (mainMemory.getBlock(curBlockId).isFull()) {
-                isLastDiskBlockFull = true;
-                curBlockId++;
+        ArrayList<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < numBlocks; i++) {
+            for (Tuple tuple : mainMemory.getBlock(i).getTuples()) {
+                if (!tuple.isNull()) tuples.add(tuple);
             }
         }
-        if (isLastDiskBlockFull) {
-            relation.setBlocks(0, 0, curBlockId);
-        } else {
-            relation.setBlocks(0, 0, curBlockId + 1);
-        }
-    }
-
-    /* Doing DISTINCT when joining */
-    public static String crossJoin(String tableOne, String tableTwo, boolean isDistinct,
-                                   Map<String, ArrayList<String>> tableAttrMap,
-                                   MainMemory mainMemory, SchemaManager schemaManager) {
-        Relation relationOne = schemaManager.getRelation(tableOne);
-        Relation relationTwo = schemaManager.getRelation(tableTwo);
-        int tableOneSize = relationOne.getNumOfBlocks();
-        int tableTwoSize = relationTwo.getNumOfBlocks();
-
-        /* use smaller table to be the one in the main memory */
-        Relation smallTable, largeTable;
-        String smallTableName, largeTableName;
-        if (tableOneSize < tableTwoSize) {
-            smallTable = relationOne;
-            largeTable = relationTwo;
-            smallTableName = tableOne;
-            largeTableName = tableTwo;
-        } else {
-            smallTable = relationTwo;
-            largeTable = relationOne;
-            smallTableName = tableTwo;
-            largeTableName = tableOne;
+        Tuple[] sorted = countingSort(tuples, relation.getSchema(), sortFields);
+        if (sorted == null) {
+            SortKeyHeap heap = new SortKeyHeap(SortKey::compareTo);
+            HeapFunc.offer(heap, new SortKey.Encoder(relation.getSchema(), sortFields), mainMemory);
+            sorted = new Tuple[tuples.size()];
+            for (int i = 0; i < sorted.length; i++) sorted[i] = heap.poll().tuple;
         }
 
-        /* prepare a temporary relation */
-        Schema smallTableSchema = smallTable.getSchema();
-        Schema largeTableSchema = largeTable.getSchema();
-        Schema tempSchema = Join.twoSchema(smallTableSchema, largeTableSchema, smallTableName, largeTableName);
-        String tempRelationName = smallTableName + "Join" + largeTableName;
-        Relation tempRelation = schemaManager.createRelation(tempRelationName, tempSchema);
-
         clearMainMemory(mainMemory);
-        /* First put all blocks of small table into main memory */
-        smallTable.getBlocks(0, 0, smallTable.getNumOfBlocks());
-        Fields preLargeTuple = null;
-
-        /* loop one: process large table block by block */
-        for (int i = 0; i < largeTable.getNumOfBlocks(); i++) {
-            /* read a block from large table to main mem block 9 */
-            mainMemory.getBlock(9).clear();
-            largeTable.getBlock(i, 9);
-            Block block = mainMemory.getBlock(9);
-
-            // store all the tuple here, not using a memory block
-            ArrayList<Tuple> joinedTuples = new ArrayList<>();
-
-            /* start to join one block with all blocks in the main mem */
-            /* loop over each tuple in the block of large table */
-            for (Tuple tupleLargerTable : block.getTuples()) {
-                if (tupleLargerTable.isNull()) continue;
-                /* skip duplicates if equal to previous tuple
-                (already sorted before join if isDistinct is true)*/
-                if (isDistinct &&
-                        !largeTableName.contains("Join")) {
-                    Fields curCustomTuple = new Fields(tableAttrMap.get(largeTableName),
-                            tupleLargerTable);
-                    if (preLargeTuple != null && preLargeTuple.equals(curCustomTuple)) continue;
-                    preLargeTuple = curCustomTuple;
-                }
-
-                Set<Fields> uniqueTupleSet = new HashSet<>();
-                /* join with all tuples of smaller table */
-                for (int j = 0; j < mainMemory.getMemorySize() - 1; j++) {
-                    Block blockSmallerTable = mainMemory.getBlock(j);
-                    if (!blockSmallerTable.isEmpty()) {
-                        for (Tuple tupleSmallerTable : blockSmallerTable.getTuples()) {
-                            if (tupleSmallerTable.isNull()) continue;
-                            if (isDistinct) {
-                                Fields tuple = new Fields(tupleSmallerTable.getSchema().getFieldNames(),
-                                                           tupleSmallerTable);
-                                if (uniqueTupleSet.contains(tuple)) continue;
-                                uniqueTupleSet.add(tuple);
-                            }
-                            /* join two tuples */
-                            Tuple joinedTuple = Join.twoTuples(tupleSmallerTable, tupleLargerTable,
-                                    tempRelationName, schemaManager);
-                            if (joinedTuple != null) joinedTuples.add(joinedTuple);
-                        }
-                    }
-                }
-            }
-            /* finish join */
+        int tuplesPerBlock = relation.getSchema().getTuplesPerBlock();
+        int numSortedBlocks = (sorted.length + tuplesPerBlock - 1) / tuplesPerBlock;
+        for (int i = 0; i < sorted.length; i++) {
+            mainMemory.getBlock(i / tuplesPerBlock).appendTuple(sorted[i]);
+        }
+        if (numSortedBlocks > 0) relation.setBlocks(0, 0, numSortedBlocks);
+        /* the blocks had holes: delete the blocks past the sorted tuples */
+        if (numSortedBlocks < numBlocks) relation.deleteBlocks(numSortedBlocks);
+    }
 
-            /* write to disk */
-            for (Tuple tuple : joinedTuples) {
-                Write.tuple(tuple, tempRelation, mainMemory, 9);
+    /*
+    LSD counting sort on the leading small-range INT sort fields, the last one
+    first, each pass stable; runs of tuples equal on them are then sorted by
+    sort key on the other fields
+    null if the first sort field is not such a field
+    */
+    private static Tuple[] countingSort(ArrayList<Tuple> tuples, Schema schema, ArrayList<String> sortFields) {
+        int numTuples = tuples.size();
+        ArrayList<String> fields = new ArrayList<>();
+        for (String field : sortFields) if (schema.fieldNameExists(field)) fields.add(field);
+        int[] offsets = new int[fields.size()];
+        int[] mins = new int[fields.size()];
+        int[] ranges = new int[fields.size()];
+        int numCounted = 0;
+        for (; numCounted < fields.size(); numCounted++) {
+            int offset = schema.getFieldOffset(fields.get(numCounted));
+            if (schema.getFieldType(offset) != FieldType.INT) break;
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (Tuple tuple : tuples) {
+                min = Math.min(min, tuple.getInt(offset));
+                max = Math.max(max, tuple.getInt(offset));
             }
-            mainMemory.getBlock(9).clear();
-
-            /* Finish for one block of large table */
+            long range = (long) max - min + 1;
+            if (range > numTuples + MAX_EXTRA_RANGE) break;
+            offsets[numCounted] = offset;
+            mins[numCounted] = min;
+            ranges[numCounted] = (int) Math.max(range, 1);
         }
-        clearMainMemory(mainMemory);
-        return tempRelationName;
+        if (numCounted == 0) return null;
+
+        Tuple[] sorted = tuples.toArray(new Tuple[numTuples]);
+        Tuple[] buffer = new Tuple[numTuples];
+        for (int f = numCounted - 1; f >= 0; f--) {
+            int[] starts = new int[ranges[f] + 1];
+            for (Tuple tuple : sorted) starts[tuple.getInt(offsets[f]) - mins[f] + 1]++;
+            for (int i = 1; i <= ranges[f]; i++) starts[i] += starts[i - 1];
+            for (Tuple tuple : sorted) buffer[starts[tuple.getInt(offsets[f]) - mins[f]]++] = tuple;
+            Tuple[] temp = sorted;
+            sorted = buffer;
+            buffer = temp;
+        }
+        if (numCounted == fields.size()) return sorted;
+
+        /* the other fields break the ties */
+        SortKey.Encoder encoder = new SortKey.Encoder(schema,
+                new ArrayList<>(fields.subList(numCounted, fields.size())));
+        for (int start = 0, end; start < numTuples; start = end) {
+            for (end = start + 1; end < numTuples && sameCounted(sorted[start], sorted[end], offsets, numCounted); end++) ;
+            if (end - start == 1) continue;
+            SortKey[] keys = new SortKey[end - start];
+            for (int i = start; i < end; i++) keys[i - start] = encoder.encode(sorted[i]);
+            Arrays.sort(keys);
+            for (int i = start; i < end; i++) sorted[i] = keys[i - start].tuple;
+        }
+        return sorted;
     }
 
+    private static boolean sameCounted(Tuple t1, Tuple t2, int[] offsets, int numCounted) {
+        for (int f = 0; f < numCounted; f++) {
+            if (t1.getInt(offsets[f]) != t2.getInt(offsets[f])) return false;
+        }
+        return true;
+    }
 }
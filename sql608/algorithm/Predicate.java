@@ -0,0 +1,8 @@
+package sql608.algorithm;
+
+import storageManager.Tuple;
+
+/* a WHERE condition compiled for one schema, see PredicateCompiler */
+public interface Predicate {
+    boolean test(Tuple tuple);
+}
@@ -0,0 +1,190 @@
+package sql608.algorithm;
+
+import storageManager.FieldType;
+import storageManager.Schema;
+import storageManager.Tuple;
+
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/*
+compile the expression tree of a WHERE clause once per statement
+fields are bound to their offsets in the schema and typed INT or STR20,
+integer constants are parsed once, AND and OR short-circuit
+the result is the same as evaluating the tree with the old string evaluator:
+= compares as integers when the left side is an unsigned integer, otherwise
+the lowercased left side as a string; > < + - * / work on integers
+*/
+public class PredicateCompiler {
+    /* an operand is an int or a string, as its field type or literal tells */
+    private static class Operand {
+        final ToIntFunction<Tuple> intValue;  // int operands
+        final Function<Tuple, String> strValue;  // string operands
+        final boolean constant;
+
+        Operand(ToIntFunction<Tuple> intValue, Function<Tuple, String> strValue, boolean constant) {
+            this.intValue = intValue;
+            this.strValue = strValue;
+            this.constant = constant;
+        }
+
+        boolean isInt() {
+            return intValue != null;
+        }
+
+        int getInt(Tuple tuple) {
+            if (intValue != null) return intValue.applyAsInt(tuple);
+            return Integer.parseInt(strValue.apply(tuple));
+        }
+
+        String getString(Tuple tuple) {
+            if (intValue != null) return Integer.toString(intValue.applyAsInt(tuple));
+            return strValue.apply(tuple);
+        }
+    }
+
+    /* parse and compile a WHERE clause */
+    public static Predicate compile(String whereCondition, Schema schema) {
+        return compile(new ExpressionTree(whereCondition).getRoot(), schema);
+    }
+
+    /* a predicate for tuples of the schema, always true for an empty condition */
+    public static Predicate compile(ExpressionTreeNode root, Schema schema) {
+        if (root == null) return tuple -> true;
+        return predicate(root, schema);
+    }
+
+    private static Predicate predicate(ExpressionTreeNode node, Schema schema) {
+        switch (node.getValue()) {
+            case "&": {
+                Predicate left = predicate(node.getLeft(), schema);
+                Predicate right = predicate(node.getRight(), schema);
+                return tuple -> left.test(tuple) && right.test(tuple);
+            }
+            case "|": {
+                Predicate left = predicate(node.getLeft(), schema);
+                Predicate right = predicate(node.getRight(), schema);
+                return tuple -> left.test(tuple) || right.test(tuple);
+            }
+            case "=":
+                return equality(operand(node.getLeft(), schema), operand(node.getRight(), schema));
+            case ">": {
+                Operand left = operand(node.getLeft(), schema);
+                Operand right = operand(node.getRight(), schema);
+                return tuple -> left.getInt(tuple) > right.getInt(tuple);
+            }
+            case "<": {
+                Operand left = operand(node.getLeft(), schema);
+                Operand right = operand(node.getRight(), schema);
+                return tuple -> left.getInt(tuple) < right.getInt(tuple);
+            }
+            default: {
+                /* an operand standing for a condition holds only if it reads "true" */
+                Operand operand = operand(node, schema);
+                return tuple -> Boolean.parseBoolean(operand.getString(tuple));
+            }
+        }
+    }
+
+    private static Predicate equality(Operand left, Operand right) {
+        if (left.isInt() && right.isInt()) {
+            ToIntFunction<Tuple> leftValue = left.intValue;
+            if (right.constant) {
+                int value = right.intValue.applyAsInt(null);
+                return tuple -> leftValue.applyAsInt(tuple) == value;
+            }
+            ToIntFunction<Tuple> rightValue = right.intValue;
+            return tuple -> leftValue.applyAsInt(tuple) == rightValue.applyAsInt(tuple);
+        }
+        if (right.constant && !right.isInt()) {
+            String value = stripQuotes(right.strValue.apply(null));
+            return tuple -> stringEquals(left.getString(tuple), value);
+        }
+        return tuple -> stringEquals(left.getString(tuple), stripQuotes(right.getString(tuple)));
+    }
+
+    private static Operand operand(ExpressionTreeNode node, Schema schema) {
+        String value = node.getValue();
+        switch (value) {
+            case "&":
+            case "|":
+            case "=":
+            case ">":
+            case "<": {
+                Predicate predicate = predicate(node, schema);
+                return new Operand(null, tuple -> String.valueOf(predicate.test(tuple)), false);
+            }
+            case "+":
+            case "-":
+            case "*":
+            case "/":
+                return arithmetic(value, operand(node.getLeft(), schema), operand(node.getRight(), schema));
+            default:
+                return leaf(value, schema);
+        }
+    }
+
+    private static Operand arithmetic(String operator, Operand left, Operand right) {
+        switch (operator) {
+            case "+":
+                return new Operand(tuple -> left.getInt(tuple) + right.getInt(tuple), null, false);
+            case "-":
+                return new Operand(tuple -> left.getInt(tuple) - right.getInt(tuple), null, false);
+            case "*":
+                return new Operand(tuple -> left.getInt(tuple) * right.getInt(tuple), null, false);
+            default:
+                return new Operand(tuple -> left.getInt(tuple) / right.getInt(tuple), null, false);
+        }
+    }
+
+    /*
+    an integer constant, a field of the schema (table.attr falls back to attr),
+    or else a string constant
+    */
+    private static Operand leaf(String value, Schema schema) {
+        if (isInteger(value)) {
+            try {
+                int constant = Integer.parseInt(value);
+                return new Operand(tuple -> constant, null, true);
+            } catch (NumberFormatException e) {
+                return new Operand(null, tuple -> value, true);
+            }
+        }
+        String field = value;
+        if (!schema.fieldNameExists(field) && field.contains(".")) field = field.split("\\.")[1];
+        if (!schema.fieldNameExists(field)) return new Operand(null, tuple -> value, true);
+
+        int offset = schema.getFieldOffset(field);
+        if (schema.getFieldType(offset) == FieldType.INT) {
+            return new Operand(tuple -> tuple.getInt(offset), null, false);
+        }
+        return new Operand(null, tuple -> {
+            String str = tuple.getString(offset);
+            return str == null ? "null" : str;
+        }, false);
+    }
+
+    /* = on strings: integers when the left side is one, else the lowercased left side */
+    private static boolean stringEquals(String left, String right) {
+        if (isInteger(left)) return Integer.parseInt(left) == Integer.parseInt(right);
+        if (left.length() != right.length()) return false;
+        for (int i = 0; i < left.length(); i++) {
+            if (Character.toLowerCase(left.charAt(i)) != right.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static String stripQuotes(String str) {
+        return str.indexOf('"') < 0 ? str : str.replace("\"", "");
+    }
+
+    /* unsigned integer, the same as matching \d+ */
+    public static boolean isInteger(String str) {
+        if (str.isEmpty()) return false;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+package sql608.algorithm;
+
+import storageManager.Block;
+import storageManager.MainMemory;
+import storageManager.Relation;
+import storageManager.Tuple;
+
+/*
+compaction of a relation with holes left by DELETE
+one sequential pass: the first half of main memory reads the relation,
+the second half collects the valid tuples into densely packed blocks
+that are written back from the start of the relation
+the write position never passes the read position, so the relation is
+rewritten in place, and the blocks left at the end are deleted
+*/
+public class Vacuum {
+    // clear all blocks of Main Memory
+    private static void clearMainMemory(MainMemory mainMemory) {
+        int numberOfBlocks = mainMemory.getMemorySize();
+        for (int i = 0; i < numberOfBlocks; i++) {
+            mainMemory.getBlock(i).clear();
+        }
+    }
+
+    /* rewrite the relation without holes, return the number of blocks reclaimed */
+    public static int relation(Relation relation, MainMemory mainMemory) {
+        int memSize = mainMemory.getMemorySize();
+        if (memSize < 2) {
+            System.err.print("vacuum ERROR: compaction needs at least 2 memory blocks" + "\n");
+            return 0;
+        }
+        int numInput = memSize / 2;
+        int outFirst = numInput;
+        int numOutput = memSize - numInput;
+        int numRelationBlocks = relation.getNumOfBlocks();
+        if (numRelationBlocks == 0) return 0;
+
+        clearMainMemory(mainMemory);
+        int writeDiskId = 0;
+        int outCur = 0;  // output block being filled, counted from outFirst
+        for (int readDiskId = 0; readDiskId < numRelationBlocks; readDiskId += numInput) {
+            int blocksToMem = Math.min(numInput, numRelationBlocks - readDiskId);
+            for (int i = 0; i < blocksToMem; i++) mainMemory.getBlock(i).clear();
+            relation.getBlocks(readDiskId, 0, blocksToMem);
+            for (int i = 0; i < blocksToMem; i++) {
+                Block block = mainMemory.getBlock(i);
+                if (block.isEmpty()) continue;
+                for (Tuple tuple : block.getTuples()) {
+                    if (tuple.isNull()) continue;
+                    Block out = mainMemory.getBlock(outFirst + outCur);
+                    if (out.isFull()) {
+                        if (outCur + 1 < numOutput) {
+                            outCur++;
+                        } else {
+                            /* output run is full, write it behind the read position */
+                            relation.setBlocks(writeDiskId, outFirst, numOutput);
+                            writeDiskId += numOutput;
+                            for (int j = 0; j < numOutput; j++) mainMemory.getBlock(outFirst + j).clear();
+                            outCur = 0;
+                        }
+                        out = mainMemory.getBlock(outFirst + outCur);
+                    }
+                    out.appendTuple(tuple);
+                }
+            }
+        }
+        /* write the remaining output blocks */
+        int numLeft = mainMemory.getBlock(outFirst + outCur).isEmpty() ? outCur : outCur + 1;
+        if (numLeft > 0) {
+            relation.setBlocks(writeDiskId, outFirst, numLeft);
+            writeDiskId += numLeft;
+        }
+        if (writeDiskId < numRelationBlocks) relation.deleteBlocks(writeDiskId);
+        clearMainMemory(mainMemory);
+        return numRelationBlocks - writeDiskId;
+    }
+}
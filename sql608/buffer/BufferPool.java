@@ -0,0 +1,308 @@
+package sql608.buffer;
+
+import storageManager.Config;
+import storageManager.MainMemory;
+import storageManager.Relation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+buffer pool over the main memory blocks (frames)
+cache disk blocks by (relation, block index) so repeated reads hit memory
+pin a block before using its frame and unpin it when done, telling
+whether it was modified; modified (dirty) blocks are written back when
+they are evicted or flushed
+the replacement policy (CLOCK or LRU) picks which unpinned frame to reuse
+
+operators that manage main memory by hand must call evictAll() first,
+so that no cached block is overwritten behind the pool's back
+*/
+public class BufferPool {
+    /* a disk block of a relation */
+    private static class PageId {
+        final Relation relation;
+        final int blockIndex;
+
+        PageId(Relation relation, int blockIndex) {
+            this.relation = relation;
+            this.blockIndex = blockIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PageId)) return false;
+            PageId other = (PageId) o;
+            return relation == other.relation && blockIndex == other.blockIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(relation) * 31 + blockIndex;
+        }
+    }
+
+    private MainMemory mainMemory;
+    private ReplacementPolicy policy;
+    private PageId[] pages;  // block held by each frame, null if none
+    private int[] pinCounts;
+    private boolean[] dirty;
+    private boolean[] prefetched;  // read ahead and not pinned since, its miss already counted
+    private Map<PageId, Integer> pageToFrame;
+    /* blocks appended in the pool but not yet written to the relation */
+    private Map<Relation, Integer> pendingBlocks;
+    private long hits;
+    private long misses;
+
+    public BufferPool(MainMemory mainMemory, ReplacementPolicy policy) {
+        int numFrames = mainMemory.getMemorySize();
+        this.mainMemory = mainMemory;
+        this.policy = policy;
+        pages = new PageId[numFrames];
+        pinCounts = new int[numFrames];
+        dirty = new boolean[numFrames];
+        prefetched = new boolean[numFrames];
+        pageToFrame = new HashMap<>();
+        pendingBlocks = new HashMap<>();
+    }
+
+    /* the policy Config.BUFFER_POLICY names, CLOCK by default */
+    public BufferPool(MainMemory mainMemory) {
+        this(mainMemory, newPolicy(Config.BUFFER_POLICY, mainMemory.getMemorySize()));
+    }
+
+    private static ReplacementPolicy newPolicy(String name, int numFrames) {
+        if ("lru".equalsIgnoreCase(name)) return new LruPolicy(numFrames);
+        if (!"clock".equalsIgnoreCase(name)) {
+            System.err.print("BufferPool ERROR: unknown replacement policy " + name + ", CLOCK used" + "\n");
+        }
+        return new ClockPolicy(numFrames);
+    }
+
+    /*
+    pin the block of relation and return the memory frame holding it
+    read from disk only if the block is not cached
+    return -1 if every frame is pinned
+    */
+    public int pin(Relation relation, int blockIndex) {
+        Integer cached = pageToFrame.get(new PageId(relation, blockIndex));
+        if (cached != null) {
+            /* a block read ahead was counted as a miss when read */
+            if (prefetched[cached]) prefetched[cached] = false;
+            else hits++;
+            pinCounts[cached]++;
+            policy.access(cached);
+            return cached;
+        }
+        int frame = grabFrame();
+        if (frame < 0) return -1;
+        misses++;
+        /* an empty disk block is not copied to memory, keep the frame empty */
+        if (blockIndex >= relation.getNumOfBlocks() || !relation.getBlock(blockIndex, frame)) {
+            mainMemory.getBlock(frame).clear();
+        }
+        mapFrame(frame, new PageId(relation, blockIndex));
+        return frame;
+    }
+
+    /*
+    pin an empty frame for a block appended at the end of the relation,
+    it is written to the relation when flushed or evicted
+    */
+    public int pinNew(Relation relation, int blockIndex) {
+        PageId page = new PageId(relation, blockIndex);
+        if (pageToFrame.containsKey(page)) return pin(relation, blockIndex);
+        int frame = grabFrame();
+        if (frame < 0) return -1;
+        mainMemory.getBlock(frame).clear();
+        mapFrame(frame, page);
+        dirty[frame] = true;
+        if (blockIndex + 1 > getNumOfBlocks(relation)) pendingBlocks.put(relation, blockIndex + 1);
+        return frame;
+    }
+
+    /*
+    read ahead: load the blocks of the relation from blockIndex on that are not
+    cached yet, as many as fit the largest run of contiguous unpinned frames
+    (at most maxBlocks), with a single multi-block read
+    the blocks are left unpinned, the following pins hit them
+    return the number of blocks read
+    */
+    public int readAhead(Relation relation, int blockIndex, int maxBlocks) {
+        int numBlocks = Math.min(maxBlocks, relation.getNumOfBlocks() - blockIndex);
+        int run = 0;
+        while (run < numBlocks && !pageToFrame.containsKey(new PageId(relation, blockIndex + run))) run++;
+        if (run <= 1) return 0;
+
+        /* largest run of contiguous frames nobody pins */
+        int bestStart = -1, bestLength = 0;
+        for (int frame = 0; frame < pages.length; ) {
+            if (pinCounts[frame] > 0) {
+                frame++;
+                continue;
+            }
+            int start = frame;
+            while (frame < pages.length && pinCounts[frame] == 0) frame++;
+            if (frame - start > bestLength) {
+                bestStart = start;
+                bestLength = frame - start;
+            }
+        }
+        int length = Math.min(run, bestLength);
+        if (length <= 1) return 0;
+
+        for (int frame = bestStart; frame < bestStart + length; frame++) {
+            if (pages[frame] == null) continue;
+            writeBack(frame);
+            unmapFrame(frame);
+        }
+        relation.getBlocks(blockIndex, bestStart, length);
+        misses += length;
+        for (int i = 0; i < length; i++) {
+            mapFrame(bestStart + i, new PageId(relation, blockIndex + i));
+            pinCounts[bestStart + i] = 0;
+            prefetched[bestStart + i] = true;
+        }
+        return length;
+    }
+
+    /*
+    pin an empty frame that holds no disk block, as working memory of an operator
+    (e.g. the inner tuples of a join); it stays pinned until released
+    return -1 if every frame is pinned
+    */
+    public int allocate() {
+        int frame = grabFrame();
+        if (frame < 0) return -1;
+        mainMemory.getBlock(frame).clear();
+        pinCounts[frame] = 1;
+        dirty[frame] = false;
+        return frame;
+    }
+
+    /* give back a frame from allocate() */
+    public void release(int frame) {
+        if (pages[frame] != null || pinCounts[frame] != 1) {
+            System.err.print("release ERROR: frame " + frame + " is not allocated" + "\n");
+            return;
+        }
+        pinCounts[frame] = 0;
+    }
+
+    /* number of frames nobody pins */
+    public int getNumOfUnpinned() {
+        int count = 0;
+        for (int pinCount : pinCounts) if (pinCount == 0) count++;
+        return count;
+    }
+
+    /* release a pinned frame, mark it dirty if its block was modified */
+    public void unpin(int frame, boolean isDirty) {
+        if (pinCounts[frame] == 0) {
+            System.err.print("unpin ERROR: frame " + frame + " is not pinned" + "\n");
+            return;
+        }
+        pinCounts[frame]--;
+        if (isDirty) dirty[frame] = true;
+    }
+
+    /*
+    the block is in a frame that may be newer than on disk: modified, appended
+    and not written yet, or pinned by a caller that may still modify it
+    */
+    public boolean isDirty(Relation relation, int blockIndex) {
+        Integer frame = pageToFrame.get(new PageId(relation, blockIndex));
+        return frame != null && (dirty[frame] || pinCounts[frame] > 0);
+    }
+
+    /* number of blocks of the relation, counting appended blocks still in the pool */
+    public int getNumOfBlocks(Relation relation) {
+        Integer pending = pendingBlocks.get(relation);
+        int onDisk = relation.getNumOfBlocks();
+        return pending == null ? onDisk : Math.max(onDisk, pending);
+    }
+
+    /* write back every dirty block of the relation */
+    public void flush(Relation relation) {
+        for (int frame = 0; frame < pages.length; frame++) {
+            if (pages[frame] != null && pages[frame].relation == relation) writeBack(frame);
+        }
+        pendingBlocks.remove(relation);
+    }
+
+    /* write back every dirty block */
+    public void flushAll() {
+        for (int frame = 0; frame < pages.length; frame++) writeBack(frame);
+        pendingBlocks.clear();
+    }
+
+    /* forget the blocks of a relation without writing them, e.g. when it is dropped */
+    public void discard(Relation relation) {
+        for (int frame = 0; frame < pages.length; frame++) {
+            if (pages[frame] != null && pages[frame].relation == relation) unmapFrame(frame);
+        }
+        pendingBlocks.remove(relation);
+    }
+
+    /* write back and forget every block, handing the whole memory back to the caller */
+    public void evictAll() {
+        flushAll();
+        for (int frame = 0; frame < pages.length; frame++) {
+            if (pages[frame] != null) unmapFrame(frame);
+            pinCounts[frame] = 0;
+        }
+    }
+
+    /* count the hits and misses from zero, e.g. for each statement */
+    public void resetCounts() {
+        hits = 0;
+        misses = 0;
+    }
+
+    /* blocks pinned that were cached, not counting the first pin of a block read ahead */
+    public long getHits() {
+        return hits;
+    }
+
+    /* blocks pinned or read ahead that were not cached */
+    public long getMisses() {
+        return misses;
+    }
+
+    /* a free frame, or the victim of the policy after writing it back */
+    private int grabFrame() {
+        for (int frame = 0; frame < pages.length; frame++) {
+            if (pages[frame] == null && pinCounts[frame] == 0) return frame;
+        }
+        int frame = policy.victim(pinCounts);
+        if (frame < 0) {
+            System.err.print("BufferPool ERROR: all frames are pinned" + "\n");
+            return -1;
+        }
+        writeBack(frame);
+        unmapFrame(frame);
+        return frame;
+    }
+
+    private void mapFrame(int frame, PageId page) {
+        pages[frame] = page;
+        pageToFrame.put(page, frame);
+        pinCounts[frame] = 1;
+        dirty[frame] = false;
+        policy.access(frame);
+    }
+
+    private void unmapFrame(int frame) {
+        pageToFrame.remove(pages[frame]);
+        pages[frame] = null;
+        dirty[frame] = false;
+        prefetched[frame] = false;
+        policy.remove(frame);
+    }
+
+    private void writeBack(int frame) {
+        if (pages[frame] == null || !dirty[frame]) return;
+        pages[frame].relation.setBlock(pages[frame].blockIndex, frame);
+        dirty[frame] = false;
+    }
+}
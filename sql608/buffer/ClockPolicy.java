@@ -0,0 +1,42 @@
+package sql608.buffer;
+
+/*
+CLOCK (second chance): a reference bit per frame, set on every access;
+the hand sweeps the frames, clearing set bits, and stops at the first
+unpinned frame whose bit is already clear
+*/
+public class ClockPolicy implements ReplacementPolicy {
+    private boolean[] referenced;
+    private int hand;
+
+    public ClockPolicy(int numFrames) {
+        referenced = new boolean[numFrames];
+        hand = 0;
+    }
+
+    @Override
+    public void access(int frame) {
+        referenced[frame] = true;
+    }
+
+    @Override
+    public void remove(int frame) {
+        referenced[frame] = false;
+    }
+
+    @Override
+    public int victim(int[] pinCounts) {
+        // two full turns: the first may only clear reference bits
+        for (int i = 0; i < 2 * pinCounts.length; i++) {
+            int frame = hand;
+            hand = (hand + 1) % pinCounts.length;
+            if (pinCounts[frame] > 0) continue;
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            return frame;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,48 @@
+package sql608.buffer;
+
+import storageManager.Relation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/*
+free-space map: the blocks of each relation that have free tuple slots,
+i.e. holes left by DELETE
+inserts fill these blocks before appending at the end of the relation
+an entry may be stale when a relation is rewritten outside the buffer
+pool (sorting), so the caller checks the block and removes the entry
+when no slot is free anymore
+*/
+public class FreeSpaceMap {
+    private Map<Relation, TreeSet<Integer>> freeBlocks;
+
+    public FreeSpaceMap() {
+        freeBlocks = new HashMap<>();
+    }
+
+    /* the block has at least one free slot */
+    public void add(Relation relation, int blockIndex) {
+        freeBlocks.computeIfAbsent(relation, k -> new TreeSet<>()).add(blockIndex);
+    }
+
+    /* the block has no free slot left */
+    public void remove(Relation relation, int blockIndex) {
+        TreeSet<Integer> blocks = freeBlocks.get(relation);
+        if (blocks == null) return;
+        blocks.remove(blockIndex);
+        if (blocks.isEmpty()) freeBlocks.remove(relation);
+    }
+
+    /* forget the relation, e.g. when it is dropped */
+    public void remove(Relation relation) {
+        freeBlocks.remove(relation);
+    }
+
+    /* lowest block with free slots, -1 if none */
+    public int firstFreeBlock(Relation relation) {
+        TreeSet<Integer> blocks = freeBlocks.get(relation);
+        if (blocks == null) return -1;
+        return blocks.first();
+    }
+}
@@ -0,0 +1,32 @@
+package sql608.buffer;
+
+/* least recently used: evict the unpinned frame with the oldest access */
+public class LruPolicy implements ReplacementPolicy {
+    private long[] lastAccess;
+    private long clock;
+
+    public LruPolicy(int numFrames) {
+        lastAccess = new long[numFrames];
+        clock = 0;
+    }
+
+    @Override
+    public void access(int frame) {
+        lastAccess[frame] = ++clock;
+    }
+
+    @Override
+    public void remove(int frame) {
+        lastAccess[frame] = 0;
+    }
+
+    @Override
+    public int victim(int[] pinCounts) {
+        int victim = -1;
+        for (int frame = 0; frame < pinCounts.length; frame++) {
+            if (pinCounts[frame] > 0) continue;
+            if (victim == -1 || lastAccess[frame] < lastAccess[victim]) victim = frame;
+        }
+        return victim;
+    }
+}
@@ -0,0 +1,17 @@
+package sql608.buffer;
+
+/*
+decide which unpinned frame of the buffer pool gives up its block
+when a block that is not cached has to be read in
+*/
+public interface ReplacementPolicy {
+
+    /* the frame was pinned (hit or freshly loaded) */
+    void access(int frame);
+
+    /* the frame no longer holds a block */
+    void remove(int frame);
+
+    /* choose a frame whose pin count is 0, or -1 if every frame is pinned */
+    int victim(int[] pinCounts);
+}
@@ -0,0 +1,67 @@
+package sql608.buffer;
+
+import storageManager.MainMemory;
+import storageManager.Relation;
+import storageManager.Tuple;
+
+import java.util.ArrayList;
+
+/*
+sequential scan of a relation through the buffer pool
+a block missing from the pool is read together with the following ones,
+as many as the free frames allow, in one multi-block read: the disk charges
+the seek and the rotation once per read instead of once per block
+blocks already cached are not read again
+given a sorted list of blocks (e.g. from an index) only those are read,
+a run of consecutive ones still in one read
+*/
+public class SequentialScan {
+    private BufferPool pool;
+    private Relation relation;
+    private MainMemory mainMemory;
+    private int numRelationBlocks;
+    private int curDiskId;
+    private int[] blocks;  // the blocks to read, null for all
+    private int curBlock;  // next entry of blocks
+
+    public SequentialScan(BufferPool pool, Relation relation, MainMemory mainMemory) {
+        this.pool = pool;
+        this.relation = relation;
+        this.mainMemory = mainMemory;
+        this.numRelationBlocks = pool.getNumOfBlocks(relation);
+        this.curDiskId = 0;
+    }
+
+    public SequentialScan(BufferPool pool, Relation relation, MainMemory mainMemory, int[] blocks) {
+        this(pool, relation, mainMemory);
+        this.blocks = blocks;
+        this.curBlock = 0;
+    }
+
+    /* tuples of the next block, holes included; null at the end of the relation */
+    public ArrayList<Tuple> nextBlock() {
+        int run;
+        if (blocks == null) {
+            if (curDiskId >= numRelationBlocks) return null;
+            run = numRelationBlocks - curDiskId;
+        } else {
+            if (curBlock >= blocks.length || blocks[curBlock] >= numRelationBlocks) return null;
+            curDiskId = blocks[curBlock++];
+            run = 1;
+            while (curBlock - 1 + run < blocks.length && blocks[curBlock - 1 + run] == curDiskId + run) run++;
+        }
+        pool.readAhead(relation, curDiskId, run);
+        int frame = pool.pin(relation, curDiskId);
+        if (frame < 0) return null;
+        /* getTuples returns a snapshot, the frame can be released right away */
+        ArrayList<Tuple> tuples = mainMemory.getBlock(frame).getTuples();
+        pool.unpin(frame, false);
+        curDiskId++;
+        return tuples;
+    }
+
+    /* the block of the tuples returned last */
+    public int getBlockIndex() {
+        return curDiskId - 1;
+    }
+}
@@ -0,0 +1,89 @@
+package sql608.helper;
+
+import storageManager.Block;
+import storageManager.MainMemory;
+import storageManager.Relation;
+import storageManager.Tuple;
+
+/*
+append tuples to the end of a relation through a run of main memory blocks
+the final disk block is read once, the run is filled in memory and written
+with one setBlocks when it is full or the cursor is closed
+the memory blocks belong to the cursor until close(), a caller that
+needs them in between closes the cursor and appends again later
+*/
+public class AppendCursor {
+    private Relation relation;
+    private MainMemory mainMemory;
+    private int firstMemBlock;
+    private int numMemBlocks;
+    private int curMemBlock;  // block of the run being filled, counted from firstMemBlock
+    private int firstDiskId;  // disk block of the first block of the run
+    private boolean isOpen;  // the run holds the tail of the relation
+    private boolean isDirty;
+
+    public AppendCursor(Relation relation, MainMemory mainMemory, int firstMemBlock, int numMemBlocks) {
+        this.relation = relation;
+        this.mainMemory = mainMemory;
+        this.firstMemBlock = firstMemBlock;
+        this.numMemBlocks = numMemBlocks;
+        this.isOpen = false;
+        this.isDirty = false;
+    }
+
+    /* return the position of the tuple: its disk block times the tuples per block plus its slot */
+    public int append(Tuple tuple) {
+        if (!isOpen) open();
+        Block block = mainMemory.getBlock(firstMemBlock + curMemBlock);
+        if (block.isFull()) {
+            if (curMemBlock + 1 < numMemBlocks) {
+                /* move on to the next block of the run */
+                curMemBlock++;
+            } else {
+                /* run is full, write it and start over after it */
+                flush();
+                clearRun();
+                firstDiskId += numMemBlocks;
+                curMemBlock = 0;
+            }
+            block = mainMemory.getBlock(firstMemBlock + curMemBlock);
+        }
+        int slot = block.getTuples().size();
+        block.appendTuple(tuple);
+        isDirty = true;
+        return (firstDiskId + curMemBlock) * tuple.getTuplesPerBlock() + slot;
+    }
+
+    /* write the filled blocks back and release the memory blocks */
+    public void close() {
+        if (!isOpen) return;
+        flush();
+        isOpen = false;
+    }
+
+    /* read in the final block of the relation, if any */
+    private void open() {
+        int numRelationBlocks = relation.getNumOfBlocks();
+        clearRun();
+        if (numRelationBlocks == 0) {
+            firstDiskId = 0;
+        } else {
+            firstDiskId = numRelationBlocks - 1;
+            relation.getBlock(firstDiskId, firstMemBlock);
+        }
+        curMemBlock = 0;
+        isOpen = true;
+        isDirty = false;
+    }
+
+    private void flush() {
+        if (!isDirty) return;
+        if (curMemBlock == 0) relation.setBlock(firstDiskId, firstMemBlock);
+        else relation.setBlocks(firstDiskId, firstMemBlock, curMemBlock + 1);
+        isDirty = false;
+    }
+
+    private void clearRun() {
+        for (int i = 0; i < numMemBlocks; i++) mainMemory.getBlock(firstMemBlock + i).clear();
+    }
+}
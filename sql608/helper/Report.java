@@ -0,0 +1,22 @@
+package sql608.helper;
+
+import java.util.ArrayList;
+
+/*
+what the operators of a statement report about their run (partitions
+spilled, tuples dropped, blocks an index reads), kept until the result is
+out and printed with the disk I/Os of the statement, not among its rows
+*/
+public class Report {
+    private static ArrayList<String> lines = new ArrayList<>();
+
+    public static void add(String line) {
+        lines.add(line);
+    }
+
+    /* print the lines in the order they came, then forget them */
+    public static void print() {
+        for (String line : lines) System.out.println(line);
+        lines.clear();
+    }
+}
@@ -1,8 +1,10 @@
 package sql608.helper;
 
-import sql608.algorithm.ExpressionTree;
+import sql608.algorithm.Predicate;
+import sql608.algorithm.PredicateCompiler;
+import sql608.buffer.BufferPool;
+import sql608.buffer.SequentialScan;
 import sql608.parse.ParserContainer;
-import storageManager.Block;
 import storageManager.MainMemory;
 import storageManager.Relation;
 import storageManager.Tuple;
@@ -12,9 +14,14 @@ import java.util.ArrayList;
 /* Print out the tuple to the interface for selection methods */
 public class Show {
     /* Print out all fields of tuples in the relation satisfy the condition */
-    /* able to handle DISTINCT after sorting */
     public static void tuples(ParserContainer parserContainer, Relation relation,
-                              ArrayList<String> fieldNames, MainMemory mainMemory) {
+                              ArrayList<String> fieldNames, BufferPool pool, MainMemory mainMemory) {
+        tuples(parserContainer, relation, fieldNames, null, pool, mainMemory);
+    }
+
+    /* only the given sorted blocks may hold tuples satisfying the condition, all if null */
+    public static void tuples(ParserContainer parserContainer, Relation relation, ArrayList<String> fieldNames,
+                              int[] blocks, BufferPool pool, MainMemory mainMemory) {
         /* print the head of the relation */
         if (parserContainer.getTable() != null
             && !parserContainer.getTable().contains("Join")
@@ -29,25 +36,22 @@ public class Show {
         }
         System.out.println();
 
+        /* the where condition is compiled once for the whole scan */
+        String whereCondition = parserContainer.isWhere() ? parserContainer.getConditions() : null;
+        Predicate where = PredicateCompiler.compile(whereCondition, relation.getSchema());
+
         /* start to print the tuples */
         int numOfRows = 0;
-        String prev = null;  // hold a previous pointer to eliminate duplicate
-        /* loop over blocks of relation from disk to main memory */
-        int numRelationBlocks = relation.getNumOfBlocks();
-        for (int i = 0; i < numRelationBlocks; i++) {
-            relation.getBlock(i, 0);
-            Block memBlock = mainMemory.getBlock(0);
-
-            if (memBlock.getNumTuples() == 0) continue;
+        /* loop over blocks of relation, read ahead in runs of blocks */
+        SequentialScan scan = new SequentialScan(pool, relation, mainMemory, blocks);
+        ArrayList<Tuple> tuples;
+        while ((tuples = scan.nextBlock()) != null) {
+            if (tuples.isEmpty()) continue;
             /* read and print tuples in the mem block */
-            for (Tuple tuple : memBlock.getTuples()) {
+            for (Tuple tuple : tuples) {
                 if (tuple.isNull()) continue;
-                /* use expression tree to check where condition */
-                if (parserContainer.isWhere()) {
-                    ExpressionTree expressionTree =
-                            new ExpressionTree(parserContainer.getConditions(), parserContainer.getTable());
-                    if (!ExpressionTree.checkCondition(tuple, expressionTree.getRoot())) continue;
-                }
+                /* check where condition */
+                if (!where.test(tuple)) continue;
 
                 StringBuilder sb = new StringBuilder();
                 for (String field : fieldNames) {
@@ -58,11 +62,7 @@ public class Show {
 
                     sb.append(val).append("\t");
                 }
-                String cur = sb.toString();
-                /* handle distinct (duplicate eliminate)*/
-                if (parserContainer.isDistinct() && cur.equals(prev)) continue;
-                prev = cur;
-                System.out.println(cur);
+                System.out.println(sb.toString());
                 numOfRows++;
             }
         }
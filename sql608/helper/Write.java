@@ -1,42 +1,90 @@
 package sql608.helper;
 
+import sql608.buffer.BufferPool;
+import sql608.buffer.FreeSpaceMap;
 import storageManager.Block;
 import storageManager.MainMemory;
 import storageManager.Relation;
 import storageManager.Tuple;
 
+import java.util.ArrayList;
+
 public class Write {
 
     /*
-    Append the tuple in main memBlockId and set back to relation end in the disk
-    The max fields of one block is 8, so tuple with fields
-    more than four will consume one block
+    Insert the tuple into the relation through the buffer pool
+    fill a hole recorded in the free-space map first, otherwise append to the final block
+    the block stays cached and dirty, it reaches the disk when the pool flushes it
+    freeSpace may be null to always append
+    bulk appends outside the pool use AppendCursor
+    return the position of the tuple (block times tuples per block plus slot), -1 if not written
     */
-    public static void tuple(Tuple tuple, Relation relation, MainMemory mem, int memBlockId) {
-        Block block;
-        /* if relation is empty in the disk, set at disk block 0 */
-        if (relation.getNumOfBlocks() == 0) {
-            block = mem.getBlock(memBlockId);
-            block.clear();
-            block.appendTuple(tuple);
-            relation.setBlock(0, memBlockId);
+    public static int tuple(Tuple tuple, Relation relation, BufferPool pool,
+                            FreeSpaceMap freeSpace, MainMemory mem) {
+        if (freeSpace != null) {
+            int position = toHole(tuple, relation, pool, freeSpace, mem);
+            if (position >= 0) return position;
+        }
+        int numBlocks = pool.getNumOfBlocks(relation);
+        int frame;
+        int blockIndex = numBlocks - 1;
+        if (numBlocks == 0) {
+            blockIndex = 0;
+            frame = pool.pinNew(relation, 0);
         } else {
-            /* read in the final block of the relation already exist in the disk */
-            int finalDiskId = relation.getNumOfBlocks() - 1;
-            relation.getBlock(finalDiskId, memBlockId);
-            block = mem.getBlock(memBlockId);
-            /*
-            if current mem block is full, meaning the disk block is also full
-            write to next block on the disk
-            */
-            if (block.isFull()) {
-                block.clear();
-                block.appendTuple(tuple);
-                relation.setBlock(finalDiskId + 1, memBlockId);
-            } else {
-                block.appendTuple(tuple);
-                relation.setBlock(finalDiskId, memBlockId);
+            frame = pool.pin(relation, blockIndex);
+            /* the final block is full, start a new one after it */
+            if (frame >= 0 && mem.getBlock(frame).isFull()) {
+                pool.unpin(frame, false);
+                blockIndex = numBlocks;
+                frame = pool.pinNew(relation, numBlocks);
+            }
+        }
+        if (frame < 0) return -1;
+        Block block = mem.getBlock(frame);
+        int slot = block.getTuples().size();
+        block.appendTuple(tuple);
+        pool.unpin(frame, true);
+        return blockIndex * tuple.getTuplesPerBlock() + slot;
+    }
+
+    /*
+    Put the tuple into a free slot of a block recorded in the free-space map
+    return its position, -1 if the relation has no hole left
+    */
+    public static int toHole(Tuple tuple, Relation relation, BufferPool pool,
+                                 FreeSpaceMap freeSpace, MainMemory mem) {
+        int blockIndex;
+        while ((blockIndex = freeSpace.firstFreeBlock(relation)) >= 0) {
+            /* the relation may have shrunk since the hole was recorded */
+            if (blockIndex >= pool.getNumOfBlocks(relation)) {
+                freeSpace.remove(relation, blockIndex);
+                continue;
+            }
+            int frame = pool.pin(relation, blockIndex);
+            if (frame < 0) return -1;
+            Block block = mem.getBlock(frame);
+            int slot = freeSlot(block, tuple.getTuplesPerBlock());
+            if (slot < 0) {
+                /* stale entry, the block was rewritten without holes */
+                pool.unpin(frame, false);
+                freeSpace.remove(relation, blockIndex);
+                continue;
             }
+            block.setTuple(slot, tuple);
+            if (freeSlot(block, tuple.getTuplesPerBlock()) < 0) freeSpace.remove(relation, blockIndex);
+            pool.unpin(frame, true);
+            return blockIndex * tuple.getTuplesPerBlock() + slot;
+        }
+        return -1;
+    }
+
+    /* first invalid or unused slot of the block, -1 if the block is full of tuples */
+    public static int freeSlot(Block block, int tuplesPerBlock) {
+        ArrayList<Tuple> tuples = block.getTuples();
+        for (int i = 0; i < tuples.size(); i++) {
+            if (tuples.get(i).isNull()) return i;
         }
+        return tuples.size() < tuplesPerBlock ? tuples.size() : -1;
     }
 }
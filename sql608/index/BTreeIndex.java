@@ -0,0 +1,307 @@
+package sql608.index;
+
+import sql608.algorithm.MultiPass;
+import sql608.algorithm.OnePass;
+import sql608.buffer.BufferPool;
+import sql608.buffer.SequentialScan;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/*
+B+tree secondary index on an INT or STR20 field of a relation
+entries are ordered on key then position, so every entry is unique
+a node is one page: a leaf holds up to 3 entries and the next leaf, an
+inner node up to 2 separator entries and 3 children, child i holding the
+entries from separator i (included) to separator i+1
+an insert splits a full node in two and its separator goes up, the root
+splitting into a new root; a delete only removes the entry, nodes are not
+merged
+built bottom-up from the entries sorted on disk, the leaves full and the
+children spread evenly over the inner nodes of each level
+*/
+public class BTreeIndex extends Index {
+    /* inner: child i at 3i, separator i (from 1) at 3i - 2 and 3i - 1, then the count */
+    private static final int INNER_KEYS = 2;
+
+    private Relation leaves;
+    private Relation inners;
+    private int root;
+    private int height;  // levels of inner nodes, 0 when the root is a leaf
+
+    public BTreeIndex(String name, Relation table, String fieldName, BufferPool pool, MainMemory mainMemory,
+                      SchemaManager schemaManager) {
+        super(name, table, fieldName, pool, mainMemory, schemaManager);
+        /* the pages of an index restored stale, replaced by the next build */
+        leaves = findRelation(name + "Leaves");
+        inners = findRelation(name + "Nodes");
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public double getProbeCost() {
+        return height + 1;
+    }
+
+    @Override
+    public String describe() {
+        return "height " + height;
+    }
+
+    @Override
+    protected void dropPages() {
+        deleteRelation(leaves);
+        deleteRelation(inners);
+        leaves = inners = null;
+    }
+
+    /*
+    build the index from the table: its entries are written to disk, sorted,
+    and read once to write the leaves and, level by level, the inner nodes
+    the sort takes the whole main memory
+    */
+    @Override
+    public void build() {
+        dropPages();
+        leaves = createRelation(name + "Leaves", PAGE_FIELDS);
+        inners = createRelation(name + "Nodes",
+                new String[]{"child0", "key1", "position1", "child1", "key2", "position2", "child2", "count"});
+
+        writeEntries(entries);
+        ArrayList<String> sortFields = new ArrayList<>(Arrays.asList("key", "position"));
+        if (entries.getNumOfBlocks() > mainMemory.getMemorySize()) MultiPass.sort(entries, sortFields, mainMemory);
+        else if (entries.getNumOfBlocks() > 0) OnePass.sort(entries, sortFields, mainMemory);
+
+        /* the children of each level, spread evenly over its nodes */
+        int numEntries = entries.getNumOfTuples();
+        int numLeaves = Math.max(1, (numEntries + PAGE_ENTRIES - 1) / PAGE_ENTRIES);
+        ArrayList<Level> levels = new ArrayList<>();
+        for (int numChildren = numLeaves; numChildren > 1; ) {
+            Level level = new Level(numChildren);
+            levels.add(level);
+            numChildren = level.numNodes;
+        }
+        height = levels.size();
+        root = 0;
+
+        ArrayList<Tuple> leaf = new ArrayList<>();
+        int numWritten = 0;
+        numKeys = 0;
+        Tuple last = null;
+        SequentialScan scan = new SequentialScan(pool, entries, mainMemory);
+        ArrayList<Tuple> tuples;
+        while ((tuples = scan.nextBlock()) != null) {
+            for (Tuple entry : tuples) {
+                if (entry.isNull()) continue;
+                if (last == null || last.compareField(0, entry, 0) != 0) numKeys++;
+                last = entry;
+                leaf.add(entry);
+                if (leaf.size() == PAGE_ENTRIES) numWritten = addLeaf(leaf, numWritten, numLeaves, levels);
+            }
+        }
+        if (!leaf.isEmpty() || numWritten == 0) addLeaf(leaf, numWritten, numLeaves, levels);
+        clearEntries();
+        stale = false;
+    }
+
+    /* the nodes of one level of inner nodes being built */
+    private static class Level {
+        final int numChildren;
+        final int numNodes;
+        int numDone;  // nodes written
+        Tuple low;  // the smallest entry under the node being filled
+        ArrayList<Tuple> keys = new ArrayList<>();
+        ArrayList<Integer> children = new ArrayList<>();
+
+        Level(int numChildren) {
+            this.numChildren = numChildren;
+            this.numNodes = (numChildren + INNER_KEYS) / (INNER_KEYS + 1);
+        }
+
+        /* children of the node being filled */
+        int getFanOut() {
+            return numChildren / numNodes + (numDone < numChildren % numNodes ? 1 : 0);
+        }
+    }
+
+    /* write the leaf, numWritten leaves being written before it, and pass it to its parent */
+    private int addLeaf(ArrayList<Tuple> leaf, int numWritten, int numLeaves, ArrayList<Level> levels) {
+        int id = numWritten;
+        write(leaves, id, toPage(leaves, leaf, id + 1 < numLeaves ? id + 1 : -1));
+        if (!levels.isEmpty()) addChild(levels, 0, leaf.get(0), id);
+        leaf.clear();
+        return numWritten + 1;
+    }
+
+    private void addChild(ArrayList<Level> levels, int l, Tuple low, int child) {
+        Level level = levels.get(l);
+        if (level.children.isEmpty()) level.low = low;
+        else level.keys.add(low);
+        level.children.add(child);
+        if (level.children.size() < level.getFanOut()) return;
+        int id = pool.getNumOfBlocks(inners);
+        write(inners, id, toInner(level.keys, level.children));
+        level.numDone++;
+        level.keys.clear();
+        level.children.clear();
+        if (l + 1 < levels.size()) addChild(levels, l + 1, level.low, id);
+        else root = id;
+    }
+
+    @Override
+    public void insert(Tuple tuple, int position) {
+        if (stale) return;
+        Tuple entry = entry(tuple, position);
+        int[] path = new int[height + 1];
+        int[] slots = new int[height + 1];
+        int id = descend(entry, path, slots);
+        if (id < 0) return;
+
+        Tuple node = read(leaves, id);
+        ArrayList<Tuple> leaf = getEntries(node);
+        int i = 0;
+        while (i < leaf.size() && compare(leaf.get(i), 0, entry) < 0) i++;
+        leaf.add(i, entry);
+        int next = node.getInt(NEXT);
+        if (leaf.size() <= PAGE_ENTRIES) {
+            write(leaves, id, toPage(leaves, leaf, next));
+            return;
+        }
+        /* split the leaf, the right half after it in the chain */
+        int half = leaf.size() / 2;
+        int newId = pool.getNumOfBlocks(leaves);
+        List<Tuple> right = leaf.subList(half, leaf.size());
+        Tuple separator = right.get(0);
+        write(leaves, newId, toPage(leaves, right, next));
+        write(leaves, id, toPage(leaves, leaf.subList(0, half), newId));
+
+        /* the separator and the new node go up as long as the nodes split */
+        int child = newId;
+        for (int level = 1; level <= height; level++) {
+            Tuple inner = read(inners, path[level]);
+            ArrayList<Tuple> keys = new ArrayList<>();
+            ArrayList<Integer> children = new ArrayList<>();
+            getChildren(inner, keys, children);
+            keys.add(slots[level], separator);
+            children.add(slots[level] + 1, child);
+            if (keys.size() <= INNER_KEYS) {
+                write(inners, path[level], toInner(keys, children));
+                return;
+            }
+            int middle = keys.size() / 2;
+            separator = keys.get(middle);
+            child = pool.getNumOfBlocks(inners);
+            write(inners, child, toInner(keys.subList(middle + 1, keys.size()),
+                    children.subList(middle + 1, children.size())));
+            write(inners, path[level], toInner(keys.subList(0, middle), children.subList(0, middle + 1)));
+        }
+        /* the root split */
+        int newRoot = pool.getNumOfBlocks(inners);
+        write(inners, newRoot, toInner(new ArrayList<>(Arrays.asList(separator)),
+                new ArrayList<>(Arrays.asList(root, child))));
+        root = newRoot;
+        height++;
+    }
+
+    @Override
+    public void delete(Tuple tuple, int position) {
+        if (stale) return;
+        Tuple entry = entry(tuple, position);
+        int id = descend(entry, null, null);
+        if (id < 0) return;
+        Tuple node = read(leaves, id);
+        ArrayList<Tuple> leaf = getEntries(node);
+        for (int i = 0; i < leaf.size(); i++) {
+            if (compare(leaf.get(i), 0, entry) != 0) continue;
+            leaf.remove(i);
+            write(leaves, id, toPage(leaves, leaf, node.getInt(NEXT)));
+            return;
+        }
+    }
+
+    @Override
+    public int[] find(Object key, int maxCost) {
+        return search(getProbe(key, true), getProbe(key, false), maxCost);
+    }
+
+    /*
+    the sorted positions of the entries from low (included) to high
+    (excluded, null for no end), probes made by getProbe; the leaves are
+    walked up to the one high falls in, past leaves emptied by deletes
+    null if the nodes read and the blocks of the table found would be more
+    than maxCost
+    */
+    public int[] search(Tuple low, Tuple high, int maxCost) {
+        int id = descend(low, null, null);
+        int last = high == null ? -1 : descend(high, null, null);
+        if (id < 0 || high != null && last < 0) return null;
+        int cost = high == null ? height : 2 * height;
+        int tuplesPerBlock = table.getSchema().getTuplesPerBlock();
+        TreeSet<Integer> positions = new TreeSet<>();
+        TreeSet<Integer> blocks = new TreeSet<>();
+        while (id >= 0) {
+            if (++cost + blocks.size() > maxCost) return null;
+            Tuple node = read(leaves, id);
+            if (node == null) return null;
+            for (int i = 0; i < node.getInt(COUNT); i++) {
+                if (compare(node, 2 * i, low) < 0) continue;
+                if (high != null && compare(node, 2 * i, high) >= 0) return toArray(positions);
+                positions.add(node.getInt(2 * i + 1));
+                blocks.add(node.getInt(2 * i + 1) / tuplesPerBlock);
+            }
+            if (cost + blocks.size() > maxCost) return null;
+            if (id == last) break;
+            id = node.getInt(NEXT);
+        }
+        return toArray(positions);
+    }
+
+    /*
+    the leaf where the entry is or would be, path and slots (if not null)
+    take the inner node of each level, from the leaf up, and the child taken
+    */
+    private int descend(Tuple entry, int[] path, int[] slots) {
+        int id = root;
+        for (int level = height; level > 0; level--) {
+            Tuple node = read(inners, id);
+            if (node == null) return -1;
+            int child = 0;
+            while (child < node.getInt(COUNT) && compare(node, 3 * child + 1, entry) <= 0) child++;
+            if (path != null) {
+                path[level] = id;
+                slots[level] = child;
+            }
+            id = node.getInt(3 * child);
+        }
+        return id;
+    }
+
+    private void getChildren(Tuple inner, ArrayList<Tuple> keys, ArrayList<Integer> children) {
+        children.add(inner.getInt(0));
+        for (int i = 1; i <= inner.getInt(COUNT); i++) {
+            Tuple key = entries.createTuple();
+            key.copyField(0, inner, 3 * i - 2);
+            key.setField(1, inner.getInt(3 * i - 1));
+            keys.add(key);
+            children.add(inner.getInt(3 * i));
+        }
+    }
+
+    private Tuple toInner(List<Tuple> keys, List<Integer> children) {
+        Tuple node = inners.createTuple();
+        node.setField(0, children.get(0));
+        for (int i = 1; i <= keys.size(); i++) {
+            node.copyField(3 * i - 2, keys.get(i - 1), 0);
+            node.setField(3 * i - 1, keys.get(i - 1).getInt(1));
+            node.setField(3 * i, children.get(i));
+        }
+        node.setField(COUNT, keys.size());
+        return node;
+    }
+}
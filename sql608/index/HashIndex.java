@@ -0,0 +1,286 @@
+package sql608.index;
+
+import sql608.algorithm.MultiPass;
+import sql608.algorithm.OnePass;
+import sql608.buffer.BufferPool;
+import sql608.buffer.SequentialScan;
+import storageManager.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/*
+linear hash index on an INT or STR20 field of a relation, for equalities
+bucket i is block i of the buckets relation, a page of entries linked to a
+chain of overflow pages; there is no directory, the bucket of a key is its
+hash modulo the buckets of the level, or modulo twice as many for the
+buckets already split in this level, so a lookup reads the bucket page and
+its overflow pages only
+an insert past 2 entries a bucket on average splits the next bucket of the
+level in order, its entries shared with a new bucket at the end, its
+overflow pages reused; a delete only removes the entry, overflow pages
+emptied stay in their chain
+built with as many buckets as the entries need, from the entries sorted
+on disk on bucket then key, the buckets written in order
+*/
+public class HashIndex extends Index {
+    private static final int MAX_LOAD = 2;  // entries a bucket on average before a split
+
+    private Relation buckets;
+    private Relation overflow;
+    private Relation sorted;  // (bucket, key, position) while building
+    private int numInitial;  // buckets of level 0
+    private int level;
+    private int split;  // next bucket to split in the level
+    private int numEntries;
+    private int numOverflow;  // overflow pages in chains
+    private int numOverflowBlocks;  // blocks of the overflow relation, free ones included
+    private ArrayDeque<Integer> free = new ArrayDeque<>();  // overflow pages left by splits
+
+    public HashIndex(String name, Relation table, String fieldName, BufferPool pool, MainMemory mainMemory,
+                     SchemaManager schemaManager) {
+        super(name, table, fieldName, pool, mainMemory, schemaManager);
+        /* the pages of an index restored stale, replaced by the next build */
+        buckets = findRelation(name + "Buckets");
+        overflow = findRelation(name + "Overflow");
+    }
+
+    public int getNumOfBuckets() {
+        return (numInitial << level) + split;
+    }
+
+    @Override
+    public double getProbeCost() {
+        return 1 + (double) numOverflow / Math.max(1, getNumOfBuckets());
+    }
+
+    @Override
+    public String describe() {
+        return getNumOfBuckets() + " buckets, " + numOverflow + " overflow pages";
+    }
+
+    @Override
+    protected void dropPages() {
+        deleteRelation(buckets);
+        deleteRelation(overflow);
+        buckets = overflow = null;
+    }
+
+    /*
+    build the index from the table: its entries are written to disk with
+    their bucket, sorted, and read once to write the buckets in order
+    the sort takes the whole main memory
+    */
+    @Override
+    public void build() {
+        dropPages();
+        buckets = createRelation(name + "Buckets", PAGE_FIELDS);
+        overflow = createRelation(name + "Overflow", PAGE_FIELDS);
+        sorted = createRelation(name + "Sorted", new String[]{"bucket", "key", "position"});
+        numInitial = Math.max(1, (table.getNumOfTuples() + MAX_LOAD - 1) / MAX_LOAD);
+        level = split = 0;
+        numOverflow = numOverflowBlocks = 0;
+        free.clear();
+
+        writeEntries(sorted);
+        ArrayList<String> sortFields = new ArrayList<>(Arrays.asList("bucket", "key", "position"));
+        if (sorted.getNumOfBlocks() > mainMemory.getMemorySize()) MultiPass.sort(sorted, sortFields, mainMemory);
+        else if (sorted.getNumOfBlocks() > 0) OnePass.sort(sorted, sortFields, mainMemory);
+
+        numEntries = 0;
+        numKeys = 0;
+        int bucket = 0;
+        ArrayList<Tuple> chain = new ArrayList<>();
+        Tuple last = null;
+        ArrayDeque<Integer> none = new ArrayDeque<>();
+        SequentialScan scan = new SequentialScan(pool, sorted, mainMemory);
+        ArrayList<Tuple> tuples;
+        while ((tuples = scan.nextBlock()) != null) {
+            for (Tuple tuple : tuples) {
+                if (tuple.isNull()) continue;
+                while (bucket < tuple.getInt(0)) {
+                    writeChain(bucket++, chain, none);
+                    chain.clear();
+                }
+                Tuple entry = entries.createTuple();
+                entry.copyField(0, tuple, 1);
+                entry.setField(1, tuple.getInt(2));
+                if (last == null || last.compareField(0, entry, 0) != 0) numKeys++;
+                last = entry;
+                chain.add(entry);
+                numEntries++;
+            }
+        }
+        while (bucket < numInitial) {
+            writeChain(bucket++, chain, none);
+            chain.clear();
+        }
+        deleteRelation(sorted);
+        sorted = null;
+        stale = false;
+    }
+
+    /* bucket first */
+    @Override
+    protected int compareEntries(Tuple entry1, Tuple entry2) {
+        int cmp = Integer.compare(getBucket(entry1), getBucket(entry2));
+        return cmp != 0 ? cmp : super.compareEntries(entry1, entry2);
+    }
+
+    @Override
+    protected Tuple toSorted(Tuple entry) {
+        Tuple tuple = sorted.createTuple();
+        tuple.setField(0, getBucket(entry));
+        tuple.copyField(1, entry, 0);
+        tuple.setField(2, entry.getInt(1));
+        return tuple;
+    }
+
+    @Override
+    public void insert(Tuple tuple, int position) {
+        if (stale) return;
+        Tuple entry = entry(tuple, position);
+        Relation pages = buckets;
+        int id = getBucket(entry);
+        while (true) {
+            Tuple page = read(pages, id);
+            if (page == null) return;
+            ArrayList<Tuple> list = getEntries(page);
+            int next = page.getInt(NEXT);
+            if (list.size() < PAGE_ENTRIES) {
+                list.add(entry);
+                write(pages, id, toPage(pages, list, next));
+                break;
+            }
+            if (next < 0) {
+                /* a new overflow page at the end of the chain */
+                next = newOverflow();
+                write(overflow, next, toPage(overflow, Arrays.asList(entry), -1));
+                write(pages, id, toPage(pages, list, next));
+                break;
+            }
+            pages = overflow;
+            id = next;
+        }
+        numEntries++;
+        if (numEntries > MAX_LOAD * getNumOfBuckets()) splitNext();
+    }
+
+    @Override
+    public void delete(Tuple tuple, int position) {
+        if (stale) return;
+        Tuple entry = entry(tuple, position);
+        Relation pages = buckets;
+        int id = getBucket(entry);
+        while (id >= 0) {
+            Tuple page = read(pages, id);
+            if (page == null) return;
+            for (int i = 0; i < page.getInt(COUNT); i++) {
+                if (compare(page, 2 * i, entry) != 0) continue;
+                ArrayList<Tuple> list = getEntries(page);
+                list.remove(i);
+                write(pages, id, toPage(pages, list, page.getInt(NEXT)));
+                numEntries--;
+                return;
+            }
+            pages = overflow;
+            id = page.getInt(NEXT);
+        }
+    }
+
+    @Override
+    public int[] find(Object key, int maxCost) {
+        Tuple probe = getProbe(key, true);
+        int tuplesPerBlock = table.getSchema().getTuplesPerBlock();
+        TreeSet<Integer> positions = new TreeSet<>();
+        TreeSet<Integer> blocks = new TreeSet<>();
+        Relation pages = buckets;
+        int id = getBucket(probe);
+        int cost = 0;
+        while (id >= 0) {
+            if (++cost + blocks.size() > maxCost) return null;
+            Tuple page = read(pages, id);
+            if (page == null) return null;
+            for (int i = 0; i < page.getInt(COUNT); i++) {
+                if (page.compareField(2 * i, probe, 0) != 0) continue;
+                positions.add(page.getInt(2 * i + 1));
+                blocks.add(page.getInt(2 * i + 1) / tuplesPerBlock);
+            }
+            pages = overflow;
+            id = page.getInt(NEXT);
+        }
+        if (cost + blocks.size() > maxCost) return null;
+        return toArray(positions);
+    }
+
+    /*
+    split the next bucket of the level: its entries stay or go to the new
+    bucket after the last by the hash modulo the buckets of the next level
+    */
+    private void splitNext() {
+        int source = split;
+        int target = getNumOfBuckets();
+        int modulus = numInitial << (level + 1);
+        ArrayList<Tuple> stay = new ArrayList<>();
+        ArrayList<Tuple> move = new ArrayList<>();
+        ArrayDeque<Integer> chain = new ArrayDeque<>();
+        Tuple page = read(buckets, source);
+        while (page != null) {
+            for (Tuple entry : getEntries(page)) (hash(entry) % modulus == source ? stay : move).add(entry);
+            int next = page.getInt(NEXT);
+            if (next < 0) break;
+            chain.add(next);
+            page = read(overflow, next);
+        }
+        if (page == null) return;
+
+        if (++split == numInitial << level) {
+            level++;
+            split = 0;
+        }
+        writeChain(source, stay, chain);
+        writeChain(target, move, chain);
+        numOverflow -= chain.size();
+        free.addAll(chain);
+    }
+
+    /* write the entries to the bucket, its overflow pages taken from spare first */
+    private void writeChain(int bucket, List<Tuple> list, ArrayDeque<Integer> spare) {
+        Relation pages = buckets;
+        int id = bucket;
+        for (int from = 0; ; from += PAGE_ENTRIES) {
+            int to = Math.min(list.size(), from + PAGE_ENTRIES);
+            int next = to == list.size() ? -1 : spare.isEmpty() ? newOverflow() : spare.poll();
+            write(pages, id, toPage(pages, list.subList(from, to), next));
+            if (next < 0) return;
+            pages = overflow;
+            id = next;
+        }
+    }
+
+    /* an overflow page for a chain, one left by a split or a new one */
+    private int newOverflow() {
+        numOverflow++;
+        Integer page = free.poll();
+        return page != null ? page : numOverflowBlocks++;
+    }
+
+    /* the bucket of the entry's key */
+    private int getBucket(Tuple entry) {
+        int h = hash(entry);
+        int bucket = h % (numInitial << level);
+        return bucket < split ? h % (numInitial << (level + 1)) : bucket;
+    }
+
+    /* a non-negative hash of the entry's key */
+    private int hash(Tuple entry) {
+        int h;
+        if (type == FieldType.INT) h = entry.getInt(0);
+        else h = entry.isNullField(0) ? 0 : entry.getString(0).hashCode();
+        h *= 0x9E3779B9;
+        return (h ^ h >>> 16) & Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,272 @@
+package sql608.index;
+
+import sql608.buffer.BufferPool;
+import sql608.buffer.SequentialScan;
+import sql608.helper.Write;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/*
+secondary index on an INT or STR20 field of a relation
+an entry is (key, position), the position of a tuple being its block times
+the tuples a block holds plus its slot, so a tuple is found again exactly
+even among equal keys; STR20 keys are lowercased, as = compares them
+a page is one block of a relation, read and written through the buffer pool;
+a page of entries holds up to 3 of them, a link to another page and the count
+a relation rewritten outside the index (sort, vacuum, bulk append) makes
+the index stale, and it is built again when used next
+*/
+public abstract class Index {
+    protected static final int PAGE_ENTRIES = 3;
+    /* page of entries: key and position of entry i at 2i and 2i + 1, then the link and the count */
+    protected static final int NEXT = 6;
+    protected static final int COUNT = 7;
+    protected static final String[] PAGE_FIELDS =
+            {"key0", "position0", "key1", "position1", "key2", "position2", "next", "count"};
+
+    protected String name;
+    protected Relation table;
+    protected String fieldName;
+    protected int field;  // offset of the indexed field in the table
+    protected FieldType type;
+    protected BufferPool pool;
+    protected MainMemory mainMemory;
+    protected SchemaManager schemaManager;
+
+    protected Relation entries;  // (key, position): probes, and the entries while building
+    protected boolean stale = true;
+    protected int numKeys;  // distinct keys at the last build, at least 1
+
+    protected Index(String name, Relation table, String fieldName, BufferPool pool, MainMemory mainMemory,
+                    SchemaManager schemaManager) {
+        this.name = name;
+        this.table = table;
+        this.fieldName = fieldName;
+        this.field = table.getSchema().getFieldOffset(fieldName);
+        this.type = table.getSchema().getFieldType(field);
+        this.pool = pool;
+        this.mainMemory = mainMemory;
+        this.schemaManager = schemaManager;
+        entries = createRelation(name + "Entries", new String[]{"key", "position"});
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Relation getTable() {
+        return table;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public FieldType getType() {
+        return type;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    /* the table was rewritten, the positions are wrong until the index is built again */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /* tuples of the table a key has, on average */
+    public double getEntriesPerKey() {
+        return (double) table.getNumOfTuples() / Math.max(1, numKeys);
+    }
+
+    /* build the index from the table, taking the whole main memory */
+    public abstract void build();
+
+    /* add the entry of the tuple at the position */
+    public abstract void insert(Tuple tuple, int position);
+
+    /*
+    add the entries of many tuples at their positions, in the order of
+    compareEntries, so that the pages read for one stay cached for the next
+    */
+    public void insert(List<Tuple> tuples, List<Integer> positions) {
+        if (stale) return;
+        ArrayList<Tuple> entries = new ArrayList<>();
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < tuples.size(); i++) {
+            entries.add(entry(tuples.get(i), positions.get(i)));
+            order.add(i);
+        }
+        order.sort((i, j) -> compareEntries(entries.get(i), entries.get(j)));
+        for (int i : order) insert(tuples.get(i), positions.get(i));
+    }
+
+    /* entries in the order of the pages holding them: key then position */
+    protected int compareEntries(Tuple entry1, Tuple entry2) {
+        int cmp = entry1.compareField(0, entry2, 0);
+        return cmp != 0 ? cmp : Integer.compare(entry1.getInt(1), entry2.getInt(1));
+    }
+
+    /* remove the entry of the tuple at the position */
+    public abstract void delete(Tuple tuple, int position);
+
+    /*
+    the sorted positions of the tuples with the key (an Integer, or a String
+    for STR20), null if the pages read and the blocks of the table found
+    would be more than maxCost
+    */
+    public abstract int[] find(Object key, int maxCost);
+
+    /* pages of the index a find reads, on average, as of the last build (1 before the first) */
+    public abstract double getProbeCost();
+
+    /* the shape of the index, once built */
+    public abstract String describe();
+
+    /* delete the relations of the index */
+    public void drop() {
+        dropPages();
+        deleteRelation(entries);
+        entries = null;
+    }
+
+    /* delete the relations of the pages */
+    protected abstract void dropPages();
+
+    /* write the entry of every tuple of the table to the relation to sort */
+    protected void writeEntries(Relation relation) {
+        int tuplesPerBlock = table.getSchema().getTuplesPerBlock();
+        SequentialScan scan = new SequentialScan(pool, table, mainMemory);
+        ArrayList<Tuple> tuples;
+        while ((tuples = scan.nextBlock()) != null) {
+            for (int i = 0; i < tuples.size(); i++) {
+                if (tuples.get(i).isNull()) continue;
+                int position = scan.getBlockIndex() * tuplesPerBlock + i;
+                Write.tuple(toSorted(entry(tuples.get(i), position)), relation, pool, null, mainMemory);
+            }
+        }
+        pool.evictAll();
+    }
+
+    /* the tuple the build sorts for an entry, the entry itself */
+    protected Tuple toSorted(Tuple entry) {
+        return entry;
+    }
+
+    /* empty the entries relation once built */
+    protected void clearEntries() {
+        pool.discard(entries);
+        if (entries.getNumOfBlocks() > 0) entries.deleteBlocks(0);
+    }
+
+    /* the sorted blocks of the table holding the positions */
+    public int[] getBlocks(int[] positions) {
+        int tuplesPerBlock = table.getSchema().getTuplesPerBlock();
+        TreeSet<Integer> blocks = new TreeSet<>();
+        for (int position : positions) blocks.add(position / tuplesPerBlock);
+        return toArray(blocks);
+    }
+
+    /*
+    an entry to search from or to: the key (an Integer, or a String for STR20)
+    with the smallest position if first, the largest otherwise
+    */
+    public Tuple getProbe(Object key, boolean first) {
+        Tuple probe = entries.createTuple();
+        if (key instanceof Integer) probe.setField(0, (Integer) key);
+        else if (key != null) probe.setField(0, ((String) key).toLowerCase());
+        probe.setField(1, first ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+        return probe;
+    }
+
+    /* the entry of a tuple of the table */
+    protected Tuple entry(Tuple tuple, int position) {
+        Tuple entry = entries.createTuple();
+        if (type == FieldType.INT) entry.setField(0, tuple.getInt(field));
+        else if (!tuple.isNullField(field)) entry.setField(0, tuple.getString(field).toLowerCase());
+        entry.setField(1, position);
+        return entry;
+    }
+
+    /* the page entry at the offset (key then position) against the entry */
+    protected static int compare(Tuple page, int offset, Tuple entry) {
+        int cmp = page.compareField(offset, entry, 0);
+        if (cmp != 0) return cmp;
+        return Integer.compare(page.getInt(offset + 1), entry.getInt(1));
+    }
+
+    protected ArrayList<Tuple> getEntries(Tuple page) {
+        ArrayList<Tuple> result = new ArrayList<>();
+        for (int i = 0; i < page.getInt(COUNT); i++) {
+            Tuple entry = entries.createTuple();
+            entry.copyField(0, page, 2 * i);
+            entry.setField(1, page.getInt(2 * i + 1));
+            result.add(entry);
+        }
+        return result;
+    }
+
+    protected static Tuple toPage(Relation pages, List<Tuple> entries, int next) {
+        Tuple page = pages.createTuple();
+        for (int i = 0; i < entries.size(); i++) {
+            page.copyField(2 * i, entries.get(i), 0);
+            page.setField(2 * i + 1, entries.get(i).getInt(1));
+        }
+        page.setField(NEXT, next);
+        page.setField(COUNT, entries.size());
+        return page;
+    }
+
+    /* the page, a snapshot of its block; null if every frame is pinned */
+    protected Tuple read(Relation pages, int id) {
+        int frame = pool.pin(pages, id);
+        if (frame < 0) return null;
+        Tuple page = mainMemory.getBlock(frame).getTuple(0);
+        pool.unpin(frame, false);
+        return page;
+    }
+
+    /* write the page to its block, a new block at the end of the relation */
+    protected void write(Relation pages, int id, Tuple page) {
+        int frame = id < pool.getNumOfBlocks(pages) ? pool.pin(pages, id) : pool.pinNew(pages, id);
+        if (frame < 0) {
+            System.err.print(getClass().getSimpleName() + " ERROR: no frame to write page " + id + " of " + name
+                    + "\n");
+            return;
+        }
+        mainMemory.getBlock(frame).setTuple(0, page);
+        pool.unpin(frame, true);
+    }
+
+    /* keys of the type of the indexed field, the others INT */
+    protected Relation createRelation(String relationName, String[] fieldNames) {
+        ArrayList<FieldType> fieldTypes = new ArrayList<>();
+        for (String fieldName : fieldNames) fieldTypes.add(fieldName.startsWith("key") ? type : FieldType.INT);
+        if (schemaManager.relationExists(relationName)) schemaManager.deleteRelation(relationName);
+        return schemaManager.createRelation(relationName, new Schema(new ArrayList<>(Arrays.asList(fieldNames)),
+                fieldTypes));
+    }
+
+    /* a relation of the index left by an earlier session, null if none */
+    protected Relation findRelation(String relationName) {
+        return schemaManager.relationExists(relationName) ? schemaManager.getRelation(relationName) : null;
+    }
+
+    protected void deleteRelation(Relation relation) {
+        if (relation == null) return;
+        pool.discard(relation);
+        schemaManager.deleteRelation(relation.getRelationName());
+    }
+
+    protected static int[] toArray(TreeSet<Integer> values) {
+        int[] result = new int[values.size()];
+        int i = 0;
+        for (int value : values) result[i++] = value;
+        return result;
+    }
+}
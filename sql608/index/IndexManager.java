@@ -0,0 +1,255 @@
+package sql608.index;
+
+import sql608.algorithm.ExpressionTree;
+import sql608.algorithm.ExpressionTreeNode;
+import sql608.algorithm.PredicateCompiler;
+import sql608.buffer.BufferPool;
+import sql608.helper.Report;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+the indexes of the relations, by name
+a WHERE condition whose ANDed terms compare an indexed field to a constant,
+field = c, field > c or field < c (INT), field = "c" (STR20), is looked up in
+the index, = first, by a hash index on the field if there is one: the blocks
+holding the tuples found are the only ones the scan reads, the whole
+condition still checked on their tuples
+the lookup gives up, and the relation is scanned, once the nodes read and the
+blocks found reach a quarter of the blocks of the relation, past which reading
+the blocks one by one is no cheaper than a scan reading runs of them
+the indexes of a relation follow its inserts and deletes; a relation
+rewritten in place makes them stale until used again
+the blocks to read, found by an index or all of them, are then narrowed
+by the zone map of the relation (ZoneFilter)
+the definitions of the indexes are kept by the schema manager, in the catalog
+of a persistent disk: the indexes of an earlier session come back stale
+*/
+public class IndexManager {
+    private static final String HASH = "hash";
+    private static final String BTREE = "btree";
+
+    private BufferPool pool;
+    private MainMemory mainMemory;
+    private SchemaManager schemaManager;
+    private Map<String, Index> indexes = new LinkedHashMap<>();
+
+    public IndexManager(SchemaManager schemaManager, BufferPool pool, MainMemory mainMemory) {
+        this.schemaManager = schemaManager;
+        this.pool = pool;
+        this.mainMemory = mainMemory;
+        for (String[] definition : schemaManager.getIndexDefinitions()) {
+            if (!schemaManager.relationExists(definition[1])) continue;
+            Relation relation = schemaManager.getRelation(definition[1]);
+            if (!relation.getSchema().fieldNameExists(definition[2])) continue;
+            indexes.put(definition[0], newIndex(definition[0], relation, definition[2], definition[3].equals(HASH)));
+        }
+    }
+
+    /* create and build a hash or B+tree index on the field of the relation, null if it cannot be */
+    public Index create(String name, Relation relation, String fieldName, boolean hash) {
+        if (indexes.containsKey(name) || schemaManager.relationExists(name)) {
+            System.err.print("IndexManager ERROR: " + name + " already exists" + "\n");
+            return null;
+        }
+        if (!relation.getSchema().fieldNameExists(fieldName)) {
+            System.err.print("IndexManager ERROR: field " + fieldName + " does not exist" + "\n");
+            return null;
+        }
+        Index index = newIndex(name, relation, fieldName, hash);
+        indexes.put(name, index);
+        index.build();
+        schemaManager.addIndex(name, relation.getRelationName(), fieldName, hash ? HASH : BTREE);
+        return index;
+    }
+
+    /* stale until built */
+    private Index newIndex(String name, Relation relation, String fieldName, boolean hash) {
+        return hash ? new HashIndex(name, relation, fieldName, pool, mainMemory, schemaManager)
+                : new BTreeIndex(name, relation, fieldName, pool, mainMemory, schemaManager);
+    }
+
+    /* false if there is no such index */
+    public boolean drop(String name) {
+        Index index = indexes.remove(name);
+        if (index == null) return false;
+        index.drop();
+        schemaManager.removeIndex(name);
+        return true;
+    }
+
+    /* the relation is dropped */
+    public void dropAll(Relation relation) {
+        for (Index index : getIndexes(relation)) drop(index.getName());
+    }
+
+    public void insert(Relation relation, Tuple tuple, int position) {
+        if (position < 0) return;
+        for (Index index : getIndexes(relation)) index.insert(tuple, position);
+    }
+
+    /* tuples appended together, their positions all set */
+    public void insert(Relation relation, List<Tuple> tuples, List<Integer> positions) {
+        for (Index index : getIndexes(relation)) index.insert(tuples, positions);
+    }
+
+    public void delete(Relation relation, Tuple tuple, int position) {
+        for (Index index : getIndexes(relation)) index.delete(tuple, position);
+    }
+
+    /* the relation was rewritten outside the buffer pool */
+    public void invalidate(Relation relation) {
+        for (Index index : getIndexes(relation)) index.invalidate();
+    }
+
+    public boolean hasIndex(Relation relation) {
+        return !getIndexes(relation).isEmpty();
+    }
+
+    /* an index of the relation follows its inserts, it is not stale */
+    public boolean hasFreshIndex(Relation relation) {
+        for (Index index : getIndexes(relation)) if (!index.isStale()) return true;
+        return false;
+    }
+
+    /*
+    the sorted blocks that may hold tuples satisfying the condition, null to
+    scan them all: those an index finds, less those the zone map rules out
+    */
+    public int[] lookup(Relation relation, String whereCondition) {
+        if (whereCondition == null) return null;
+        return lookup(relation, new ExpressionTree(whereCondition).getRoot());
+    }
+
+    public int[] lookup(Relation relation, ExpressionTreeNode condition) {
+        if (condition == null) return null;
+        ArrayList<ExpressionTreeNode> terms = ExpressionTree.getSubTreeNodes(new ExpressionTree(condition)).nodeName;
+        if (terms == null) return null;
+        int[] blocks = hasIndex(relation) ? lookup(relation, terms) : null;
+        return new ZoneFilter(relation, terms).filter(blocks, pool);
+    }
+
+    /* by an index, null if none applies */
+    private int[] lookup(Relation relation, ArrayList<ExpressionTreeNode> terms) {
+        /* = then > and < */
+        for (boolean equality : new boolean[]{true, false}) {
+            for (ExpressionTreeNode term : terms) {
+                String operator = term.getValue();
+                if (operator.equals("=") != equality) continue;
+                if (!operator.equals("=") && !operator.equals(">") && !operator.equals("<")) continue;
+                int[] blocks = lookup(relation, term.getLeft(), operator, term.getRight());
+                if (blocks == null) blocks = lookup(relation, term.getRight(), mirror(operator), term.getLeft());
+                if (blocks != null) return blocks;
+            }
+        }
+        return null;
+    }
+
+    /* field operator constant by an index on the field, null if none or too costly */
+    private int[] lookup(Relation relation, ExpressionTreeNode fieldNode, String operator,
+                         ExpressionTreeNode constantNode) {
+        if (!isLeaf(fieldNode) || !isLeaf(constantNode)) return null;
+        String field = getField(relation.getSchema(), fieldNode.getValue());
+        String constant = constantNode.getValue();
+        if (field == null || getField(relation.getSchema(), constant) != null) return null;
+        for (Index index : getIndexes(relation)) {
+            if (!index.getFieldName().equals(field)) continue;
+            /* a hash index finds equalities only, and is taken first for them */
+            if (index instanceof HashIndex ? !operator.equals("=")
+                    : operator.equals("=") && getIndex(relation, field, true) != null) continue;
+            Object key;
+            if (index.getType() == FieldType.INT) {
+                if (!PredicateCompiler.isInteger(constant)) continue;
+                try {
+                    key = Integer.parseInt(constant);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            } else {
+                /* a string of digits is compared as an integer, "007" = "7" */
+                key = constant.replace("\"", "");
+                if (!operator.equals("=") || PredicateCompiler.isInteger((String) key)) continue;
+            }
+            int numBlocks = pool.getNumOfBlocks(relation);
+            int maxCost = numBlocks / 4;
+            /* a stale index is built again only if a probe, its pages and a block, may stay under the cost */
+            if (index.isStale() && index.getProbeCost() + 1 > maxCost) continue;
+            if (!refresh(index)) continue;
+            int[] positions;
+            if (operator.equals("=")) positions = index.find(key, maxCost);
+            else {
+                BTreeIndex tree = (BTreeIndex) index;
+                if (operator.equals(">")) positions = tree.search(tree.getProbe(key, false), null, maxCost);
+                else positions = tree.search(tree.getProbe(Integer.MIN_VALUE, true), tree.getProbe(key, true), maxCost);
+            }
+            if (positions == null) return null;
+            int[] blocks = index.getBlocks(positions);
+            Report.add("Index " + index.getName() + ": " + blocks.length + " of " + numBlocks + " blocks");
+            return blocks;
+        }
+        return null;
+    }
+
+    /*
+    the index on the field of the relation to find its tuples with a key,
+    hash first, built again if stale; null if there is none
+    */
+    public Index getEqualityIndex(Relation relation, String fieldName) {
+        Index index = getIndex(relation, fieldName, true);
+        if (index == null) index = getIndex(relation, fieldName, false);
+        if (index == null || !refresh(index)) return null;
+        return index;
+    }
+
+    private Index getIndex(Relation relation, String fieldName, boolean hash) {
+        for (Index index : getIndexes(relation)) {
+            if (index.getFieldName().equals(fieldName) && index instanceof HashIndex == hash) return index;
+        }
+        return null;
+    }
+
+    /*
+    build a stale index again; the build takes the whole main memory, so it
+    is put off (false) while a frame of the pool is pinned
+    */
+    private boolean refresh(Index index) {
+        if (!index.isStale()) return true;
+        if (pool.getNumOfUnpinned() < mainMemory.getMemorySize()) return false;
+        pool.evictAll();
+        index.build();
+        return true;
+    }
+
+    private ArrayList<Index> getIndexes(Relation relation) {
+        ArrayList<Index> result = new ArrayList<>();
+        for (Index index : indexes.values()) if (index.getTable() == relation) result.add(index);
+        return result;
+    }
+
+    static boolean isLeaf(ExpressionTreeNode node) {
+        return node != null && node.getLeft() == null && node.getRight() == null;
+    }
+
+    /* the field an operand names, table.attr falling back to attr as in PredicateCompiler; null if none */
+    static String getField(Schema schema, String value) {
+        if (PredicateCompiler.isInteger(value)) return null;
+        if (!schema.fieldNameExists(value) && value.contains(".")) value = value.split("\\.")[1];
+        return schema.fieldNameExists(value) ? value : null;
+    }
+
+    /* c < field is field > c */
+    static String mirror(String operator) {
+        switch (operator) {
+            case ">":
+                return "<";
+            case "<":
+                return ">";
+            default:
+                return operator;
+        }
+    }
+}
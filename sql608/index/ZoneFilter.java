@@ -0,0 +1,119 @@
+package sql608.index;
+
+import sql608.algorithm.ExpressionTreeNode;
+import sql608.algorithm.PredicateCompiler;
+import sql608.buffer.BufferPool;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+the blocks of a relation a WHERE condition may match, by its zone map
+an ANDed term field = c, field > c or field < c on an INT field, or
+field = "c" on a STR20 field, rules out a block whose min/max for the field
+leave no room for c; a block without tuples matches nothing
+a dirty block in the buffer pool may be newer than its summary, and one
+not yet written has none, both are kept; a clean cached block was summed
+up when written, so it is filtered like the others; reading the zone map
+costs no I/O
+*/
+public class ZoneFilter {
+    /* a term the zone map can check: an INT range, or a lowercased STR20 value */
+    private static class Check {
+        final int field;
+        final long low;
+        final long high;
+        final String value;
+
+        Check(int field, long low, long high, String value) {
+            this.field = field;
+            this.low = low;
+            this.high = high;
+            this.value = value;
+        }
+    }
+
+    private Relation relation;
+    private ZoneMap zoneMap;
+    private ArrayList<Check> checks = new ArrayList<>();
+
+    public ZoneFilter(Relation relation, ArrayList<ExpressionTreeNode> terms) {
+        this.relation = relation;
+        this.zoneMap = relation.getZoneMap();
+        for (ExpressionTreeNode term : terms) {
+            String operator = term.getValue();
+            if (!operator.equals("=") && !operator.equals(">") && !operator.equals("<")) continue;
+            if (!addCheck(term.getLeft(), operator, term.getRight(), false)) {
+                addCheck(term.getRight(), IndexManager.mirror(operator), term.getLeft(), true);
+            }
+        }
+    }
+
+    /* false if the term is not field operator constant on a field the zone map can check */
+    private boolean addCheck(ExpressionTreeNode fieldNode, String operator, ExpressionTreeNode constantNode,
+                             boolean mirrored) {
+        if (!IndexManager.isLeaf(fieldNode) || !IndexManager.isLeaf(constantNode)) return false;
+        Schema schema = relation.getSchema();
+        String field = IndexManager.getField(schema, fieldNode.getValue());
+        String constant = constantNode.getValue();
+        if (field == null || IndexManager.getField(schema, constant) != null) return false;
+        int offset = schema.getFieldOffset(field);
+        if (schema.getFieldType(offset) == FieldType.STR20) {
+            /* only the field on the left is lowercased, a string of digits is compared as an integer */
+            String value = constant.replace("\"", "");
+            if (!operator.equals("=") || mirrored || PredicateCompiler.isInteger(value)) return false;
+            checks.add(new Check(offset, 0, 0, value));
+            return true;
+        }
+        if (!PredicateCompiler.isInteger(constant)) return false;
+        long c;
+        try {
+            c = Integer.parseInt(constant);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        switch (operator) {
+            case "=":
+                checks.add(new Check(offset, c, c, null));
+                break;
+            case ">":
+                checks.add(new Check(offset, c + 1, Integer.MAX_VALUE, null));
+                break;
+            default:
+                checks.add(new Check(offset, Integer.MIN_VALUE, c - 1, null));
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return checks.isEmpty();
+    }
+
+    /*
+    the sorted blocks among the given ones (all blocks if null) that may
+    hold tuples satisfying the terms; the given ones if none is ruled out
+    */
+    public int[] filter(int[] blocks, BufferPool pool) {
+        if (checks.isEmpty()) return blocks;
+        int numBlocks = blocks == null ? pool.getNumOfBlocks(relation) : blocks.length;
+        int[] kept = new int[numBlocks];
+        int numKept = 0;
+        for (int i = 0; i < numBlocks; i++) {
+            int block = blocks == null ? i : blocks[i];
+            if (mayMatch(block, pool)) kept[numKept++] = block;
+        }
+        if (numKept == numBlocks) return blocks;
+        return Arrays.copyOf(kept, numKept);
+    }
+
+    private boolean mayMatch(int block, BufferPool pool) {
+        if (!zoneMap.isKnown(block) || pool.isDirty(relation, block)) return true;
+        for (Check check : checks) {
+            boolean may = check.value == null ? zoneMap.mayHaveInt(block, check.field, check.low, check.high)
+                    : zoneMap.mayHaveString(block, check.field, check.value);
+            if (!may) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,278 @@
+package sql608.operator;
+
+import sql608.Heap.SortKey;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+the groups of a SELECT with GROUP BY or aggregates: COUNT(*), and COUNT,
+SUM, MIN, MAX, AVG of a field, NULLs left out (Tuple::isNullValue, the
+STR20 value "null" too)
+a group is kept as a state tuple, its group fields then the state of each
+aggregate: COUNT and SUM an INT, MIN and MAX a field of the aggregated type,
+AVG the INT sum and count; states of one group merge, so a part of a group
+can be written to disk and completed later
+a result tuple has the SELECT attributes in order; AVG of INT is an INT
+truncated like an integer division, an aggregate over no value is NULL
+but COUNT, which is 0
+*/
+public class Aggregates {
+    private static final Pattern AGGREGATE = Pattern.compile("(count|sum|min|max|avg)\\((\\*|[^()]+)\\)");
+    private static final List<String> FUNCTIONS = Arrays.asList("count", "sum", "min", "max", "avg");
+    private static final int COUNT = 0, SUM = 1, MIN = 2, MAX = 3, AVG = 4;
+
+    private int[] groupOffsets;  // in the input tuples, the group fields come first in the state tuples
+    private int[] functions;
+    private int[] arguments;  // offset of the aggregated field in the input tuples, -1 for COUNT(*)
+    private int[] states;  // offset of the state of each aggregate in the state tuples
+    private int[] outputs;  // of each result field: its group field, or -1 - its aggregate
+    private Schema stateSchema;
+    private Schema resultSchema;
+    private Relation stateRelation;
+    private Relation resultRelation;
+    private SortKey.Encoder inputKeys;
+    private SortKey.Encoder stateKeys;
+
+    private Aggregates() { }
+
+    public static boolean isAggregate(String attribute) {
+        return AGGREGATE.matcher(attribute).matches();
+    }
+
+    /* the aggregate arguments of the attributes, COUNT(*) has none */
+    public static ArrayList<String> getArguments(ArrayList<String> attributes) {
+        ArrayList<String> arguments = new ArrayList<>();
+        for (String attribute : attributes) {
+            Matcher matcher = AGGREGATE.matcher(attribute);
+            if (matcher.matches() && !matcher.group(2).equals("*")) arguments.add(matcher.group(2));
+        }
+        return arguments;
+    }
+
+    /* null if an attribute is neither an aggregate nor a group field, or a field does not exist */
+    public static Aggregates create(Schema input, ArrayList<String> groupFields, ArrayList<String> attributes) {
+        Aggregates aggregates = new Aggregates();
+        ArrayList<String> stateNames = new ArrayList<>();
+        ArrayList<FieldType> stateTypes = new ArrayList<>();
+        ArrayList<String> inputNames = new ArrayList<>();
+        aggregates.groupOffsets = new int[groupFields.size()];
+        for (int g = 0; g < groupFields.size(); g++) {
+            int offset = getOffset(input, groupFields.get(g));
+            if (offset < 0) return null;
+            aggregates.groupOffsets[g] = offset;
+            inputNames.add(input.getFieldName(offset));
+            stateNames.add(groupFields.get(g));
+            stateTypes.add(input.getFieldType(offset));
+        }
+
+        int numAggregates = 0;
+        for (String attribute : attributes) if (isAggregate(attribute)) numAggregates++;
+        aggregates.functions = new int[numAggregates];
+        aggregates.arguments = new int[numAggregates];
+        aggregates.states = new int[numAggregates];
+        aggregates.outputs = new int[attributes.size()];
+        ArrayList<FieldType> resultTypes = new ArrayList<>();
+        for (int i = 0, k = 0; i < attributes.size(); i++) {
+            String attribute = attributes.get(i);
+            Matcher matcher = AGGREGATE.matcher(attribute);
+            if (!matcher.matches()) {
+                int g = groupFields.indexOf(attribute);
+                if (g < 0) {
+                    System.err.print("Aggregates ERROR: " + attribute + " is neither aggregated nor in GROUP BY"
+                            + "\n");
+                    return null;
+                }
+                aggregates.outputs[i] = g;
+                resultTypes.add(stateTypes.get(g));
+                continue;
+            }
+            int function = FUNCTIONS.indexOf(matcher.group(1));
+            int argument = -1;
+            FieldType type = FieldType.INT;
+            if (!matcher.group(2).equals("*")) {
+                argument = getOffset(input, matcher.group(2));
+                if (argument < 0) return null;
+                type = input.getFieldType(argument);
+            } else if (function != COUNT) {
+                System.err.print("Aggregates ERROR: only COUNT takes *" + "\n");
+                return null;
+            }
+            if ((function == SUM || function == AVG) && type != FieldType.INT) {
+                System.err.print("Aggregates ERROR: " + attribute + " needs an INT field" + "\n");
+                return null;
+            }
+            aggregates.functions[k] = function;
+            aggregates.arguments[k] = argument;
+            aggregates.states[k] = stateNames.size();
+            stateNames.add("state" + k);
+            stateTypes.add(function == MIN || function == MAX ? type : FieldType.INT);
+            if (function == AVG) {
+                stateNames.add("state" + k + "count");
+                stateTypes.add(FieldType.INT);
+            }
+            aggregates.outputs[i] = -1 - k;
+            resultTypes.add(function == MIN || function == MAX ? type : FieldType.INT);
+            k++;
+        }
+        if (stateNames.size() > Config.MAX_NUM_OF_FIELDS_IN_RELATION) {
+            System.err.print("Aggregates ERROR: groups have " + stateNames.size() + " fields, at most "
+                    + Config.MAX_NUM_OF_FIELDS_IN_RELATION + " are allowed" + "\n");
+            return null;
+        }
+        aggregates.stateSchema = new Schema(stateNames, stateTypes);
+        aggregates.resultSchema = new Schema(attributes, resultTypes);
+        aggregates.inputKeys = new SortKey.Encoder(input, inputNames);
+        aggregates.stateKeys = new SortKey.Encoder(aggregates.stateSchema, groupFields);
+        return aggregates;
+    }
+
+    /* the fields of a single table are not prefixed by its name */
+    private static int getOffset(Schema schema, String field) {
+        if (!schema.fieldNameExists(field) && field.contains(".")) field = field.split("\\.")[1];
+        if (!schema.fieldNameExists(field)) {
+            System.err.print("Aggregates ERROR: field " + field + " does not exist" + "\n");
+            return -1;
+        }
+        return schema.getFieldOffset(field);
+    }
+
+    public Schema getStateSchema() {
+        return stateSchema;
+    }
+
+    public Schema getResultSchema() {
+        return resultSchema;
+    }
+
+    /* the relations of the state tuples and of the result tuples */
+    public void setRelations(Relation stateRelation, Relation resultRelation) {
+        this.stateRelation = stateRelation;
+        this.resultRelation = resultRelation;
+    }
+
+    public Relation getStateRelation() {
+        return stateRelation;
+    }
+
+    public boolean hasGroupFields() {
+        return groupOffsets.length > 0;
+    }
+
+    /* the group of an input tuple, equal to the key of its state */
+    public SortKey inputKey(Tuple input) {
+        return inputKeys.encode(input);
+    }
+
+    public SortKey stateKey(Tuple state) {
+        return stateKeys.encode(state);
+    }
+
+    /* the state of a new group holding the input tuple */
+    public Tuple newState(Tuple input) {
+        Tuple state = emptyState();
+        for (int g = 0; g < groupOffsets.length; g++) state.copyField(g, input, groupOffsets[g]);
+        add(state, input);
+        return state;
+    }
+
+    /* a state of its own, to be updated; a state read from disk shares its block */
+    public Tuple copyState(Tuple state) {
+        Tuple copy = stateRelation.createTuple();
+        for (int i = 0; i < stateSchema.getNumOfFields(); i++) copy.copyField(i, state, i);
+        return copy;
+    }
+
+    public void add(Tuple state, Tuple input) {
+        for (int k = 0; k < functions.length; k++) {
+            int s = states[k];
+            int argument = arguments[k];
+            if (argument >= 0 && input.isNullValue(argument)) continue;
+            switch (functions[k]) {
+                case COUNT:
+                    state.setField(s, state.getInt(s) + 1);
+                    break;
+                case AVG:
+                    state.setField(s, state.getInt(s) + input.getInt(argument));
+                    state.setField(s + 1, state.getInt(s + 1) + 1);
+                    break;
+                default:
+                    combine(functions[k], state, s, input, argument);
+            }
+        }
+    }
+
+    /* add the other state of the same group */
+    public void merge(Tuple state, Tuple other) {
+        for (int k = 0; k < functions.length; k++) {
+            int s = states[k];
+            switch (functions[k]) {
+                case AVG:
+                    state.setField(s, state.getInt(s) + other.getInt(s));
+                    state.setField(s + 1, state.getInt(s + 1) + other.getInt(s + 1));
+                    break;
+                case COUNT:
+                    state.setField(s, state.getInt(s) + other.getInt(s));
+                    break;
+                default:
+                    combine(functions[k], state, s, other, s);
+            }
+        }
+    }
+
+    /* SUM, MIN or MAX of the state and a value not NULL */
+    private static void combine(int function, Tuple state, int s, Tuple from, int offset) {
+        if (from.isNullValue(offset)) return;
+        if (state.isNullValue(s)) {
+            state.copyField(s, from, offset);
+            return;
+        }
+        switch (function) {
+            case SUM:
+                state.setField(s, state.getInt(s) + from.getInt(offset));
+                break;
+            case MIN:
+                if (from.compareField(offset, state, s) < 0) state.copyField(s, from, offset);
+                break;
+            case MAX:
+                if (from.compareField(offset, state, s) > 0) state.copyField(s, from, offset);
+                break;
+        }
+    }
+
+    public Tuple result(Tuple state) {
+        Tuple result = resultRelation.createTuple();
+        for (int i = 0; i < outputs.length; i++) {
+            if (outputs[i] >= 0) {
+                result.copyField(i, state, outputs[i]);
+                continue;
+            }
+            int k = -1 - outputs[i];
+            int s = states[k];
+            if (functions[k] == AVG) {
+                int count = state.getInt(s + 1);
+                result.setField(i, count == 0 ? Integer.MIN_VALUE : state.getInt(s) / count);
+            } else result.copyField(i, state, s);
+        }
+        return result;
+    }
+
+    /* the only row of aggregates without GROUP BY over no tuple */
+    public Tuple emptyResult() {
+        return result(emptyState());
+    }
+
+    /* NULL aggregates (SUM, MIN, MAX unset), COUNT and the AVG sum and count at 0 */
+    private Tuple emptyState() {
+        Tuple state = stateRelation.createTuple();
+        for (int k = 0; k < functions.length; k++) {
+            if (functions[k] == COUNT || functions[k] == AVG) state.setField(states[k], 0);
+            if (functions[k] == AVG) state.setField(states[k] + 1, 0);
+        }
+        return state;
+    }
+}
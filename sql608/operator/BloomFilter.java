@@ -0,0 +1,70 @@
+package sql608.operator;
+
+import java.util.Arrays;
+
+/*
+Bloom filter on the INT keys of a join
+a key sets 4 bits picked by double hashing: a key added is always found, a
+key not added is found only with a small probability, the false-positive
+rate, about 1% with the 10 bits a key the filter is sized for
+its bits are kept outside the frames, as the hash table of a join is
+*/
+public class BloomFilter {
+    private static final int BITS_PER_KEY = 10;
+    private static final int NUM_HASHES = 4;
+
+    private long[] words;
+    private int numBits;
+    private int numSet;  // bits set
+
+    public BloomFilter(long expectedKeys) {
+        numBits = (int) Math.max(64, Math.min(expectedKeys * BITS_PER_KEY, 1 << 30));
+        words = new long[(numBits + 63) / 64];
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+        numSet = 0;
+    }
+
+    public void add(int[] values) {
+        long h = hash(values);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = getBit(h, i);
+            if ((words[bit >>> 6] & 1L << bit) != 0) continue;
+            words[bit >>> 6] |= 1L << bit;
+            numSet++;
+        }
+    }
+
+    /* false only if the key was not added */
+    public boolean mightContain(int[] values) {
+        long h = hash(values);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = getBit(h, i);
+            if ((words[bit >>> 6] & 1L << bit) == 0) return false;
+        }
+        return true;
+    }
+
+    /* the false-positive rate the bits set give, a fraction */
+    public double getFalsePositiveRate() {
+        return Math.pow((double) numSet / numBits, NUM_HASHES);
+    }
+
+    /* bit i of a key: the low half of its hash plus i times the high half */
+    private int getBit(long h, int i) {
+        return Math.floorMod((int) h + i * ((int) (h >>> 32) | 1), numBits);
+    }
+
+    /* the values mixed into 64 bits, unrelated to the buckets of HashJoin */
+    private static long hash(int[] values) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int value : values) {
+            h = (h ^ value) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        h *= 0x94D049BB133111EBL;
+        return h ^ h >>> 29;
+    }
+}
@@ -0,0 +1,34 @@
+package sql608.operator;
+
+import sql608.algorithm.Predicate;
+import storageManager.Tuple;
+
+/* the tuples of the child satisfying the condition */
+public class Filter implements Operator {
+    private Operator child;
+    private Predicate condition;
+
+    public Filter(Operator child, Predicate condition) {
+        this.child = child;
+        this.condition = condition;
+    }
+
+    @Override
+    public void open() {
+        child.open();
+    }
+
+    @Override
+    public Tuple next() {
+        Tuple tuple;
+        while ((tuple = child.next()) != null) {
+            if (condition.test(tuple)) return tuple;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+    }
+}
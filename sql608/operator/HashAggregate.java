@@ -0,0 +1,237 @@
+package sql608.operator;
+
+import sql608.Heap.SortKey;
+import sql608.buffer.BufferPool;
+import sql608.helper.Report;
+import storageManager.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/*
+hybrid hash aggregation: the groups of the child tuples are kept in a hash
+table of state tuples, charged to at most maxFrames frames, as many state
+tuples a frame as a block holds
+when the frames run out the groups are split by hash into buckets, their
+number chosen from the groups estimated so far, and the largest bucket in
+memory is spilled to a bucket relation on disk, with one output frame, as
+often as needed; the later tuples of a spilled bucket are written as new
+states, so only the groups in memory are updated
+the groups in memory are returned once the child is over, then each spilled
+bucket is aggregated the same way, with another hash, merging its states
+the results come in the order their groups were first met in each pass
+without group fields there is a single group, returned even for no tuple
+*/
+public class HashAggregate implements Operator {
+    /* a spilled bucket and the pass writing it */
+    private static class Partition {
+        final Relation relation;
+        final int depth;
+
+        Partition(Relation relation, int depth) {
+            this.relation = relation;
+            this.depth = depth;
+        }
+    }
+
+    private Operator child;
+    private Aggregates aggregates;
+    private int maxFrames;
+    private long inputTuples;  // estimated number of child tuples
+    private BufferPool pool;
+    private MainMemory mainMemory;
+    private SchemaManager schemaManager;
+    private int tuplesPerBlock;  // state tuples a frame
+
+    private ArrayDeque<Partition> partitions = new ArrayDeque<>();
+    private int numPartitioners;
+    private int depth;  // 0 for the child, 1 + the depth of the pass writing the bucket otherwise
+
+    /* the groups of the current pass, spilled is null while they fit in memory */
+    private ArrayList<LinkedHashMap<SortKey, Tuple>> resident;
+    private ArrayList<Integer> frames = new ArrayList<>();
+    private int numResident;
+    private boolean[] spilled;
+    private int numSpilled;
+    private Partitioner writer;
+
+    private Iterator<Tuple> results;
+    private int bucket;
+    private int numResults;
+
+    public HashAggregate(Operator child, Aggregates aggregates, int maxFrames, long inputTuples,
+                         BufferPool pool, MainMemory mainMemory, SchemaManager schemaManager) {
+        this.child = child;
+        this.aggregates = aggregates;
+        this.maxFrames = Math.max(3, maxFrames);
+        this.inputTuples = inputTuples;
+        this.pool = pool;
+        this.mainMemory = mainMemory;
+        this.schemaManager = schemaManager;
+        this.tuplesPerBlock = aggregates.getStateSchema().getTuplesPerBlock();
+    }
+
+    @Override
+    public void open() {
+        close();
+        numResults = 0;
+        aggregate(child, true, 0, inputTuples);
+    }
+
+    @Override
+    public Tuple next() {
+        while (true) {
+            if (results != null) {
+                if (results.hasNext()) {
+                    numResults++;
+                    return aggregates.result(results.next());
+                }
+                if (bucket + 1 < resident.size()) {
+                    results = resident.get(++bucket).values().iterator();
+                    continue;
+                }
+            }
+            dropResident();
+            Partition partition = partitions.poll();
+            if (partition == null) {
+                if (numResults > 0 || aggregates.hasGroupFields()) return null;
+                numResults++;
+                return aggregates.emptyResult();
+            }
+            aggregate(new TableScan(pool, partition.relation, mainMemory), false, partition.depth,
+                    partition.relation.getNumOfTuples());
+            deletePartition(partition.relation);
+        }
+    }
+
+    @Override
+    public void close() {
+        dropResident();
+        for (Partition partition : partitions) deletePartition(partition.relation);
+        partitions.clear();
+    }
+
+    /* one pass: the groups of the input tuples, or of the states of a spilled bucket */
+    private void aggregate(Operator input, boolean raw, int depth, long numTuples) {
+        this.depth = depth;
+        resident = new ArrayList<>();
+        resident.add(new LinkedHashMap<>());
+        numResident = 0;
+        spilled = null;
+        numSpilled = 0;
+
+        input.open();
+        long numRead = 0;
+        Tuple tuple;
+        while ((tuple = input.next()) != null) {
+            numRead++;
+            SortKey key = raw ? aggregates.inputKey(tuple) : aggregates.stateKey(tuple);
+            int i = getBucket(key);
+            if (spilled == null || !spilled[i]) {
+                Tuple state = resident.get(i).get(key);
+                if (state != null) {
+                    if (raw) aggregates.add(state, tuple);
+                    else aggregates.merge(state, tuple);
+                    continue;
+                }
+                while (!hasRoom()) {
+                    if (spilled == null) partition(numRead, numTuples);
+                    i = getBucket(key);
+                    if (spilled[i]) break;
+                    spill(getVictim(i));
+                }
+            }
+            if (spilled != null && spilled[i]) {
+                writer.add(raw ? aggregates.newState(tuple) : tuple, i);
+                continue;
+            }
+            Tuple state = raw ? aggregates.newState(tuple) : aggregates.copyState(tuple);
+            resident.get(i).put(aggregates.stateKey(state), state);
+            numResident++;
+        }
+        input.close();
+
+        if (writer != null) {
+            for (Relation relation : writer.close()) {
+                if (relation != null) partitions.add(new Partition(relation, depth + 1));
+            }
+            writer = null;
+            if (depth == 0) Report.add("Hash aggregate: " + numSpilled + " of " + spilled.length
+                    + " partitions spilled");
+        }
+        bucket = 0;
+        results = resident.get(0).values().iterator();
+    }
+
+    /* a different hash on each pass, the groups of a spilled bucket split again */
+    private int getBucket(SortKey key) {
+        if (spilled == null) return 0;
+        int h = Integer.rotateLeft(key.hashCode(), 11 * depth) * 0x9E3779B9;
+        return (h >>> 16) % spilled.length;
+    }
+
+    /* room for one more group in memory, with an output frame per spilled bucket */
+    private boolean hasRoom() {
+        if (numResident < frames.size() * tuplesPerBlock) return true;
+        if (frames.size() + numSpilled >= maxFrames || pool.getNumOfUnpinned() == 0) return false;
+        frames.add(pool.allocate());
+        return true;
+    }
+
+    /*
+    split the groups in memory into buckets, as many as for the groups
+    expected from the part of the input read so far
+    */
+    private void partition(long numRead, long numTuples) {
+        long expected = numResident * Math.max(1, numTuples) / Math.max(1, numRead);
+        int expectedFrames = (int) Math.min(Integer.MAX_VALUE, (expected + tuplesPerBlock - 1) / tuplesPerBlock);
+        int numBuckets = HashJoin.getNumOfBuckets(Math.max(expectedFrames, maxFrames + 1), maxFrames);
+        numBuckets = Math.max(2, numBuckets);
+        spilled = new boolean[numBuckets];
+        LinkedHashMap<SortKey, Tuple> groups = resident.get(0);
+        resident = new ArrayList<>();
+        for (int i = 0; i < numBuckets; i++) resident.add(new LinkedHashMap<>());
+        for (SortKey key : groups.keySet()) resident.get(getBucket(key)).put(key, groups.get(key));
+        writer = new Partitioner(aggregates.getStateRelation().getRelationName() + "Spill" + numPartitioners++
+                + "Bucket", numBuckets, pool, mainMemory, schemaManager);
+    }
+
+    /* the largest bucket in memory, the given one if all are empty */
+    private int getVictim(int i) {
+        int victim = i;
+        for (int j = 0; j < resident.size(); j++) {
+            if (!spilled[j] && resident.get(j).size() > resident.get(victim).size()) victim = j;
+        }
+        return victim;
+    }
+
+    /* move the groups of a bucket to disk, releasing the frames they leave */
+    private void spill(int i) {
+        for (Tuple state : resident.get(i).values()) writer.add(state, i);
+        numResident -= resident.get(i).size();
+        resident.set(i, new LinkedHashMap<>());
+        spilled[i] = true;
+        numSpilled++;
+        int numFrames = (numResident + tuplesPerBlock - 1) / tuplesPerBlock;
+        while (frames.size() > numFrames) pool.release(frames.remove(frames.size() - 1));
+    }
+
+    private void dropResident() {
+        for (int frame : frames) pool.release(frame);
+        frames.clear();
+        resident = null;
+        results = null;
+        numResident = 0;
+        if (writer != null) {
+            for (Relation relation : writer.close()) if (relation != null) deletePartition(relation);
+            writer = null;
+        }
+    }
+
+    private void deletePartition(Relation relation) {
+        pool.discard(relation);
+        schemaManager.deleteRelation(relation.getRelationName());
+    }
+}
@@ -0,0 +1,484 @@
+package sql608.operator;
+
+import sql608.algorithm.Join;
+import sql608.algorithm.Predicate;
+import sql608.buffer.BufferPool;
+import sql608.helper.Report;
+import storageManager.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+hybrid hash join on INT equalities between the outer and the inner input
+the inner input is built into a hash table when it fits in maxFrames frames,
+the outer input then probes it as it streams by
+otherwise the inner input is partitioned by the hash of its key into buckets,
+their number chosen from the estimated size of the inner input, and they are
+kept in memory as long as the frames allow; when they run out the largest
+bucket is spilled to a bucket relation on disk, with one output frame
+the outer input probes the buckets in memory as it is partitioned, only its
+tuples of spilled buckets are written; the spilled buckets are then joined
+pair by pair, a build bucket too large for memory by chunks, the probe bucket
+being read once per chunk
+restarting a join that spilled reads both inputs again for the buckets in
+memory and replays the spilled ones
+given a Bloom filter, the keys of the inner tuples spilled are added to it,
+and an outer tuple of a spilled bucket it rules out is dropped instead of
+written: the false positives are measured on the outer tuples of the buckets
+in memory, whose keys are never in the filter, and the disk I/Os saved are
+the blocks of outer buckets not written nor read back, and the inner buckets
+no longer read when all their outer tuples are dropped
+joined tuples (outer fields first) failing the condition are dropped
+*/
+public class HashJoin implements Operator {
+    /* the values of the key fields of a tuple */
+    private static class Key {
+        final int[] values;
+
+        Key(Tuple tuple, int[] offsets) {
+            values = new int[offsets.length];
+            for (int i = 0; i < offsets.length; i++) values[i] = tuple.getInt(offsets[i]);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(values, ((Key) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+
+    private Operator outer;
+    private Operator inner;
+    private Relation relation;  // schema of the joined tuples
+    private int[] outerKeys;  // offsets of the key fields in the outer tuples
+    private int[] innerKeys;
+    private Predicate condition;
+    private int maxFrames;
+    private int innerFrames;  // estimated frames of the inner input
+    private BufferPool pool;
+    private MainMemory mainMemory;
+    private SchemaManager schemaManager;
+
+    private TupleBuffer build;  // the inner tuples, or the current chunk of an inner bucket
+    private HashMap<Key, ArrayList<Tuple>> table;
+    private boolean built;  // the inner input is in memory or partitioned
+
+    /* partitions, spilled is null while the inner input fits in memory */
+    private boolean[] spilled;
+    private int numSpilled;
+    private ArrayList<ArrayList<Tuple>> resident;  // tuples of the buckets in memory
+    private ArrayList<Integer> residentFrames;  // frames holding them, packed
+    private Partitioner innerWriter;
+    private Partitioner outerWriter;  // while the outer input is partitioned
+    private Relation[] innerBuckets;
+    private Relation[] outerBuckets;  // null until the outer input is partitioned
+    private int bucket;
+    private Operator buildScan;  // scan of the current inner bucket
+    private boolean buildDone;  // the current inner bucket is all in the hash table
+
+    private Operator probe;  // outer input or scan of the current outer bucket, null when over
+    private Tuple probeTuple;
+    private ArrayList<Tuple> matches;
+    private int matchIndex;
+
+    /* Bloom filter on the keys of the spilled inner tuples, null if none */
+    private BloomFilter bloom;
+    private int[] numWritten;  // outer tuples of each spilled bucket written, and dropped
+    private int[] numDropped;
+    private int outerTuplesPerBlock;
+    private long numResident;  // outer tuples of buckets in memory, and those the filter passed
+    private long numPassed;
+    private long savedIOs;
+    private boolean reported;
+
+    public HashJoin(Operator outer, Operator inner, Relation relation, int[] outerKeys, int[] innerKeys,
+                    Predicate condition, int maxFrames, int innerFrames, BufferPool pool,
+                    MainMemory mainMemory, SchemaManager schemaManager) {
+        this.outer = outer;
+        this.inner = inner;
+        this.relation = relation;
+        this.outerKeys = outerKeys;
+        this.innerKeys = innerKeys;
+        this.condition = condition;
+        this.maxFrames = maxFrames;
+        this.innerFrames = innerFrames;
+        this.pool = pool;
+        this.mainMemory = mainMemory;
+        this.schemaManager = schemaManager;
+        this.build = new TupleBuffer(pool, mainMemory, maxFrames);
+    }
+
+    /* drop the outer tuples of spilled buckets the filter rules out, before they are written */
+    public void setBloomFilter(BloomFilter bloom) {
+        this.bloom = bloom;
+    }
+
+    /* number of buckets spilled to disk, 0 if the inner input fits in memory */
+    public int getNumOfSpilled() {
+        return numSpilled;
+    }
+
+    /*
+    number of buckets for an inner input of innerFrames frames: the one
+    spilling the smallest part of the input, with spilled buckets small
+    enough to be joined in memory if possible
+    */
+    public static int getNumOfBuckets(int innerFrames, int maxFrames) {
+        int best = maxFrames;
+        double bestFraction = 2;
+        int min = Math.max(1, Math.min(maxFrames, (innerFrames + maxFrames - 1) / maxFrames));
+        for (int numBuckets = min; numBuckets <= maxFrames; numBuckets++) {
+            double fraction = (double) getNumOfSpilled(innerFrames, maxFrames, numBuckets) / numBuckets;
+            if (fraction < bestFraction) {
+                best = numBuckets;
+                bestFraction = fraction;
+            }
+        }
+        return best;
+    }
+
+    /*
+    number of equal buckets spilled for the others to stay in memory along
+    with an output frame per spilled bucket
+    */
+    public static int getNumOfSpilled(int innerFrames, int maxFrames, int numBuckets) {
+        double bucketFrames = (double) innerFrames / numBuckets;
+        for (int numSpilled = 0; numSpilled < numBuckets; numSpilled++) {
+            if ((numBuckets - numSpilled) * bucketFrames + numSpilled <= maxFrames) return numSpilled;
+        }
+        return numBuckets;
+    }
+
+    @Override
+    public void open() {
+        if (!built) {
+            inner.open();
+            if (build.load(inner)) buildTable(build.getTuples());
+            else partitionInner();
+            built = true;
+        } else if (spilled != null && table == null) {
+            reloadResident();
+        }
+        /* the outer tuples of spilled buckets are written on the first complete run */
+        if (spilled != null && outerBuckets == null) {
+            if (outerWriter != null) outerWriter.close();
+            outerWriter = newPartitioner("OuterBucket");
+            numWritten = new int[spilled.length];
+            numDropped = new int[spilled.length];
+            numResident = numPassed = savedIOs = 0;
+        }
+        probeTuple = null;
+        matches = null;
+        outer.open();
+        probe = outer;
+    }
+
+    @Override
+    public Tuple next() {
+        if (probe == null) return null;
+        while (true) {
+            if (matches != null && matchIndex < matches.size()) {
+                Tuple joined = Join.twoTuples(probeTuple, matches.get(matchIndex++), relation);
+                if (joined == null) continue;
+                if (condition.test(joined)) return joined;
+                continue;
+            }
+            probeTuple = probe.next();
+            if (probeTuple == null) {
+                matches = null;
+                if (!nextChunk()) return null;
+                continue;
+            }
+            Key key = new Key(probeTuple, outerKeys);
+            if (probe == outer && spilled != null) {
+                int i = getBucket(key);
+                if (spilled[i]) {
+                    if (outerWriter != null) addOuter(probeTuple, key, i);
+                    continue;
+                }
+                if (outerWriter != null && bloom != null) {
+                    numResident++;
+                    if (bloom.mightContain(key.values)) numPassed++;
+                }
+            }
+            matches = table.get(key);
+            matchIndex = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        outer.close();
+        inner.close();
+        if (buildScan != null) buildScan.close();
+        if (probe != null && probe != outer) probe.close();
+        buildScan = null;
+        probe = null;
+        build.release();
+        table = null;
+        built = false;
+        if (spilled != null) dropResident();
+        if (innerWriter != null) innerWriter.close();
+        if (outerWriter != null) outerWriter.close();
+        innerWriter = null;
+        outerWriter = null;
+        deleteBuckets(innerBuckets);
+        deleteBuckets(outerBuckets);
+        innerBuckets = null;
+        outerBuckets = null;
+        spilled = null;
+        numSpilled = 0;
+        numWritten = null;
+        numDropped = null;
+        reported = false;
+    }
+
+    private void buildTable(ArrayList<Tuple> tuples) {
+        if (table == null) table = new HashMap<>();
+        for (Tuple tuple : tuples) {
+            table.computeIfAbsent(new Key(tuple, innerKeys), key -> new ArrayList<>()).add(tuple);
+        }
+    }
+
+    /*
+    the bucket of a key; the hash is mixed so that the keys of one bucket
+    still spread over the hash table
+    */
+    private int getBucket(Key key) {
+        return ((key.hashCode() * 0x9E3779B9) >>> 16) % spilled.length;
+    }
+
+    /*
+    the probe input is over: after the outer input come the spilled buckets,
+    then the next chunk of the inner bucket, or the next pair of buckets;
+    false when the join is over
+    */
+    private boolean nextChunk() {
+        if (probe == outer) {
+            if (spilled == null) {
+                probe = null;
+                return false;
+            }
+            if (outerWriter != null) {
+                outerBuckets = outerWriter.close();
+                outerWriter = null;
+                for (int i = 0; i < spilled.length; i++) savedIOs += getSavedBlocks(i);
+            }
+            /* the frames of the buckets in memory go to the spilled buckets */
+            dropResident();
+            bucket = -1;
+            return nextBucket();
+        }
+        if (!buildDone) {
+            table = null;
+            buildDone = build.load(buildScan);
+            buildTable(build.getTuples());
+            probe.open();
+            savedIOs += getSavedBlocks(bucket);
+            return true;
+        }
+        probe.close();
+        return nextBucket();
+    }
+
+    /* load the next pair of non-empty spilled buckets, false if there is none */
+    private boolean nextBucket() {
+        if (buildScan != null) buildScan.close();
+        buildScan = null;
+        probe = null;
+        while (++bucket < spilled.length) {
+            if (innerBuckets[bucket] == null) continue;
+            if (outerBuckets[bucket] == null) {
+                /* the bucket would have been read and its outer tuples once */
+                if (bloom != null && numDropped != null && numDropped[bucket] > 0) {
+                    savedIOs += innerBuckets[bucket].getNumOfBlocks() + getSavedBlocks(bucket);
+                }
+                continue;
+            }
+            buildScan = new TableScan(pool, innerBuckets[bucket], mainMemory);
+            buildScan.open();
+            build.release();
+            table = null;
+            buildDone = build.load(buildScan);
+            buildTable(build.getTuples());
+            probe = new TableScan(pool, outerBuckets[bucket], mainMemory);
+            probe.open();
+            savedIOs += getSavedBlocks(bucket);
+            return true;
+        }
+        build.release();
+        table = null;
+        report();
+        return false;
+    }
+
+    /* write the outer tuple of a spilled bucket, unless the Bloom filter rules it out */
+    private void addOuter(Tuple tuple, Key key, int i) {
+        outerTuplesPerBlock = tuple.getSchema().getTuplesPerBlock();
+        if (bloom != null && !bloom.mightContain(key.values)) {
+            numDropped[i]++;
+            return;
+        }
+        outerWriter.add(tuple, i);
+        numWritten[i]++;
+    }
+
+    /* blocks of the outer bucket the dropped tuples would have taken */
+    private int getSavedBlocks(int i) {
+        if (bloom == null || numDropped == null || numDropped[i] == 0) return 0;
+        int perBlock = outerTuplesPerBlock;
+        return (numWritten[i] + numDropped[i] + perBlock - 1) / perBlock - (numWritten[i] + perBlock - 1) / perBlock;
+    }
+
+    /* the outer tuples the Bloom filter dropped on the first complete run, once */
+    private void report() {
+        if (bloom == null || numDropped == null || reported) return;
+        reported = true;
+        long dropped = 0;
+        long seen = 0;
+        for (int i = 0; i < spilled.length; i++) {
+            dropped += numDropped[i];
+            seen += numWritten[i] + numDropped[i];
+        }
+        /* measured on the outer tuples of the buckets in memory, else from the bits set */
+        double falsePositives = numResident > 0 ? (double) numPassed / numResident : bloom.getFalsePositiveRate();
+        Report.add("Bloom filter " + relation.getRelationName() + ": " + dropped + " of " + seen
+                + " spilled outer tuples dropped, " + Math.round(1000 * falsePositives) / 10.0
+                + "% false positives, " + savedIOs + " disk I/Os saved");
+    }
+
+    /*
+    the inner input does not fit: partition it, the tuples already loaded
+    first, keeping in memory the buckets the frames can hold
+    */
+    private void partitionInner() {
+        ArrayList<Tuple> loaded = new ArrayList<>(build.getTuples());
+        Tuple pending = build.takePending();
+        if (pending != null) loaded.add(pending);
+        build.release();
+        /* larger than estimated if it does not fit; a frame is left to read the inputs */
+        int numBuckets = getNumOfBuckets(Math.max(innerFrames, maxFrames + 1), maxFrames);
+        numBuckets = Math.max(1, Math.min(numBuckets, pool.getNumOfUnpinned() - 1));
+        spilled = new boolean[numBuckets];
+        numSpilled = 0;
+        resident = new ArrayList<>();
+        for (int i = 0; i < numBuckets; i++) resident.add(new ArrayList<>());
+        residentFrames = new ArrayList<>();
+        innerWriter = newPartitioner("InnerBucket");
+        if (bloom != null) bloom.clear();
+
+        for (Tuple tuple : loaded) addInner(tuple);
+        Tuple tuple;
+        while ((tuple = inner.next()) != null) addInner(tuple);
+        innerBuckets = innerWriter.close();
+        innerWriter = null;
+        inner.close();
+
+        for (ArrayList<Tuple> tuples : resident) buildTable(tuples);
+        Report.add("Hash join " + relation.getRelationName() + ": " + numSpilled + " of " + numBuckets
+                + " partitions spilled");
+    }
+
+    private void addInner(Tuple tuple) {
+        int i = getBucket(new Key(tuple, innerKeys));
+        while (!spilled[i] && !hasRoom()) spill(getVictim(i));
+        if (spilled[i]) addSpilled(tuple, i);
+        else addResident(tuple, i);
+    }
+
+    /* room for one more tuple in memory, with an output frame per spilled bucket */
+    private boolean hasRoom() {
+        if (!residentFrames.isEmpty()) {
+            Block block = mainMemory.getBlock(residentFrames.get(residentFrames.size() - 1));
+            if (!block.isFull()) return true;
+        }
+        return residentFrames.size() + numSpilled < maxFrames && pool.getNumOfUnpinned() > 0;
+    }
+
+    private void addResident(Tuple tuple, int i) {
+        Block block = null;
+        if (!residentFrames.isEmpty()) block = mainMemory.getBlock(residentFrames.get(residentFrames.size() - 1));
+        if (block == null || block.isFull()) {
+            int frame = pool.allocate();
+            residentFrames.add(frame);
+            block = mainMemory.getBlock(frame);
+        }
+        block.appendTuple(tuple);
+        resident.get(i).add(tuple);
+    }
+
+    /* the largest bucket in memory, the given one if all are empty */
+    private int getVictim(int i) {
+        int victim = i;
+        for (int j = 0; j < resident.size(); j++) {
+            if (!spilled[j] && resident.get(j).size() > resident.get(victim).size()) victim = j;
+        }
+        return victim;
+    }
+
+    /* move a bucket from memory to disk, packing the tuples left in memory */
+    private void spill(int i) {
+        ArrayList<Tuple> tuples = resident.get(i);
+        resident.set(i, new ArrayList<>());
+        spilled[i] = true;
+        numSpilled++;
+
+        int numFrames = 0;
+        Block block = null;
+        for (ArrayList<Tuple> bucketTuples : resident) {
+            for (Tuple tuple : bucketTuples) {
+                if (block == null || block.isFull()) {
+                    block = mainMemory.getBlock(residentFrames.get(numFrames++));
+                    block.clear();
+                }
+                block.appendTuple(tuple);
+            }
+        }
+        while (residentFrames.size() > numFrames) pool.release(residentFrames.remove(residentFrames.size() - 1));
+
+        for (Tuple tuple : tuples) addSpilled(tuple, i);
+    }
+
+    private void addSpilled(Tuple tuple, int i) {
+        innerWriter.add(tuple, i);
+        if (bloom != null) bloom.add(new Key(tuple, innerKeys).values);
+    }
+
+    /* read the inner tuples of the buckets in memory again, for another run */
+    private void reloadResident() {
+        inner.open();
+        Tuple tuple;
+        while ((tuple = inner.next()) != null) {
+            int i = getBucket(new Key(tuple, innerKeys));
+            if (!spilled[i]) addResident(tuple, i);
+        }
+        inner.close();
+        for (ArrayList<Tuple> tuples : resident) buildTable(tuples);
+    }
+
+    private void dropResident() {
+        for (int frame : residentFrames) pool.release(frame);
+        residentFrames.clear();
+        for (ArrayList<Tuple> tuples : resident) tuples.clear();
+        table = null;
+    }
+
+    private Partitioner newPartitioner(String suffix) {
+        return new Partitioner(relation.getRelationName() + suffix, spilled.length, pool, mainMemory, schemaManager);
+    }
+
+    private void deleteBuckets(Relation[] buckets) {
+        if (buckets == null) return;
+        for (Relation bucket : buckets) {
+            if (bucket == null) continue;
+            pool.discard(bucket);
+            schemaManager.deleteRelation(bucket.getRelationName());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package sql608.operator;
+
+import sql608.algorithm.Join;
+import sql608.algorithm.Predicate;
+import storageManager.Relation;
+import storageManager.Tuple;
+
+/*
+index nested-loop join: for each outer tuple the inner tuples with its key
+are looked up in an index on the inner table, the inner input being the
+lookup with the inner selections and projection on top; no frame is held,
+the outer input is read once and each inner block found is read through
+the buffer pool
+joined tuples (outer fields first) failing the condition are dropped
+*/
+public class IndexJoin implements Operator {
+    private Operator outer;
+    private Operator inner;
+    private IndexLookup lookup;  // at the bottom of the inner input
+    private int outerKey;  // offset of the key in the outer tuples
+    private Relation relation;  // schema of the joined tuples
+    private Predicate condition;
+    private Tuple outerTuple;
+
+    public IndexJoin(Operator outer, Operator inner, IndexLookup lookup, int outerKey, Relation relation,
+                     Predicate condition) {
+        this.outer = outer;
+        this.inner = inner;
+        this.lookup = lookup;
+        this.outerKey = outerKey;
+        this.relation = relation;
+        this.condition = condition;
+    }
+
+    @Override
+    public void open() {
+        outer.open();
+        outerTuple = null;
+    }
+
+    @Override
+    public Tuple next() {
+        while (true) {
+            if (outerTuple == null) {
+                outerTuple = outer.next();
+                if (outerTuple == null) return null;
+                lookup.setKey(outerTuple.getInt(outerKey));
+                inner.open();
+            }
+            Tuple innerTuple;
+            while ((innerTuple = inner.next()) != null) {
+                Tuple joined = Join.twoTuples(outerTuple, innerTuple, relation);
+                if (joined != null && condition.test(joined)) return joined;
+            }
+            outerTuple = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        outer.close();
+        inner.close();
+    }
+}
@@ -0,0 +1,71 @@
+package sql608.operator;
+
+import sql608.buffer.BufferPool;
+import sql608.index.Index;
+import storageManager.MainMemory;
+import storageManager.Relation;
+import storageManager.Tuple;
+
+import java.util.ArrayList;
+
+/*
+the tuples of a relation with a key, found by an index on one of its fields
+and read block by block through the buffer pool; setKey then open() looks
+up another key, so an index join reopens it for each outer tuple
+*/
+public class IndexLookup implements Operator {
+    private Index index;
+    private BufferPool pool;
+    private Relation relation;
+    private MainMemory mainMemory;
+    private int tuplesPerBlock;
+    private Object key;
+    private int[] positions;
+    private int positionIndex;
+    private int block;  // the block the tuples are from
+    private ArrayList<Tuple> tuples;
+
+    public IndexLookup(Index index, BufferPool pool, MainMemory mainMemory) {
+        this.index = index;
+        this.pool = pool;
+        this.relation = index.getTable();
+        this.mainMemory = mainMemory;
+        this.tuplesPerBlock = relation.getSchema().getTuplesPerBlock();
+    }
+
+    /* an Integer, or a String for STR20 */
+    public void setKey(Object key) {
+        this.key = key;
+    }
+
+    @Override
+    public void open() {
+        positions = index.find(key, Integer.MAX_VALUE);
+        positionIndex = 0;
+        block = -1;
+        tuples = null;
+    }
+
+    @Override
+    public Tuple next() {
+        while (positions != null && positionIndex < positions.length) {
+            int position = positions[positionIndex++];
+            if (position / tuplesPerBlock != block) {
+                block = position / tuplesPerBlock;
+                int frame = pool.pin(relation, block);
+                if (frame < 0) return null;
+                tuples = mainMemory.getBlock(frame).getTuples();
+                pool.unpin(frame, false);
+            }
+            int slot = position % tuplesPerBlock;
+            if (slot < tuples.size() && !tuples.get(slot).isNull()) return tuples.get(slot);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        positions = null;
+        tuples = null;
+    }
+}
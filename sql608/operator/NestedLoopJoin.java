@@ -0,0 +1,85 @@
+package sql608.operator;
+
+import sql608.algorithm.Join;
+import sql608.algorithm.Predicate;
+import sql608.buffer.BufferPool;
+import storageManager.MainMemory;
+import storageManager.Relation;
+import storageManager.Tuple;
+
+import java.util.ArrayList;
+
+/*
+block nested-loop join
+the inner tuples are loaded into frames allocated from the buffer pool,
+at most maxFrames of them; the outer input is streamed past each chunk
+of inner tuples, so it is read once per chunk
+an inner input fitting in one chunk stays in memory for the whole join,
+restarting the join then only restarts the outer input
+joined tuples (outer fields first) failing the condition are dropped
+*/
+public class NestedLoopJoin implements Operator {
+    private Operator outer;
+    private Operator inner;
+    private Relation relation;  // schema of the joined tuples
+    private Predicate condition;
+    private TupleBuffer chunk;  // the current chunk of inner tuples
+    private boolean innerDone;
+    private boolean innerInMemory;  // the whole inner input is in the chunk
+    private Tuple outerTuple;
+    private int innerIndex;
+
+    public NestedLoopJoin(Operator outer, Operator inner, Relation relation, Predicate condition,
+                          int maxFrames, BufferPool pool, MainMemory mainMemory) {
+        this.outer = outer;
+        this.inner = inner;
+        this.relation = relation;
+        this.condition = condition;
+        this.chunk = new TupleBuffer(pool, mainMemory, maxFrames);
+    }
+
+    @Override
+    public void open() {
+        if (!innerInMemory) {
+            chunk.release();
+            inner.open();
+            innerDone = chunk.load(inner);
+            innerInMemory = innerDone;
+        }
+        outer.open();
+        outerTuple = null;
+    }
+
+    @Override
+    public Tuple next() {
+        while (true) {
+            if (outerTuple == null) {
+                outerTuple = outer.next();
+                if (outerTuple == null) {
+                    /* outer input is over, go on with the next chunk of inner tuples */
+                    if (innerDone) return null;
+                    innerDone = chunk.load(inner);
+                    if (chunk.getTuples().isEmpty()) return null;
+                    outer.open();
+                    continue;
+                }
+                innerIndex = 0;
+            }
+            ArrayList<Tuple> innerTuples = chunk.getTuples();
+            while (innerIndex < innerTuples.size()) {
+                Tuple joined = Join.twoTuples(outerTuple, innerTuples.get(innerIndex++), relation);
+                if (joined == null) continue;
+                if (condition.test(joined)) return joined;
+            }
+            outerTuple = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        outer.close();
+        inner.close();
+        chunk.release();
+        innerInMemory = false;
+    }
+}
@@ -0,0 +1,18 @@
+package sql608.operator;
+
+import storageManager.Tuple;
+
+/*
+physical operator of a query plan (iterator model)
+open() prepares the stream, next() returns one tuple at a time and
+null at the end, close() gives back the memory the operator holds
+calling open() again on an open operator restarts its stream,
+joins use this to read their outer input once more
+*/
+public interface Operator {
+    void open();
+
+    Tuple next();
+
+    void close();
+}
@@ -0,0 +1,48 @@
+package sql608.operator;
+
+import storageManager.Tuple;
+
+/*
+print every field of the child tuples, the root of a plan
+joined rows are printed without a header line, as before
+*/
+public class Output implements Operator {
+    private Operator child;
+    private int numOfRows;
+
+    public Output(Operator child) {
+        this.child = child;
+    }
+
+    @Override
+    public void open() {
+        System.out.println();
+        numOfRows = 0;
+        child.open();
+    }
+
+    /* print and return the next row */
+    @Override
+    public Tuple next() {
+        Tuple tuple = child.next();
+        if (tuple == null) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tuple.getNumOfFields(); i++) {
+            String val = tuple.getField(i).toString();
+            /* handle null case */
+            String MIN = Integer.toString(Integer.MIN_VALUE);
+            if (val.equals(MIN) || val.equals("null")) val = "NULL";
+            sb.append(val).append("\t");
+        }
+        System.out.println(sb.toString());
+        numOfRows++;
+        return tuple;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+        System.out.println("---------------------------");
+        System.out.println(numOfRows + " rows of results");
+    }
+}
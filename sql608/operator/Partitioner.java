@@ -0,0 +1,66 @@
+package sql608.operator;
+
+import sql608.buffer.BufferPool;
+import storageManager.*;
+
+import java.util.Arrays;
+
+/*
+writes tuples to bucket relations, one output frame per bucket getting tuples;
+a full frame is appended to its bucket relation, created (prefix + bucket)
+when the bucket gets its first tuple
+*/
+public class Partitioner {
+    private String prefix;
+    private BufferPool pool;
+    private MainMemory mainMemory;
+    private SchemaManager schemaManager;
+    private Relation[] buckets;
+    private int[] frames;
+
+    public Partitioner(String prefix, int numBuckets, BufferPool pool, MainMemory mainMemory,
+                       SchemaManager schemaManager) {
+        this.prefix = prefix;
+        this.pool = pool;
+        this.mainMemory = mainMemory;
+        this.schemaManager = schemaManager;
+        this.buckets = new Relation[numBuckets];
+        this.frames = new int[numBuckets];
+        Arrays.fill(frames, -1);
+    }
+
+    public void add(Tuple tuple, int i) {
+        if (buckets[i] == null) {
+            String name = prefix + i;
+            if (schemaManager.relationExists(name)) {
+                pool.discard(schemaManager.getRelation(name));
+                schemaManager.deleteRelation(name);
+            }
+            buckets[i] = schemaManager.createRelation(name, tuple.getSchema());
+        }
+        if (frames[i] < 0) frames[i] = pool.allocate();
+        if (frames[i] < 0) {
+            System.err.print("Partitioner ERROR: no free frame for bucket " + i + "\n");
+            return;
+        }
+        Block block = mainMemory.getBlock(frames[i]);
+        if (block.isFull()) {
+            buckets[i].setBlock(buckets[i].getNumOfBlocks(), frames[i]);
+            block.clear();
+        }
+        block.appendTuple(tuple);
+    }
+
+    /* write the last blocks, release the frames; the buckets without a tuple are null */
+    public Relation[] close() {
+        for (int i = 0; i < buckets.length; i++) {
+            if (frames[i] < 0) continue;
+            if (!mainMemory.getBlock(frames[i]).isEmpty()) {
+                buckets[i].setBlock(buckets[i].getNumOfBlocks(), frames[i]);
+            }
+            pool.release(frames[i]);
+            frames[i] = -1;
+        }
+        return buckets;
+    }
+}
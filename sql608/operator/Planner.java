@@ -0,0 +1,715 @@
+package sql608.operator;
+
+import sql608.algorithm.ExpressionTree;
+import sql608.algorithm.ExpressionTreeNode;
+import sql608.algorithm.Join;
+import sql608.algorithm.Predicate;
+import sql608.algorithm.PredicateCompiler;
+import sql608.buffer.BufferPool;
+import sql608.index.Index;
+import sql608.index.IndexManager;
+import sql608.parse.ParserContainer;
+import storageManager.*;
+
+import java.util.*;
+
+/*
+build the operator tree of a multiple-table SELECT
+the conditions on one table are pushed down to the scan of that table,
+which reads only the blocks an index finds for them, if any,
+the tables are joined left-deep, each by a hash join on its INT equalities
+with the tables before it, by an index nested-loop join through an index
+on one of them, or by a block nested-loop join, whichever reads less; every
+other condition is checked by the first join having all its tables
+tuples stream from the scans to the output; only ORDER BY writes to disk,
+to sort, and DISTINCT when its rows do not fit in memory
+GROUP BY, aggregates and DISTINCT are computed at the top by a hash
+aggregation, in frames kept from the joins, or on one table after its
+selection; GROUP BY by a sort aggregation instead when a sort of the input
+is cheaper and ORDER BY is on a group field, the one sort serving both
+the relations holding the joined schemas are created on the way, the caller
+deletes them (getTempRelations) once the plan has run
+*/
+public class Planner {
+    private SchemaManager schemaManager;
+    private BufferPool pool;
+    private MainMemory mainMemory;
+    private IndexManager indexes;
+    private ArrayList<String> tempRelations = new ArrayList<>();
+    private int reservedFrames;  // kept from the joins for the aggregation
+
+    /* the join order and how each table is joined to the ones before it */
+    private static class JoinPlan {
+        int[] order;
+        int[] frames;  // frames of the join of each inner table, index 0 unused
+        boolean[] hash;  // hash join, else nested-loop join
+        int[] index;  // the equality an index join looks up, -1 for none
+        boolean[] bloom;  // the hash join filters its outer input by a Bloom filter on the inner keys
+        long numTuples;  // estimated joined tuples
+    }
+
+    public Planner(SchemaManager schemaManager, BufferPool pool, MainMemory mainMemory, IndexManager indexes) {
+        this.schemaManager = schemaManager;
+        this.pool = pool;
+        this.mainMemory = mainMemory;
+        this.indexes = indexes;
+    }
+
+    public ArrayList<String> getTempRelations() {
+        return tempRelations;
+    }
+
+    /* return null if the query cannot be planned */
+    public Operator plan(ParserContainer parserContainer) {
+        if (parserContainer.getTables() == null) return planSingleTable(parserContainer);
+        ArrayList<String> tables = parserContainer.getTables();
+        int numTables = tables.size();
+        Relation[] relations = new Relation[numTables];
+        for (int i = 0; i < numTables; i++) {
+            relations[i] = schemaManager.getRelation(tables.get(i));
+            if (relations[i] == null) return null;
+        }
+
+        /* split WHERE by AND, find the tables each condition refers to */
+        ArrayList<ExpressionTreeNode> conditions = new ArrayList<>();
+        if (parserContainer.isWhere()) {
+            ExpressionTree expressionTree = new ExpressionTree(parserContainer.getConditions());
+            ArrayList<ExpressionTreeNode> subNodes = ExpressionTree.getSubTreeNodes(expressionTree).nodeName;
+            if (subNodes != null) conditions.addAll(subNodes);
+        }
+        ArrayList<Set<Integer>> conditionTables = new ArrayList<>();
+        for (ExpressionTreeNode condition : conditions) {
+            Set<Integer> referred = new HashSet<>();
+            getTables(condition, tables, referred);
+            conditionTables.add(referred);
+        }
+        boolean[] placed = new boolean[conditions.size()];
+        int[][] equiTables = new int[conditions.size()][];
+        for (int j = 0; j < conditions.size(); j++) {
+            equiTables[j] = getEquiTables(conditions.get(j), tables, relations);
+        }
+
+        /* output fields as table.attr, SELECT * lists the tables in FROM order */
+        ArrayList<String> fieldNames = new ArrayList<>();
+        ArrayList<String> attributes = parserContainer.getAttributes();
+        if (parserContainer.isGroup() && attributes.get(0).equals("*")) {
+            System.err.print("Planner ERROR: SELECT * cannot be grouped" + "\n");
+            return null;
+        }
+        if (attributes.get(0).equals("*")) {
+            for (int i = 0; i < numTables; i++) {
+                for (String field : relations[i].getSchema().getFieldNames()) {
+                    fieldNames.add(tables.get(i) + "." + field);
+                }
+            }
+        } else fieldNames.addAll(attributes);
+
+        /*
+        each table passes on only the fields used above its scan:
+        output, ORDER BY and the conditions on several tables
+        */
+        Set<String> usedFields = new HashSet<>(fieldNames);
+        if (parserContainer.isOrder()) usedFields.add(parserContainer.getOrderAttribute());
+        usedFields.addAll(parserContainer.getGroupAttributes());
+        usedFields.addAll(Aggregates.getArguments(fieldNames));
+        for (int j = 0; j < conditions.size(); j++) {
+            if (conditionTables.get(j).size() != 1) getFields(conditions.get(j), usedFields);
+        }
+        Schema[] schemas = new Schema[numTables];
+        int numFields = 0;
+        for (int i = 0; i < numTables; i++) {
+            schemas[i] = getUsedSchema(relations[i].getSchema(), tables.get(i), usedFields);
+            numFields += schemas[i].getNumOfFields();
+        }
+        /* a joined tuple is stored like any tuple */
+        if (numFields > Config.MAX_NUM_OF_FIELDS_IN_RELATION) {
+            System.err.print("Planner ERROR: joined tuples have " + numFields + " fields, at most "
+                    + Config.MAX_NUM_OF_FIELDS_IN_RELATION + " are allowed" + "\n");
+            return null;
+        }
+
+        /* the hash aggregation gets a share of the frames as one more join would */
+        boolean hashed = parserContainer.isGroup() || parserContainer.isDistinct();
+        reservedFrames = hashed ? Math.max(1, (mainMemory.getMemorySize() - 2) / (numTables + 1)) : 0;
+        /* the blocks each table reads for its own conditions, all of them unless an index finds fewer */
+        int[][] scanBlocks = new int[numTables][];
+        for (int i = 0; i < numTables; i++) {
+            ArrayList<ExpressionTreeNode> selections = new ArrayList<>();
+            for (int j = 0; j < conditions.size(); j++) {
+                Set<Integer> referred = conditionTables.get(j);
+                if (referred.size() == 1 && referred.contains(i)) selections.add(conditions.get(j));
+            }
+            scanBlocks[i] = indexes.lookup(relations[i], mergeNodes(selections));
+        }
+        /* the index on each side of each equality, if any */
+        Index[][] equiIndexes = new Index[conditions.size()][2];
+        for (int j = 0; j < conditions.size(); j++) {
+            if (equiTables[j] == null) continue;
+            ExpressionTreeNode condition = conditions.get(j);
+            for (int side = 0; side < 2; side++) {
+                String field = (side == 0 ? condition.getLeft() : condition.getRight()).getValue().split("\\.")[1];
+                equiIndexes[j][side] = indexes.getEqualityIndex(relations[equiTables[j][side]], field);
+            }
+        }
+        JoinPlan joinPlan = joinOrder(relations, schemas, conditionTables, equiTables, scanBlocks, equiIndexes);
+        int[] order = joinPlan.order;
+
+        /* the first table, then join the others one by one */
+        Operator root = scan(order[0], new TableScan(pool, relations[order[0]], mainMemory, scanBlocks[order[0]]),
+                tables, relations, schemas, conditions, conditionTables, placed);
+        String joinedName = tables.get(order[0]);
+        Schema joinedSchema = schemas[order[0]];
+        Set<Integer> joined = new HashSet<>();
+        joined.add(order[0]);
+        for (int i = 1; i < numTables; i++) {
+            int table = order[i];
+            /* an index join looks up the equality in the index of the inner table, which checks it */
+            int indexed = joinPlan.index[i];
+            IndexLookup lookup = null;
+            String indexKey = null;
+            if (indexed >= 0) {
+                int side = equiTables[indexed][0] == table ? 0 : 1;
+                ExpressionTreeNode condition = conditions.get(indexed);
+                lookup = new IndexLookup(equiIndexes[indexed][side], pool, mainMemory);
+                indexKey = (side == 0 ? condition.getRight() : condition.getLeft()).getValue();
+                placed[indexed] = true;
+            }
+            Operator inner = scan(table, lookup != null ? lookup
+                    : new TableScan(pool, relations[table], mainMemory, scanBlocks[table]),
+                    tables, relations, schemas, conditions, conditionTables, placed);
+            /* the equalities with the tables before are the keys of a hash join */
+            ArrayList<String> outerKeys = new ArrayList<>();
+            ArrayList<String> innerKeys = new ArrayList<>();
+            for (int j = 0; joinPlan.hash[i] && j < conditions.size(); j++) {
+                if (placed[j] || equiTables[j] == null) continue;
+                int side = equiTables[j][0] == table ? 0 : 1;
+                if (equiTables[j][side] != table || !joined.contains(equiTables[j][1 - side])) continue;
+                ExpressionTreeNode condition = conditions.get(j);
+                ExpressionTreeNode innerField = side == 0 ? condition.getLeft() : condition.getRight();
+                ExpressionTreeNode outerField = side == 0 ? condition.getRight() : condition.getLeft();
+                innerKeys.add(innerField.getValue().split("\\.")[1]);
+                outerKeys.add(outerField.getValue());
+                placed[j] = true;
+            }
+            joined.add(table);
+            ArrayList<ExpressionTreeNode> joinConditions = new ArrayList<>();
+            for (int j = 0; j < conditions.size(); j++) {
+                if (!placed[j] && joined.containsAll(conditionTables.get(j))) {
+                    joinConditions.add(conditions.get(j));
+                    placed[j] = true;
+                }
+            }
+            Schema outerSchema = joinedSchema;
+            joinedSchema = Join.twoSchema(joinedSchema, schemas[table], joinedName, tables.get(table));
+            joinedName = joinedName + "Join" + tables.get(table);
+            Relation joinedRelation = createTempRelation(joinedName, joinedSchema);
+            Predicate joinCondition = PredicateCompiler.compile(mergeNodes(joinConditions), joinedSchema);
+            if (lookup != null) {
+                root = new IndexJoin(root, inner, lookup, getOuterOffset(outerSchema, indexKey), joinedRelation,
+                        joinCondition);
+            } else if (!innerKeys.isEmpty()) {
+                int[] outerOffsets = new int[outerKeys.size()];
+                for (int k = 0; k < outerOffsets.length; k++) {
+                    outerOffsets[k] = getOuterOffset(outerSchema, outerKeys.get(k));
+                }
+                HashJoin hashJoin = new HashJoin(root, inner, joinedRelation, outerOffsets,
+                        getOffsets(schemas[table], innerKeys), joinCondition, joinPlan.frames[i],
+                        getNeededFrames(relations[table], schemas[table]), pool, mainMemory, schemaManager);
+                if (joinPlan.bloom[i]) hashJoin.setBloomFilter(new BloomFilter(relations[table].getNumOfTuples()));
+                root = hashJoin;
+            } else {
+                root = new NestedLoopJoin(root, inner, joinedRelation, joinCondition, joinPlan.frames[i],
+                        pool, mainMemory);
+            }
+        }
+
+        /* conditions on no table of the FROM list */
+        ArrayList<ExpressionTreeNode> remainConditions = new ArrayList<>();
+        for (int j = 0; j < conditions.size(); j++) if (!placed[j]) remainConditions.add(conditions.get(j));
+        if (!remainConditions.isEmpty()) {
+            root = new Filter(root, PredicateCompiler.compile(mergeNodes(remainConditions), joinedSchema));
+        }
+        if (parserContainer.isGroup()) {
+            return group(root, joinedSchema, joinedName, joinPlan.numTuples, reservedFrames, parserContainer);
+        }
+
+        for (String field : fieldNames) {
+            if (!joinedSchema.fieldNameExists(field)) {
+                System.err.print("Planner ERROR: field " + field + " does not exist" + "\n");
+                return null;
+            }
+        }
+
+        if (parserContainer.isDistinct()) {
+            return distinct(root, joinedSchema, joinedName, joinPlan.numTuples, reservedFrames, fieldNames,
+                    parserContainer.isOrder() ? parserContainer.getOrderAttribute() : null);
+        }
+
+        /* sort on the ORDER BY attribute then the other output fields */
+        ArrayList<String> sortFields = null;
+        if (parserContainer.isOrder()) {
+            sortFields = new ArrayList<>();
+            String orderAttr = parserContainer.getOrderAttribute();
+            if (!joinedSchema.fieldNameExists(orderAttr)) {
+                System.err.print("Planner ERROR: field " + orderAttr + " does not exist" + "\n");
+                return null;
+            }
+            sortFields.add(orderAttr);
+            for (String field : fieldNames) if (!field.equals(orderAttr)) sortFields.add(field);
+        }
+
+        /* project before sorting when the sort fields survive, less to write */
+        boolean project = !fieldNames.equals(joinedSchema.getFieldNames());
+        Relation relation = schemaManager.getRelation(joinedName);
+        if (project && (sortFields == null || fieldNames.containsAll(sortFields))) {
+            relation = createProjectedRelation(joinedName, joinedSchema, fieldNames);
+            root = new Project(root, relation, getOffsets(joinedSchema, fieldNames));
+            project = false;
+        }
+        if (sortFields != null) root = new Sort(root, relation, sortFields, pool, mainMemory);
+        if (project) {
+            Relation projected = createProjectedRelation(joinedName, joinedSchema, fieldNames);
+            root = new Project(root, projected, getOffsets(joinedSchema, fieldNames));
+        }
+        return new Output(root);
+    }
+
+    /* a grouped or DISTINCT SELECT on one table: its scan or index lookup, the WHERE condition, then the hashing */
+    private Operator planSingleTable(ParserContainer parserContainer) {
+        Relation relation = schemaManager.getRelation(parserContainer.getTable());
+        if (relation == null) return null;
+        ArrayList<String> attributes = parserContainer.getAttributes();
+        if (parserContainer.isGroup() && attributes.get(0).equals("*")) {
+            System.err.print("Planner ERROR: SELECT * cannot be grouped" + "\n");
+            return null;
+        }
+        ExpressionTreeNode condition = parserContainer.isWhere()
+                ? new ExpressionTree(parserContainer.getConditions()).getRoot() : null;
+        Operator root = new TableScan(pool, relation, mainMemory, indexes.lookup(relation, condition));
+        if (condition != null) root = new Filter(root, PredicateCompiler.compile(condition, relation.getSchema()));
+        String name = relation.getRelationName();
+        int frames = mainMemory.getMemorySize() - 2;
+        if (parserContainer.isGroup()) {
+            return group(root, relation.getSchema(), name, relation.getNumOfTuples(), frames, parserContainer);
+        }
+        ArrayList<String> fieldNames = attributes.get(0).equals("*") ? relation.getSchema().getFieldNames()
+                : attributes;
+        return distinct(root, relation.getSchema(), name, relation.getNumOfTuples(), frames, fieldNames,
+                parserContainer.isOrder() ? parserContainer.getOrderAttribute() : null);
+    }
+
+    /*
+    DISTINCT by a hash aggregation grouping on the output fields, the rows
+    coming in the order they are first met, then ORDER BY (orderAttr, null
+    if none) sorts the distinct rows only; an ORDER BY attribute not in the
+    output is aggregated as its MIN in each distinct row, sorted on, then
+    projected away
+    */
+    private Operator distinct(Operator root, Schema inputSchema, String name, long inputTuples, int frames,
+                              ArrayList<String> fieldNames, String orderAttr) {
+        ArrayList<String> attributes = new ArrayList<>(fieldNames);
+        String sortAttr = orderAttr;
+        if (orderAttr != null && !fieldNames.contains(orderAttr)) {
+            sortAttr = "min(" + orderAttr + ")";
+            attributes.add(sortAttr);
+        }
+        Aggregates aggregates = Aggregates.create(inputSchema, fieldNames, attributes);
+        if (aggregates == null) return null;
+        Relation rows = createTempRelation(name + "Distinct", aggregates.getResultSchema());
+        aggregates.setRelations(createTempRelation(name + "Group", aggregates.getStateSchema()), rows);
+        root = new HashAggregate(root, aggregates, frames, inputTuples, pool, mainMemory, schemaManager);
+        if (orderAttr == null) return new Output(root);
+
+        ArrayList<String> sortFields = new ArrayList<>();
+        sortFields.add(sortAttr);
+        for (String field : fieldNames) if (!field.equals(orderAttr)) sortFields.add(field);
+        root = new Sort(root, rows, sortFields, pool, mainMemory);
+        if (attributes.size() == fieldNames.size()) return new Output(root);
+        Relation projected = createProjectedRelation(name + "Distinct", rows.getSchema(), fieldNames);
+        root = new Project(root, projected, getOffsets(rows.getSchema(), fieldNames));
+        return new Output(root);
+    }
+
+    /*
+    the groups of the input, then ORDER BY and DISTINCT on the results
+    ORDER BY sorts on its attribute, then the other group fields, then the
+    other output fields
+    when ORDER BY is on a group field, the groups may not fit in the frames
+    and their state tuples are wider than the input tuples, the input is
+    sorted instead, on the group fields in that order, and aggregated as it
+    streams, its results already in order
+    */
+    private Operator group(Operator root, Schema inputSchema, String name, long inputTuples, int frames,
+                           ParserContainer parserContainer) {
+        ArrayList<String> groupFields = parserContainer.getGroupAttributes();
+        ArrayList<String> attributes = parserContainer.getAttributes();
+        Aggregates aggregates = Aggregates.create(inputSchema, groupFields, attributes);
+        if (aggregates == null) return null;
+        aggregates.setRelations(createTempRelation(name + "Group", aggregates.getStateSchema()),
+                createTempRelation(name + "Aggregate", aggregates.getResultSchema()));
+
+        ArrayList<String> sortFields = null;
+        String orderAttr = parserContainer.isOrder() ? parserContainer.getOrderAttribute() : null;
+        if (orderAttr != null) {
+            if (!attributes.contains(orderAttr)) {
+                System.err.print("Planner ERROR: ORDER BY " + orderAttr + " is not in the SELECT list" + "\n");
+                return null;
+            }
+            sortFields = new ArrayList<>();
+            sortFields.add(orderAttr);
+            for (String field : attributes) {
+                if (groupFields.contains(field) && !sortFields.contains(field)) sortFields.add(field);
+            }
+            for (String field : attributes) if (!sortFields.contains(field)) sortFields.add(field);
+        }
+        /* the groups are distinct already when every group field is output */
+        if (parserContainer.isDistinct() && !attributes.containsAll(groupFields)) {
+            root = new HashAggregate(root, aggregates, frames, inputTuples, pool, mainMemory, schemaManager);
+            return distinctResults(root, aggregates.getResultSchema(), name, inputTuples, frames, attributes,
+                    orderAttr);
+        }
+
+        /* as many groups as tuples at worst; spilled, they are written as states, sorted, as input tuples */
+        int tuplesPerBlock = aggregates.getStateSchema().getTuplesPerBlock();
+        boolean fits = (inputTuples + tuplesPerBlock - 1) / tuplesPerBlock <= frames;
+        boolean wider = aggregates.getStateSchema().getNumOfFields() > inputSchema.getNumOfFields();
+        if (orderAttr != null && groupFields.contains(orderAttr) && !fits && wider) {
+            ArrayList<String> inputSortFields = new ArrayList<>();
+            for (String field : sortFields) if (groupFields.contains(field)) inputSortFields.add(field);
+            for (String field : groupFields) if (!inputSortFields.contains(field)) inputSortFields.add(field);
+            for (int i = 0; i < inputSortFields.size(); i++) {
+                /* the fields of a single table are not prefixed by its name */
+                String field = inputSortFields.get(i);
+                if (!inputSchema.fieldNameExists(field)) inputSortFields.set(i, field.split("\\.")[1]);
+            }
+            root = new Sort(root, createTempRelation(name + "Sorted", inputSchema), inputSortFields, pool, mainMemory);
+            root = new SortAggregate(root, aggregates);
+        } else {
+            root = new HashAggregate(root, aggregates, frames, inputTuples, pool, mainMemory, schemaManager);
+            if (sortFields != null) {
+                root = new Sort(root, schemaManager.getRelation(name + "Aggregate"), sortFields, pool, mainMemory);
+            }
+        }
+        return new Output(root);
+    }
+
+    /*
+    DISTINCT on the aggregate results, renamed field0, field1, ... first:
+    an attribute such as count(*) would be taken for an aggregate again
+    */
+    private Operator distinctResults(Operator root, Schema resultSchema, String name, long inputTuples, int frames,
+                                     ArrayList<String> attributes, String orderAttr) {
+        ArrayList<String> fieldNames = new ArrayList<>();
+        ArrayList<FieldType> fieldTypes = new ArrayList<>();
+        for (int i = 0; i < attributes.size(); i++) {
+            fieldNames.add("field" + i);
+            fieldTypes.add(resultSchema.getFieldType(i));
+        }
+        Relation renamed = createTempRelation(name + "Result", new Schema(fieldNames, fieldTypes));
+        root = new Project(root, renamed, getOffsets(resultSchema, attributes));
+        String order = orderAttr == null ? null : fieldNames.get(attributes.indexOf(orderAttr));
+        return distinct(root, renamed.getSchema(), name + "Result", inputTuples, frames, fieldNames, order);
+    }
+
+    /*
+    the tuples of one table, from the scan or index lookup given, with the
+    conditions on that table only, projected on its used fields
+    */
+    private Operator scan(int table, Operator source, ArrayList<String> tables, Relation[] relations,
+                          Schema[] schemas, ArrayList<ExpressionTreeNode> conditions,
+                          ArrayList<Set<Integer>> conditionTables, boolean[] placed) {
+        ArrayList<ExpressionTreeNode> selections = new ArrayList<>();
+        for (int j = 0; j < conditions.size(); j++) {
+            Set<Integer> referred = conditionTables.get(j);
+            if (referred.size() == 1 && referred.contains(table)) {
+                selections.add(conditions.get(j));
+                placed[j] = true;
+            }
+        }
+        Operator scan = source;
+        Schema schema = relations[table].getSchema();
+        if (!selections.isEmpty()) scan = new Filter(scan, PredicateCompiler.compile(mergeNodes(selections), schema));
+        if (schemas[table].getNumOfFields() == schema.getNumOfFields()) return scan;
+        Relation projected = createTempRelation(tables.get(table) + "Project", schemas[table]);
+        return new Project(scan, projected, getOffsets(schema, schemas[table].getFieldNames()));
+    }
+
+    /* the offset of a table.attr field in the outer tuples, the fields of a single table not prefixed */
+    private static int getOuterOffset(Schema outerSchema, String field) {
+        if (!outerSchema.fieldNameExists(field)) field = field.split("\\.")[1];
+        return outerSchema.getFieldOffset(field);
+    }
+
+    /* the fields of the table (attr names) used as table.attr, at least one */
+    private static Schema getUsedSchema(Schema schema, String table, Set<String> usedFields) {
+        ArrayList<String> fieldNames = new ArrayList<>();
+        ArrayList<FieldType> fieldTypes = new ArrayList<>();
+        for (int i = 0; i < schema.getNumOfFields(); i++) {
+            if (!usedFields.contains(table + "." + schema.getFieldName(i))) continue;
+            fieldNames.add(schema.getFieldName(i));
+            fieldTypes.add(schema.getFieldType(i));
+        }
+        /* the table still counts for the number of rows */
+        if (fieldNames.isEmpty()) {
+            fieldNames.add(schema.getFieldName(0));
+            fieldTypes.add(schema.getFieldType(0));
+        }
+        return new Schema(fieldNames, fieldTypes);
+    }
+
+    /*
+    left-deep join order with the least estimated disk I/O, and the way to
+    join each inner table
+    a nested-loop join reads its inner table once if it fits in one chunk,
+    otherwise once per run, and its outer input once per chunk
+    a hash join with the inner table in memory reads both once; partitioned,
+    it reads both on each run, and writes the spilled buckets (used fields
+    only) on its first run then reads them back on each run
+    an index join reads, on each run, for each outer tuple the index pages
+    of a lookup and a block for each tuple with the key, and only wins when
+    strictly cheaper
+    a hash join expected to partition an inner table no larger than its outer
+    input gets a Bloom filter on the inner keys, the outer tuples it rules
+    out not written; how many is not known, the estimate still writes them all
+    a table reads the blocks an index finds for its own conditions, if any,
+    and is estimated to fill them; the outer input of a join is estimated
+    from the number of tuples, an equality keeping the larger side and a
+    cross product multiplying them
+    ties go to the hash join, then to the order with fewer cross products,
+    then to the FROM order
+    */
+    private JoinPlan joinOrder(Relation[] relations, Schema[] schemas, ArrayList<Set<Integer>> conditionTables,
+                               int[][] equiTables, int[][] scanBlocks, Index[][] equiIndexes) {
+        int numTables = relations.length;
+        long[] blocksRead = new long[numTables];
+        long[] tuplesRead = new long[numTables];
+        for (int t = 0; t < numTables; t++) {
+            blocksRead[t] = relations[t].getNumOfBlocks();
+            tuplesRead[t] = relations[t].getNumOfTuples();
+            if (scanBlocks[t] == null) continue;
+            blocksRead[t] = scanBlocks[t].length;
+            tuplesRead[t] = Math.min(tuplesRead[t], (long) scanBlocks[t].length
+                    * relations[t].getSchema().getTuplesPerBlock());
+        }
+        JoinPlan bestPlan = null;
+        long bestCost = Long.MAX_VALUE;
+        int bestCrossProducts = Integer.MAX_VALUE;
+        for (int[] order : getAllOrders(relations.length)) {
+            JoinPlan plan = new JoinPlan();
+            plan.order = order;
+            plan.frames = allocateFrames(order, relations, schemas);
+            plan.hash = new boolean[order.length];
+            plan.index = new int[order.length];
+            Arrays.fill(plan.index, -1);
+            plan.bloom = new boolean[order.length];
+
+            long once = blocksRead[order[0]];  // I/O of the first run of the joins so far
+            long reopen = once;  // I/O of every later run
+            long numTuples = tuplesRead[order[0]];
+            int numFields = schemas[order[0]].getNumOfFields();
+            int crossProducts = 0;
+            Set<Integer> joined = new HashSet<>();
+            joined.add(order[0]);
+            for (int i = 1; i < order.length; i++) {
+                int table = order[i];
+                long blocks = blocksRead[table];
+                int neededFrames = getNeededFrames(relations[table], schemas[table]);
+                int frames = plan.frames[i];
+                long chunks = (neededFrames + frames - 1) / frames;
+
+                long joinOnce = blocks + once + (chunks - 1) * reopen;
+                long joinReopen = (chunks == 1 ? 0 : blocks) + chunks * reopen;
+                boolean equi = false;
+                int indexed = -1;  // the equality with the cheapest index lookup
+                double probeCost = 0;
+                for (int j = 0; j < equiTables.length; j++) {
+                    int[] equiTable = equiTables[j];
+                    if (equiTable == null) continue;
+                    int side = equiTable[0] == table ? 0 : 1;
+                    if (equiTable[side] != table || !joined.contains(equiTable[1 - side])) continue;
+                    equi = true;
+                    Index index = equiIndexes[j][side];
+                    if (index == null) continue;
+                    double cost = index.getProbeCost() + index.getEntriesPerKey();
+                    if (indexed < 0 || cost < probeCost) {
+                        indexed = j;
+                        probeCost = cost;
+                    }
+                }
+                if (equi) {
+                    long hashOnce = blocks + once;
+                    long hashReopen = reopen;
+                    if (chunks > 1) {
+                        int tuplesPerBlock = Math.max(1, Config.FIELDS_PER_BLOCK / numFields);
+                        long outerBlocks = (numTuples + tuplesPerBlock - 1) / tuplesPerBlock;
+                        int numBuckets = HashJoin.getNumOfBuckets(neededFrames, frames);
+                        int numSpilled = HashJoin.getNumOfSpilled(neededFrames, frames, numBuckets);
+                        double spilledFraction = (double) numSpilled / numBuckets;
+                        long bucketChunks = (long) Math.ceil((double) neededFrames / numBuckets / frames);
+                        long write = Math.round(spilledFraction * (neededFrames + outerBlocks));
+                        long read = Math.round(spilledFraction * (neededFrames + outerBlocks * bucketChunks));
+                        hashOnce += write + read;
+                        hashReopen = blocks + reopen + read;
+                    }
+                    if (hashOnce < joinOnce || hashOnce == joinOnce && hashReopen <= joinReopen) {
+                        plan.hash[i] = true;
+                        joinOnce = hashOnce;
+                        joinReopen = hashReopen;
+                    }
+                }
+                if (indexed >= 0) {
+                    long probes = Math.round(numTuples * probeCost);
+                    if (once + probes < joinOnce) {
+                        plan.hash[i] = false;
+                        plan.index[i] = indexed;
+                        joinOnce = once + probes;
+                        joinReopen = reopen + probes;
+                    }
+                }
+                once = joinOnce;
+                reopen = joinReopen;
+
+                long tableTuples = tuplesRead[table];
+                plan.bloom[i] = plan.hash[i] && chunks > 1 && tableTuples <= numTuples;
+                numTuples = equi ? Math.max(numTuples, tableTuples) : numTuples * tableTuples;
+                numFields += schemas[table].getNumOfFields();
+
+                boolean connected = false;
+                for (Set<Integer> referred : conditionTables) {
+                    if (referred.contains(table) && referred.size() > 1) {
+                        for (int other : referred) if (joined.contains(other)) connected = true;
+                    }
+                }
+                if (!connected) crossProducts++;
+                joined.add(table);
+            }
+
+            plan.numTuples = numTuples;
+            if (once < bestCost || once == bestCost && crossProducts < bestCrossProducts) {
+                bestPlan = plan;
+                bestCost = once;
+                bestCrossProducts = crossProducts;
+            }
+        }
+        return bestPlan;
+    }
+
+    /*
+    frames of the join of each inner table (index 0 unused): the smallest
+    needs are met first, each join gets at least one frame
+    two frames are left to the scan of the first table and the writes of a sort,
+    and the reserved frames to the aggregation
+    */
+    private int[] allocateFrames(int[] order, Relation[] relations, Schema[] schemas) {
+        int numJoins = order.length - 1;
+        int[] frames = new int[order.length];
+        Integer[] bySize = new Integer[numJoins];
+        for (int i = 0; i < numJoins; i++) bySize[i] = i + 1;
+        Arrays.sort(bySize, Comparator.comparingInt(i -> getNeededFrames(relations[order[i]], schemas[order[i]])));
+        int remain = mainMemory.getMemorySize() - 2 - reservedFrames;
+        for (int k = 0; k < numJoins; k++) {
+            int i = bySize[k];
+            int share = Math.max(1, remain / (numJoins - k));
+            frames[i] = Math.min(getNeededFrames(relations[order[i]], schemas[order[i]]), share);
+            remain -= frames[i];
+        }
+        return frames;
+    }
+
+    /* frames holding all tuples of the relation packed with the used fields only */
+    private static int getNeededFrames(Relation relation, Schema schema) {
+        int tuplesPerBlock = schema.getTuplesPerBlock();
+        int numTuples = relation.getNumOfTuples();
+        return Math.max(1, (numTuples + tuplesPerBlock - 1) / tuplesPerBlock);
+    }
+
+    private static List<int[]> getAllOrders(int numTables) {
+        List<int[]> result = new ArrayList<>();
+        permute(result, 0, new int[numTables], new boolean[numTables]);
+        return result;
+    }
+
+    private static void permute(List<int[]> result, int start, int[] arr, boolean[] used) {
+        if (start == used.length) {
+            result.add(arr.clone());
+            return;
+        }
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) continue;
+            used[i] = true;
+            arr[start] = i;
+            permute(result, start + 1, arr, used);
+            used[i] = false;
+        }
+    }
+
+    /*
+    the two tables of a condition table.attr = table.attr on INT fields of
+    different tables, null for any other condition
+    */
+    private static int[] getEquiTables(ExpressionTreeNode node, ArrayList<String> tables, Relation[] relations) {
+        if (!node.getValue().equals("=")) return null;
+        int left = getIntFieldTable(node.getLeft(), tables, relations);
+        int right = getIntFieldTable(node.getRight(), tables, relations);
+        if (left < 0 || right < 0 || left == right) return null;
+        return new int[]{left, right};
+    }
+
+    /* the table of an operand table.attr naming an INT field, -1 otherwise */
+    private static int getIntFieldTable(ExpressionTreeNode node, ArrayList<String> tables, Relation[] relations) {
+        if (node == null || node.getLeft() != null || node.getRight() != null) return -1;
+        String[] parts = node.getValue().split("\\.");
+        if (parts.length != 2) return -1;
+        int table = tables.indexOf(parts[0]);
+        if (table < 0) return -1;
+        Schema schema = relations[table].getSchema();
+        if (!schema.fieldNameExists(parts[1]) || schema.getFieldType(parts[1]) != FieldType.INT) return -1;
+        return table;
+    }
+
+    /* recursive retrieve the tables of the FROM list whose table.attr appear in the condition */
+    private static void getTables(ExpressionTreeNode node, ArrayList<String> tables, Set<Integer> referred) {
+        if (node == null) return;
+        String value = node.getValue();
+        if (value.contains(".")) {
+            int table = tables.indexOf(value.split("\\.")[0]);
+            if (table >= 0) referred.add(table);
+        }
+        getTables(node.getLeft(), tables, referred);
+        getTables(node.getRight(), tables, referred);
+    }
+
+    /* the table.attr operands of the condition */
+    private static void getFields(ExpressionTreeNode node, Set<String> fields) {
+        if (node == null) return;
+        if (node.getValue().contains(".")) fields.add(node.getValue());
+        getFields(node.getLeft(), fields);
+        getFields(node.getRight(), fields);
+    }
+
+    /* AND of the conditions, null if none */
+    private static ExpressionTreeNode mergeNodes(ArrayList<ExpressionTreeNode> nodeList) {
+        if (nodeList.isEmpty()) return null;
+        ExpressionTreeNode root = nodeList.get(0);
+        for (int i = 1; i < nodeList.size(); i++) root = new ExpressionTreeNode("&", root, nodeList.get(i));
+        return root;
+    }
+
+    private static int[] getOffsets(Schema schema, ArrayList<String> fieldNames) {
+        int[] offsets = new int[fieldNames.size()];
+        for (int i = 0; i < offsets.length; i++) offsets[i] = schema.getFieldOffset(fieldNames.get(i));
+        return offsets;
+    }
+
+    private Relation createProjectedRelation(String joinedName, Schema joinedSchema, ArrayList<String> fieldNames) {
+        ArrayList<FieldType> fieldTypes = new ArrayList<>();
+        for (String field : fieldNames) fieldTypes.add(joinedSchema.getFieldType(field));
+        return createTempRelation(joinedName + "Project", new Schema(fieldNames, fieldTypes));
+    }
+
+    private Relation createTempRelation(String name, Schema schema) {
+        if (schemaManager.relationExists(name)) schemaManager.deleteRelation(name);
+        tempRelations.add(name);
+        return schemaManager.createRelation(name, schema);
+    }
+}
@@ -0,0 +1,36 @@
+package sql608.operator;
+
+import storageManager.Relation;
+import storageManager.Tuple;
+
+/* copy the selected fields of each child tuple into a tuple of the projected relation */
+public class Project implements Operator {
+    private Operator child;
+    private Relation relation;
+    private int[] offsets;  // field offset in the child tuple of each projected field
+
+    public Project(Operator child, Relation relation, int[] offsets) {
+        this.child = child;
+        this.relation = relation;
+        this.offsets = offsets;
+    }
+
+    @Override
+    public void open() {
+        child.open();
+    }
+
+    @Override
+    public Tuple next() {
+        Tuple tuple = child.next();
+        if (tuple == null) return null;
+        Tuple projected = relation.createTuple();
+        for (int i = 0; i < offsets.length; i++) projected.copyField(i, tuple, offsets[i]);
+        return projected;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+    }
+}
@@ -0,0 +1,70 @@
+package sql608.operator;
+
+import sql608.algorithm.OnePass;
+import sql608.algorithm.MultiPass;
+import sql608.buffer.BufferPool;
+import sql608.helper.Write;
+import storageManager.MainMemory;
+import storageManager.Relation;
+import storageManager.Tuple;
+
+import java.util.ArrayList;
+
+/*
+blocking sort: the child is drained into the relation (an empty relation
+with the schema of the child tuples), which is sorted on disk with the one
+pass or the multi-pass merge sort and then scanned
+the sort takes the whole main memory, so it must not run under an operator
+holding frames; restarting a sorted stream only scans the relation again
+*/
+public class Sort implements Operator {
+    private Operator child;
+    private Relation relation;
+    private ArrayList<String> sortFields;
+    private BufferPool pool;
+    private MainMemory mainMemory;
+    private boolean sorted;
+    private TableScan scan;
+
+    public Sort(Operator child, Relation relation, ArrayList<String> sortFields,
+                BufferPool pool, MainMemory mainMemory) {
+        this.child = child;
+        this.relation = relation;
+        this.sortFields = sortFields;
+        this.pool = pool;
+        this.mainMemory = mainMemory;
+    }
+
+    @Override
+    public void open() {
+        if (!sorted) {
+            child.open();
+            Tuple tuple;
+            while ((tuple = child.next()) != null) Write.tuple(tuple, relation, pool, null, mainMemory);
+            child.close();
+
+            /* sorting uses the whole main memory */
+            pool.evictAll();
+            int numRelationBlocks = relation.getNumOfBlocks();
+            if (numRelationBlocks > mainMemory.getMemorySize()) {
+                MultiPass.sort(relation, sortFields, mainMemory);
+            } else if (numRelationBlocks > 0) {
+                OnePass.sort(relation, sortFields, mainMemory);
+            }
+            sorted = true;
+        }
+        scan = new TableScan(pool, relation, mainMemory);
+        scan.open();
+    }
+
+    @Override
+    public Tuple next() {
+        return scan.next();
+    }
+
+    @Override
+    public void close() {
+        if (scan != null) scan.close();
+        scan = null;
+    }
+}
@@ -0,0 +1,64 @@
+package sql608.operator;
+
+import sql608.Heap.SortKey;
+import storageManager.Tuple;
+
+/*
+aggregation of a child sorted on the group fields: the tuples of a group
+come one after the other, so a single group is kept and returned when the
+next one starts; no memory beyond one state, the results come in the order
+of the child
+without group fields there is a single group, returned even for no tuple
+*/
+public class SortAggregate implements Operator {
+    private Operator child;
+    private Aggregates aggregates;
+    private SortKey key;  // of the current group
+    private Tuple state;
+    private boolean empty;  // no tuple was read
+
+    public SortAggregate(Operator child, Aggregates aggregates) {
+        this.child = child;
+        this.aggregates = aggregates;
+    }
+
+    @Override
+    public void open() {
+        child.open();
+        key = null;
+        state = null;
+        empty = true;
+    }
+
+    @Override
+    public Tuple next() {
+        Tuple tuple;
+        while ((tuple = child.next()) != null) {
+            empty = false;
+            SortKey tupleKey = aggregates.inputKey(tuple);
+            if (tupleKey.equals(key)) {
+                aggregates.add(state, tuple);
+                continue;
+            }
+            Tuple done = state;
+            key = tupleKey;
+            state = aggregates.newState(tuple);
+            if (done != null) return aggregates.result(done);
+        }
+        if (state != null) {
+            Tuple done = state;
+            state = null;
+            return aggregates.result(done);
+        }
+        if (empty && !aggregates.hasGroupFields()) {
+            empty = false;
+            return aggregates.emptyResult();
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+    }
+}
@@ -0,0 +1,59 @@
+package sql608.operator;
+
+import sql608.buffer.BufferPool;
+import sql608.buffer.SequentialScan;
+import storageManager.MainMemory;
+import storageManager.Relation;
+import storageManager.Tuple;
+
+import java.util.ArrayList;
+
+/* the tuples of a relation read through the buffer pool, holes skipped; only the given blocks if any */
+public class TableScan implements Operator {
+    private BufferPool pool;
+    private Relation relation;
+    private MainMemory mainMemory;
+    private int[] blocks;
+    private SequentialScan scan;
+    private ArrayList<Tuple> tuples;
+    private int tupleIndex;
+
+    public TableScan(BufferPool pool, Relation relation, MainMemory mainMemory) {
+        this.pool = pool;
+        this.relation = relation;
+        this.mainMemory = mainMemory;
+    }
+
+    /* the sorted blocks to read, e.g. from an index lookup */
+    public TableScan(BufferPool pool, Relation relation, MainMemory mainMemory, int[] blocks) {
+        this(pool, relation, mainMemory);
+        this.blocks = blocks;
+    }
+
+    @Override
+    public void open() {
+        scan = new SequentialScan(pool, relation, mainMemory, blocks);
+        tuples = null;
+        tupleIndex = 0;
+    }
+
+    @Override
+    public Tuple next() {
+        while (true) {
+            if (tuples == null || tupleIndex >= tuples.size()) {
+                tuples = scan.nextBlock();
+                tupleIndex = 0;
+                if (tuples == null) return null;
+                continue;
+            }
+            Tuple tuple = tuples.get(tupleIndex++);
+            if (!tuple.isNull()) return tuple;
+        }
+    }
+
+    @Override
+    public void close() {
+        scan = null;
+        tuples = null;
+    }
+}
@@ -0,0 +1,86 @@
+package sql608.operator;
+
+import sql608.buffer.BufferPool;
+import storageManager.Block;
+import storageManager.MainMemory;
+import storageManager.Tuple;
+
+import java.util.ArrayList;
+
+/*
+tuples kept in main memory by an operator, e.g. the inner side of a join
+the frames (at most maxFrames) are allocated from the buffer pool on demand
+and stay pinned until released
+*/
+public class TupleBuffer {
+    private BufferPool pool;
+    private MainMemory mainMemory;
+    private int maxFrames;
+    private ArrayList<Integer> frames = new ArrayList<>();
+    private ArrayList<Tuple> tuples = new ArrayList<>();
+    private Tuple pending;  // read by the last load but not buffered, the input is not over
+
+    public TupleBuffer(BufferPool pool, MainMemory mainMemory, int maxFrames) {
+        this.pool = pool;
+        this.mainMemory = mainMemory;
+        this.maxFrames = maxFrames;
+    }
+
+    /*
+    replace the buffered tuples by the next tuples of the input, as many as fit
+    return true if the input is over, false if tuples are left for another load
+    a load goes on where the last one stopped; release before reading an input anew
+    */
+    public boolean load(Operator input) {
+        tuples.clear();
+        int numFrames = 0;  // frames filled by this load
+        Block block = null;
+        boolean inputDone = false;
+        while (true) {
+            if (block == null || block.isFull()) {
+                if (numFrames == maxFrames || numFrames == frames.size() && pool.getNumOfUnpinned() == 0) {
+                    /* frames full: the input is over only if no tuple is left */
+                    if (pending == null) pending = input.next();
+                    inputDone = pending == null;
+                    break;
+                }
+                if (numFrames == frames.size()) frames.add(pool.allocate());
+                block = mainMemory.getBlock(frames.get(numFrames++));
+                block.clear();
+            }
+            Tuple tuple = pending != null ? pending : input.next();
+            pending = null;
+            if (tuple == null) {
+                inputDone = true;
+                break;
+            }
+            block.appendTuple(tuple);
+        }
+        /* no frame at all: give up on the input */
+        if (numFrames == 0) {
+            System.err.print("TupleBuffer ERROR: no free frame" + "\n");
+            return true;
+        }
+        for (int i = 0; i < numFrames; i++) tuples.addAll(mainMemory.getBlock(frames.get(i)).getTuples());
+        return inputDone;
+    }
+
+    /* the tuples of the last load; they stay valid after the frames are reused */
+    public ArrayList<Tuple> getTuples() {
+        return tuples;
+    }
+
+    /* the tuple read past the buffered ones, null if none; the next load goes on after it */
+    public Tuple takePending() {
+        Tuple tuple = pending;
+        pending = null;
+        return tuple;
+    }
+
+    public void release() {
+        for (int frame : frames) pool.release(frame);
+        frames.clear();
+        tuples.clear();
+        pending = null;
+    }
+}
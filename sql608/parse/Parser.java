@@ -12,6 +12,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Parser {
+    private static final Pattern AGGREGATE = Pattern.compile("(count|sum|min|max|avg)\\(.+\\)");
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "^create\\s+index\\s+(\\w+)\\s+on\\s+(\\w+)\\s*\\(\\s*(\\w+)\\s*\\)(\\s+using\\s+(btree|hash))?\\s*;?$");
 
     // not converting value inside " "
     private String myLowercase(String sql) {
@@ -67,6 +70,19 @@ public class Parser {
         return new TableContainer<>(name, fieldNameList, fieldTypeList);
     }
 
+    /* CREATE INDEX idx ON table (field) [USING BTREE|HASH], return the table name, the field and the index name */
+    public TableContainer<String, String, String> parseCreateIndex(String sql) {
+        Matcher matcher = CREATE_INDEX.matcher(sql.trim().toLowerCase());
+        if (!matcher.find()) { return null; }
+        return new TableContainer<>(matcher.group(2), matcher.group(3), matcher.group(1));
+    }
+
+    /* CREATE INDEX ... USING HASH, a B+tree otherwise */
+    public boolean isHashIndex(String sql) {
+        Matcher matcher = CREATE_INDEX.matcher(sql.trim().toLowerCase());
+        return matcher.find() && "hash".equals(matcher.group(5));
+    }
+
     public String parseDrop(String sql) {
         sql = sql.trim().toLowerCase();
         // DROP TABLE course
@@ -78,8 +94,21 @@ public class Parser {
         return tableName;
     }
 
-    public TableContainer<String, ArrayList<String>, ArrayList<Field>> parseInsertOneTuple(String sql, Relation relation) {
-        // INSERT INTO course (sid, homework, project, exam, grade) VALUES (1, 99, 100, 100, "A")
+    public String parseVacuum(String sql) {
+        sql = sql.trim().toLowerCase();
+        // VACUUM course
+        String[] splitResult = sql.split("[\\s]+");
+        if (splitResult.length < 2) return null;
+        String tableName = splitResult[1];
+        int len = tableName.length();
+        if (tableName.charAt(len - 1) == ';') {
+            return tableName.substring(0, len - 1);
+        }
+        return tableName;
+    }
+
+    public TableContainer<String, ArrayList<String>, ArrayList<ArrayList<Field>>> parseInsertTuples(String sql, Relation relation) {
+        // INSERT INTO course (sid, homework, project, exam, grade) VALUES (1, 99, 100, 100, "A"), (2, ...)
         sql = myLowercase(sql.trim());
         if (!sql.contains("value")) { return null; }
         String[] splitResult = sql.replaceAll("\\\"", "").split("[\\s]+", 4);
@@ -99,31 +128,58 @@ public class Parser {
             String name = str.trim();
             fieldNames.add(name);
         }
-        // condition match
-        // VALUES (1, 99, 100, 100, "A")
-        matcher.find();
+        // condition match, one () for each row
+        // VALUES (1, 99, 100, 100, "A"), (2, 100, 100, 98, "C")
+        ArrayList<ArrayList<Field>> rows = new ArrayList<>();
+        while (matcher.find()) {
+            ArrayList<Field> values = new ArrayList<>();
+            String[] valuesString = matcher.group(1).split(",");
+            if (valuesString.length != fieldNames.size()) { return null; }
+            for (int i = 0; i < valuesString.length; i++) {
+                values.add(toField(valuesString[i].trim(),
+                        relation.getSchema().getFieldType(fieldNames.get(i))));
+            }
+            rows.add(values);
+        }
+        if (rows.isEmpty()) { return null; }
+        return new TableContainer<>(tableName, fieldNames, rows);
+    }
+
+    /* LOAD DATA FROM 'file.csv' INTO table, return file name and table name */
+    public ValueContainer<String, String> parseLoad(String sql) {
+        Pattern pattern = Pattern.compile("^load\\s+data\\s+from\\s+['\"]?(.+?)['\"]?\\s+into\\s+(\\w+)\\s*;?$",
+                Pattern.CASE_INSENSITIVE);
+        Matcher matcher = pattern.matcher(sql.trim());
+        if (!matcher.find()) { return null; }
+        return new ValueContainer<>(matcher.group(1), matcher.group(2).toLowerCase());
+    }
+
+    /* one csv line holds the values of all fields, in the order of the schema */
+    public ArrayList<Field> parseCsvLine(String line, Relation relation) {
+        String[] valuesString = line.split(",", -1);
+        if (valuesString.length != relation.getSchema().getNumOfFields()) { return null; }
         ArrayList<Field> values = new ArrayList<>();
-        String[] valuesString = matcher.group(1).split(",");
-        int i = 0;
-        for (String str : valuesString) {
-            Field field = new Field();
-            str = str.trim();
-            if (relation.getSchema().getFieldType(fieldNames.get(i)) == FieldType.INT)
-            {
-                field.type = FieldType.INT;
-                if (str.equals("null")) {
-                    field.integer = Integer.MIN_VALUE;
-                } else {
-                    field.integer = Integer.valueOf(str);
-                }
+        for (int i = 0; i < valuesString.length; i++) {
+            String str = valuesString[i].trim().replaceAll("\\\"", "");
+            values.add(toField(str, relation.getSchema().getFieldType(i)));
+        }
+        return values;
+    }
+
+    private Field toField(String str, FieldType type) {
+        Field field = new Field();
+        if (type == FieldType.INT) {
+            field.type = FieldType.INT;
+            if (str.equalsIgnoreCase("null")) {
+                field.integer = Integer.MIN_VALUE;
             } else {
-                field.type = FieldType.STR20;
-                field.str = str;
+                field.integer = Integer.valueOf(str);
             }
-            values.add(field);
-            i++;
+        } else {
+            field.type = FieldType.STR20;
+            field.str = str;
         }
-        return new TableContainer<>(tableName, fieldNames, values);
+        return field;
     }
 
     public ValueContainer<String, ParserContainer> parseInsertWithSelect(String sql) {
@@ -142,9 +198,21 @@ public class Parser {
         sql = sql.replaceAll("[\\s]+", " ").replaceAll("\\\"", "");
         sql = sql.replaceAll("\\[", "(").replaceAll("]", ")");
 
+        /* take GROUP BY out, it comes before ORDER BY */
+        ArrayList<String> groupAttributes = new ArrayList<>();
+        int groupStart = sql.indexOf(" group by ");
+        if (groupStart >= 0) {
+            int groupEnd = sql.indexOf(" order by ", groupStart);
+            if (groupEnd < 0) groupEnd = sql.length();
+            String groupBy = sql.substring(groupStart + " group by ".length(), groupEnd).trim();
+            groupAttributes.addAll(Arrays.asList(groupBy.split("[\\s]*,[\\s]*")));
+            sql = sql.substring(0, groupStart) + sql.substring(groupEnd);
+        }
+
         String[] splitResult = sql.split("select|from|where|order by");
-        /* In ATTR part: replace comma by whitespace , and split by whitespace */
-        String[] attributes = splitResult[1].trim().replaceAll("[\\s]*,[\\s]*", " ").split("\\s");
+        /* In ATTR part: replace comma by whitespace , and split by whitespace; COUNT ( * ) as count(*) */
+        String[] attributes = splitResult[1].trim().replaceAll("[\\s]*\\([\\s]*", "(")
+                .replaceAll("[\\s]*\\)", ")").replaceAll("[\\s]*,[\\s]*", " ").split("\\s");
 
         /* get rid of DISTINCT by move right one step */
         boolean isDistinct = false;
@@ -168,11 +236,14 @@ public class Parser {
         }
 
         /* setTable or setTables */
-        if (tablesName.length == 1) {
-            return parseSelectSingleTable(attributes, isDistinct, tablesName[0], condition);
-        } else {
-            return parseSelectMulTables(attributes, isDistinct, tablesName, condition);
-        }
+        ParserContainer parserContainer = (tablesName.length == 1)
+                ? parseSelectSingleTable(attributes, isDistinct, tablesName[0], condition)
+                : parseSelectMulTables(attributes, isDistinct, tablesName, condition);
+        parserContainer.setGroupAttributes(groupAttributes);
+        boolean isGroup = groupStart >= 0;
+        for (String attribute : attributes) if (AGGREGATE.matcher(attribute).matches()) isGroup = true;
+        parserContainer.setGroup(isGroup);
+        return parserContainer;
     }
 
     private ParserContainer parseSelectBase(String[] attributes, boolean isDistinct, String condition) {
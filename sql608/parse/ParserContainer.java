@@ -12,10 +12,12 @@ public class ParserContainer {
     private boolean from;
     private boolean where;
     private boolean order;
+    private boolean group;  // GROUP BY or aggregates
     // parse to formal strings
     private String conditions;
     private String orderAttribute;
     private ArrayList<String> attributes;
+    private ArrayList<String> groupAttributes = new ArrayList<>();
 
     private String table;  // for single table case
     private ArrayList<String> tables;  // for multiple table case
@@ -46,6 +48,22 @@ public class ParserContainer {
         this.order = order;
     }
 
+    public boolean isGroup() {
+        return group;
+    }
+
+    public void setGroup(boolean group) {
+        this.group = group;
+    }
+
+    public ArrayList<String> getGroupAttributes() {
+        return groupAttributes;
+    }
+
+    public void setGroupAttributes(ArrayList<String> groupAttributes) {
+        this.groupAttributes = groupAttributes;
+    }
+
     public String getConditions() {
         return conditions;
     }
@@ -2,7 +2,6 @@ package storageManager;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.ListIterator;
 
 /* A disk or memory block contains a number of records/twoTuples that
  * belong to the same relation. 
@@ -23,43 +22,170 @@ import java.util.ListIterator;
  *        and to get or modify the twoTuples in the memory block.
  *        First be sure to get a pointer to a memory block 
  *          from the Memory class.
+ *
+ * Storage: the fields are packed by slot instead of being kept as
+ *   Tuple and Field objects. The field at offset j of the tuple in 
+ *   slot i lives at field slot i*num_fields+j:
+ *     INT   -> ints[field slot]
+ *     STR20 -> lengths[field slot] bytes (UTF-8) of 
+ *              chars[field slot*STR_WIDTH ...], length -1 for null
+ *   A Tuple is a view (block, slot) over this storage.
+ * Copy-on-write: moving a block between the disk and the memory, and
+ *   getTuple()/getTuples(), hand out blocks that share the arrays
+ *   instead of copying them. Both sides are marked shared, and the 
+ *   first one to be modified takes a private copy of the arrays.
  */
 
 public class Block implements Serializable {
-	  private ArrayList<Tuple> tuples;
+	  // width in bytes of a STR20 field slot
+	  protected final static int STR_WIDTH=20;
+
+	  // the twoSchema of the twoTuples; unset while the block is empty
+	  protected SchemaManager schema_manager;
+	  protected int schema_index=-1;
+	  protected int num_fields=0;
+	  protected int num_slots=0; // tuple slots in use, holes included
+	  protected boolean shared=false; // arrays may be seen by another block
+	  protected boolean[] valid; // false marks a hole
+	  protected int[] ints;
+	  protected short[] lengths;
+	  protected byte[] chars;
 	  
 	// for internal use only: you DO NOT need this constructor. 
 	//  Use the blocks in Memory or Relation directly
-	  protected Block() { tuples=new ArrayList<Tuple>(); }
+	  protected Block() { this(Config.FIELDS_PER_BLOCK); }
+
+	// for internal use: a block with room for 'capacity' fields
+	  protected Block(int capacity) {
+	    valid=new boolean[capacity];
+	    ints=new int[capacity];
+	    lengths=new short[capacity];
+	    chars=new byte[capacity*STR_WIDTH];
+	  }
 	
 	  protected Block(Block b) {
-		tuples=new ArrayList<Tuple>();
-	    for (int i=0;i<b.tuples.size();i++)
-	      tuples.add(new Tuple(b.tuples.get(i)));
+	    this(b.ints.length);
+	    copyFrom(b);
+	  }
+
+	// for internal use: a block with the content of b that shares its
+	//  arrays until either of them is modified
+	  private Block(Block b, boolean share) {
+	    schema_manager=b.schema_manager;
+	    schema_index=b.schema_index;
+	    num_fields=b.num_fields;
+	    num_slots=b.num_slots;
+	    valid=b.valid;
+	    ints=b.ints;
+	    lengths=b.lengths;
+	    chars=b.chars;
+	    shared=share;
+	    b.shared=share;
+	  }
+
+	// for internal use: copy-on-write replacement of new Block(b)
+	  protected Block share() {
+	    return new Block(this,true);
+	  }
+
+	// for internal use: takes a private copy of the arrays if they are
+	//  shared; call it before every modification of the arrays
+	  protected void ensureOwned() {
+	    if (!shared) return;
+	    boolean[] v=valid;
+	    int[] n=ints;
+	    short[] l=lengths;
+	    byte[] c=chars;
+	    valid=new boolean[v.length];
+	    ints=new int[n.length];
+	    lengths=new short[l.length];
+	    chars=new byte[c.length];
+	    int used=num_slots*num_fields;
+	    System.arraycopy(v,0,valid,0,num_slots);
+	    System.arraycopy(n,0,ints,0,used);
+	    System.arraycopy(l,0,lengths,0,used);
+	    System.arraycopy(c,0,chars,0,used*STR_WIDTH);
+	    shared=false;
+	  }
+
+	// for internal use: true if the block is empty or its twoTuples
+	//  are of schema s
+	  protected boolean hasSchema(Schema s) {
+	    if (num_slots==0) return true;
+	    return schema_manager.schemas[schema_index].equals(s);
+	  }
+
+	// for internal use: makes this block an exact copy of b
+	  protected void copyFrom(Block b) {
+	    schema_manager=b.schema_manager;
+	    schema_index=b.schema_index;
+	    num_fields=b.num_fields;
+	    num_slots=b.num_slots;
+	    int used=num_slots*num_fields;
+	    System.arraycopy(b.valid,0,valid,0,num_slots);
+	    System.arraycopy(b.ints,0,ints,0,used);
+	    System.arraycopy(b.lengths,0,lengths,0,used);
+	    System.arraycopy(b.chars,0,chars,0,used*STR_WIDTH);
+	  }
+
+	// for internal use: binds an empty block to the twoSchema of t
+	  private void adoptSchema(Tuple t) {
+	    schema_manager=t.schema_manager;
+	    schema_index=t.schema_index;
+	    num_fields=t.block.num_fields;
+	  }
+
+	// for internal use: true if t can be stored in this block
+	  private boolean sameSchema(Tuple t) {
+	    if (t.schema_manager==schema_manager 
+	    		&& t.schema_index==schema_index) return true;
+	    if (t.schema_manager==null || schema_manager==null) return false;
+	    return schema_manager.schemas[schema_index].equals(
+	    		t.schema_manager.schemas[t.schema_index]);
+	  }
+
+	// for internal use: copies the fields of t into slot 'slot'
+	  private void writeSlot(int slot, Tuple t) {
+	    ensureOwned();
+	    valid[slot]=!t.isNull();
+	    if (num_fields==0) return;
+	    int from=t.slot*t.block.num_fields;
+	    int to=slot*num_fields;
+	    System.arraycopy(t.block.ints,from,ints,to,num_fields);
+	    System.arraycopy(t.block.lengths,from,lengths,to,num_fields);
+	    System.arraycopy(t.block.chars,from*STR_WIDTH,chars,to*STR_WIDTH,
+	    		num_fields*STR_WIDTH);
+	  }
+
+	// for internal use: number of twoTuples the block can hold
+	  private int getTuplesPerBlock() {
+	    return schema_manager.schemas[schema_index].getTuplesPerBlock();
 	  }
 	
 	  public boolean isFull()  {
-	    if (tuples.isEmpty()) return false;
-	    if (tuples.size()==tuples.get(0).getTuplesPerBlock()) 
+	    if (num_slots==0) return false;
+	    if (num_slots==getTuplesPerBlock()) 
 	    	return true;
 	    return false;
 	  }
 	
 	  public boolean isEmpty()  {
-	    return tuples.isEmpty();
+	    return num_slots==0;
 	  }
 	
 	//empty the block
 	  public void clear() {
-	    tuples.clear();
+	    num_slots=0;
+	    schema_manager=null;
+	    schema_index=-1;
+	    num_fields=0;
 	  }
 	  
 	// returns current number of twoTuples inside this block
 	  public int getNumTuples()  {
 	    int count=0;
-	    for (ListIterator<Tuple> it=tuples.listIterator();
-	        it.hasNext();) {
-	      if (!it.next().isNull()) count++;
+	    for (int i=0;i<num_slots;i++) {
+	      if (valid[i]) count++;
 	    }
 	    return count;
 	  }
@@ -67,82 +193,70 @@ public class Block implements Serializable {
 	// gets the tuple at tuple_index;
 	// returns empty Tuple if tuple_index out of bound
 	  public Tuple getTuple(int tuple_offset)  {
-	    if (!tuples.isEmpty() && tuple_offset>=
-	    		tuples.get(0).getTuplesPerBlock()) {
+	    if (num_slots>0 && tuple_offset>=getTuplesPerBlock()) {
 	      System.err.print("getTuple ERROR: tuple offet " 
 	    		  + tuple_offset + " out of bound of the block" + "\n");
 	      return new Tuple();
 	    }
-	    if (tuple_offset<0 || tuple_offset>=tuples.size()) {
+	    if (tuple_offset<0 || tuple_offset>=num_slots) {
 	      System.err.print("getTuple ERROR: tuple offet " 
 	    		  + tuple_offset + " out of bound" + "\n");
 	      return new Tuple();
 	    }
-	    return new Tuple(tuples.get(tuple_offset));
+	    return new Tuple(share(),tuple_offset);
 	  }
 	
 	// returns all the twoTuples inside this block
+	// The twoTuples are views on a copy-on-write snapshot of the block:
+	//  later changes to the block do not show through, and nothing is
+	//  copied unless one side is modified
 	  public ArrayList<Tuple> getTuples()  {
-      //return (ArrayList<Tuple>) DeepCopy.copy(twoTuples);
-      ArrayList<Tuple> tuples=new ArrayList<Tuple>(this.tuples.size());
-      ListIterator<Tuple> lit=this.tuples.listIterator();
-      while (lit.hasNext()) {
-        tuples.add(new Tuple(lit.next()));
-      }
+	    ArrayList<Tuple> tuples=new ArrayList<Tuple>(num_slots);
+	    Block snapshot=share();
+	    for (int i=0;i<num_slots;i++) {
+	      tuples.add(new Tuple(snapshot,i));
+	    }
 	    return tuples;
 	  }
 	
 	// sets new tuple value at tuple_index; 
 	  // returns false if tuple_index out of bound
 	  public boolean setTuple(int tuple_offset,  Tuple tuple) { 
-	    Schema s = tuple.getSchema();
-	    if (!tuples.isEmpty()) {
-	      if (tuple_offset>=tuples.get(0).getTuplesPerBlock()) {
+	    if (num_slots>0) {
+	      if (tuple_offset>=getTuplesPerBlock()) {
 	        System.err.print("setTuple ERROR: tuple offet " 
 	        		+ tuple_offset + " out of bound of the block" + "\n");
 	        return false;
 	      }
-	      for (int i=0;i<tuples.size();i++) {
-	        if (!s.equals(tuples.get(i).getSchema())) {
-	          System.err.print("setTuple ERROR: twoTuples' schemas " +
+	      if (!sameSchema(tuple)) {
+	        System.err.print("setTuple ERROR: twoTuples' schemas " +
 	          		"do not match" + "\n");
-	          return false;
-	        }
+	        return false;
 	      }
 	    }
-	    if (tuple_offset<0 || tuple_offset>=s.getTuplesPerBlock()) {
+	    if (tuple_offset<0 || tuple_offset>=tuple.getTuplesPerBlock()) {
 	      System.err.print("setTuple ERROR: tuple offset " 
 	    		  + tuple_offset + " out of bound" + "\n");
 	      return false;
 	    }
-	    if (tuple_offset >= tuples.size()) {
+	    if (num_slots==0) adoptSchema(tuple);
+	    ensureOwned();
+	    if (tuple_offset >= num_slots) {
 	      //If there is a gap before the offset, 
       	  // filled it with invalid twoTuples
-	      Tuple t=new Tuple(tuple.schema_manager,tuple.schema_index);
-	      t.invalidate();
-	      for (int i=tuples.size();i<tuple_offset;i++) {
-	        tuples.add(t);
+	      for (int i=num_slots;i<tuple_offset;i++) {
+	        valid[i]=false;
 	      }
-	      tuples.add(new Tuple(tuple));
-	    } else
-	      tuples.set(tuple_offset,new Tuple(tuple));
+	      num_slots=tuple_offset+1;
+	    }
+	    writeSlot(tuple_offset,tuple);
 	    return true;
 	  }
 	
 	  // remove all the twoTuples; sets new twoTuples for the block;
 	  // returns false if number of input twoTuples exceeds the space limit
 	  public boolean setTuples(ArrayList<Tuple> tuples) {
-	    if (tuples.size()>tuples.get(0).getTuplesPerBlock()) {
-	      System.err.print("setTuples ERROR: number of twoTuples " +
-	      		"exceed space limit of the block" + "\n");
-	      return false;
-	    }
-	    //this.twoTuples=(ArrayList<Tuple>) DeepCopy.copy(twoTuples);
-	    this.tuples.clear();
-	    ListIterator<Tuple> lit=tuples.listIterator();
-	    while (lit.hasNext())
-	      this.tuples.add(new Tuple(lit.next()));
-	    return true;
+	    return setTuples(tuples,0,tuples.size());
 	  }
 	  
 	  // remove all the twoTuples; sets new twoTuples for the block;
@@ -154,9 +268,11 @@ public class Block implements Serializable {
 	      		"exceed space limit of the block" + "\n");
 	      return false;
 	    }
-	    this.tuples.clear();
+	    clear();
 	    for (int i=start_index;i<end_index;i++) {
-	      this.tuples.add(new Tuple(tuples.get(i)));
+	      Tuple t=tuples.get(i);
+	      if (num_slots==0) adoptSchema(t);
+	      writeSlot(num_slots++,t);
 	    }
 	    return true;
 	  }
@@ -169,46 +285,46 @@ public class Block implements Serializable {
 	    		  			+ "\n");
 	      return false;
 	    }
-	    this.tuples.add(new Tuple(tuple));
+	    if (num_slots==0) {
+	      adoptSchema(tuple);
+	    } else if (tuple.block.num_fields!=num_fields) {
+	      System.err.print("appendTuple ERROR: twoTuples' schemas " +
+	      		"do not match" + "\n");
+	      return false;
+	    }
+	    writeSlot(num_slots++,tuple);
 	    return true;
 	  }
 	
 	// invalidates the tuple at the offset
 	  public boolean invalidateTuple(int tuple_offset) { 
-	    if (tuple_offset<0 || tuple_offset>=tuples.size()) {
+	    if (tuple_offset<0 || tuple_offset>=num_slots) {
 	      System.err.print("nullTuple ERROR: tuple offet " 
 	    		  			+ tuple_offset + " out of bound" + "\n");
 	      return false;
 	    }
-	    tuples.get(tuple_offset).invalidate();
+	    ensureOwned();
+	    valid[tuple_offset]=false;
 	    return true;
 	  }
 	
 	// empty all the twoTuples in the block
 	  public boolean invalidateTuples() { 
-	    for (int i=0;i<tuples.size();i++) {
-	      tuples.get(i).invalidate();
+	    ensureOwned();
+	    for (int i=0;i<num_slots;i++) {
+	      valid[i]=false;
 	    }
 	    return true;
 	  }
 	
 	  public String toString()  {
 	    String str="";
-	    if (tuples.isEmpty()) return str;
-	    ListIterator<Tuple> lit=tuples.listIterator();
-	    Tuple t=lit.next();
-	    if (t.isNull())
-	      str+="(hole)";
-	    else {
-	      str+=t.toString();
-	    }
-	    for (;lit.hasNext();) {
-	      t=lit.next();
-	      str+=("\n");
-	      if (t.isNull())
+	    for (int i=0;i<num_slots;i++) {
+	      if (i>0) str+=("\n");
+	      if (!valid[i])
 	        str+="(hole)";
 	      else
-	        str+=t.toString();
+	        str+=new Tuple(this,i).toString();
 	    }
 	    return str;
 	  }	
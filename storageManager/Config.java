@@ -16,5 +16,13 @@ public class Config {
     public static boolean SIMULATED_DISK_LATENCY_ON = true; 
   //Setting to true turns on the debug message of disk I/O incrementation
     public static boolean DISK_I_O_DEBUG = false; 
+  //Directory of the persistent MappedDisk; null keeps the in-memory Disk
+    public static String DISK_DIRECTORY = null;
+  //Compact a relation after DELETE once this fraction of its tuple slots
+  // is free; 0 turns the automatic compaction off
+    public static double AUTO_VACUUM_RATIO = 0;
+  //Replacement policy of the buffer pool over the main memory:
+  // "clock" or "lru"
+    public static String BUFFER_POLICY = "clock";
 
 }
@@ -12,6 +12,8 @@ import java.util.ArrayList;
  *
  * The number of disk I/O is calculated by the number of 
  *   blocks read or written.
+ * Tracks are allocated on demand, one for each twoSchema index handed
+ *   out by the SchemaManager, so the number of relations is not bounded.
  * Usage: At the beginning of your program, you need to 
  *          initialize a disk.
  *       You don't need to access Disk directly except for 
@@ -20,7 +22,8 @@ import java.util.ArrayList;
  */
 
 public class Disk implements Serializable {
-    private final static int NUM_TRACKS=100;
+    // tracks allocated up front; more are added by allocateTrack()
+    protected final static int NUM_TRACKS=100;
     //Properties are defined based on the Megatron 747 disk sold in 2001.
     
     //One block holds 16384 bytes (although a block only holds 8 fields in here)
@@ -33,6 +36,9 @@ public class Disk implements Serializable {
     private final static double avg_transfer_time_per_block=0.20 * 320;
 
     protected ArrayList<ArrayList<Block>> tracks;
+    // set by the SchemaManager built on top of this disk; needed by 
+    // subclasses that have to rebuild twoTuples from raw bytes
+    protected transient SchemaManager schema_manager;
     private long diskIOs=0;
     private double timer=0;
     
@@ -58,23 +64,73 @@ public class Disk implements Serializable {
       if (j>0) {
     	// tableName fill the last block with invalid twoTuples
         while (!track.get(j-1).isFull()) { 
-          track.get(j-1).appendTuple(new Tuple(t));
+          track.get(j-1).appendTuple(t); // the slot takes a copy
         }
       }
       // fill the gap with invalid twoTuples
       for (int i=j;i<block_index-1;i++) {
         track.add(new Block());
         while (!track.get(i).isFull()) {
-          track.get(i).appendTuple(new Tuple(t));
+          track.get(i).appendTuple(t); // the slot takes a copy
         }
       }
       // fill the last block with only one invalid tuple
       track.add(new Block());
-      track.get(block_index-1).appendTuple(new Tuple(t));
+      track.get(block_index-1).appendTuple(t); // the slot takes a copy
     }
     return true;
   }
 
+  //for internal use: number of blocks on the track; no disk latency
+  protected int getNumOfBlocks(int schema_index) {
+    return tracks.get(schema_index).size();
+  }
+
+  //for internal use: number of valid twoTuples on the track; 
+  // no disk latency
+  protected int getNumOfTuples(int schema_index) {
+    int total_tuples=0;
+    for (Block b : tracks.get(schema_index)) {
+      total_tuples+=b.getNumTuples();
+    }
+    return total_tuples;
+  }
+
+  //for internal use: reads a block for dumping; 
+  // no disk latency and no disk I/O
+  protected Block peekBlock(int schema_index, int block_index) {
+    return tracks.get(schema_index).get(block_index);
+  }
+
+  //for internal use: drops every block of the track; 
+  // no disk latency
+  protected void clearTrack(int schema_index) {
+    tracks.get(schema_index).clear();
+  }
+
+  //for internal use: makes sure the track of 'schema_index' exists;
+  // called by the SchemaManager before it uses a twoSchema index
+  protected void allocateTrack(int schema_index) {
+    while (tracks.size()<=schema_index)
+      tracks.add(new ArrayList<Block>());
+  }
+
+  //for internal use: called once by the SchemaManager built on 
+  // this disk. A persistent disk restores its catalog here
+  protected void attach(SchemaManager schema_manager) {
+    this.schema_manager=schema_manager;
+  }
+
+  //for internal use: called by the SchemaManager whenever a relation
+  // or index is created or deleted. A persistent disk saves its catalog here
+  protected void storeCatalog() {
+  }
+
+  // Flushes and releases the underlying storage, if any.
+  // Call it once before the program exits.
+  public void close() {
+  }
+
   //for internal use: shrink the track to 'block_index'-1; 
   // no disk latency
   protected boolean shrinkTrack(int schema_index, int block_index) {
@@ -100,7 +156,8 @@ public class Disk implements Serializable {
     incrementDiskIOs(1);
     incrementDiskTimer(1);
 
-    return new Block(tracks.get(schema_index).get(block_index));
+    // no copy: Relation stores it in memory through a copy-on-write share
+    return tracks.get(schema_index).get(block_index);
   }
   
   //for internal use
@@ -137,7 +194,7 @@ public class Disk implements Serializable {
     }
     incrementDiskIOs(1);
     incrementDiskTimer(1);
-    tracks.get(schema_index).set(block_index,new Block(b));
+    tracks.get(schema_index).set(block_index,b.share());
     return true;
   }
 
@@ -153,7 +210,7 @@ public class Disk implements Serializable {
     incrementDiskTimer(vb.size());
     int i,j;
     for (i=0,j=block_index;i<vb.size();i++,j++)
-      tracks.get(schema_index).set(j,new Block(vb.get(i)));
+      tracks.get(schema_index).set(j,vb.get(i).share());
     return true;
   }
 
@@ -40,7 +40,7 @@ public class MainMemory implements Serializable {
 	    		  + memory_block_index + " out of memory bound" + "\n");
 	      return false;
 	    }
-	    blocks[memory_block_index]=new Block(b);
+	    blocks[memory_block_index]=b.share(); // copy-on-write
 	    return true;
 	  }
 	  
@@ -60,7 +60,7 @@ public class MainMemory implements Serializable {
 	      return false;
 	    }
 	    for (int i=0;i<vb.size();i++) {
-	      blocks[memory_block_index+i]=new Block(vb.get(i));
+	      blocks[memory_block_index+i]=vb.get(i).share(); // copy-on-write
 	    }
 	    return true;
 	  }	  
@@ -104,7 +104,7 @@ public class MainMemory implements Serializable {
 	      for (ListIterator<Tuple> it=tuples2.listIterator();
 	      		it.hasNext();) {
 	        Tuple t=it.next();
-	        if (!t.isNull()) tuples.add(new Tuple(t));
+	        if (!t.isNull()) tuples.add(t);
 	      }
 	    }
 	    return tuples;
@@ -0,0 +1,480 @@
+package storageManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/* A persistent disk. Every track is kept in its own file under a data
+ *   directory and accessed through a memory mapping (FileChannel.map),
+ *   so relations are not limited by the JVM heap and survive a restart.
+ * The catalog (relation names and their schemas, then the index
+ *   definitions) is saved next to the tracks and restored when a 
+ *   SchemaManager is created on the disk.
+ * The zone maps of the relations are added to the catalog by close(),
+ *   once every block is written, and restored with it; the catalog is
+ *   then saved again without them, so that the zone maps of a run that
+ *   does not close the disk are never taken for the blocks it wrote.
+ * Disk I/Os and the simulated disk latency are counted exactly as in Disk.
+ *
+ * Track file layout:
+ *   header: magic, version, block size, number of blocks (16 bytes,
+ *           padded to TRACK_HEADER_SIZE)
+ *   blocks: fixed size, one after another
+ * Block layout:
+ *   number of tuple slots in use (short), padding (short),
+ *   one valid flag (byte) per slot,
+ *   FIELDS_PER_BLOCK field slots of FIELD_SIZE bytes each, the same
+ *   packing as Block: an int (INT value), then the STR20 length 
+ *   (short, -1 for null) and at most 20 bytes of UTF-8
+ * Usage: Create it instead of Disk and hand it to the SchemaManager.
+ *        Call close() before the program exits.
+ */
+
+public class MappedDisk extends Disk {
+  private final static int MAGIC=0x36303844; // "608D"
+  private final static int VERSION=1;
+  private final static int TRACK_HEADER_SIZE=64;
+  private final static int FIELD_SIZE=26;
+  private final static int MIN_CAPACITY=16; // blocks mapped at least
+  private final static String CATALOG_FILE="catalog.dat";
+
+  private final File directory;
+  private final int block_size;
+  private transient RandomAccessFile[] files;
+  private transient MappedByteBuffer[] maps;
+  private int[] num_blocks;
+  private int[] capacity; // number of blocks currently mapped
+
+  public MappedDisk(File directory) throws IOException {
+    super();
+    this.directory=directory;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("MappedDisk ERROR: cannot create directory "
+    		  + directory);
+    }
+    block_size=4+Config.FIELDS_PER_BLOCK
+    		+Config.FIELDS_PER_BLOCK*FIELD_SIZE;
+    files=new RandomAccessFile[NUM_TRACKS];
+    maps=new MappedByteBuffer[NUM_TRACKS];
+    num_blocks=new int[NUM_TRACKS];
+    capacity=new int[NUM_TRACKS];
+    String[] names=directory.list();
+    if (names==null) return;
+    for (String name : names) {
+      if (!name.matches("track\\d+\\.dat")) continue;
+      int i=Integer.parseInt(name.substring(5,name.length()-4));
+      allocateTrack(i);
+      openTrack(i);
+    }
+  }
+
+  // grows the track tables to hold 'schema_index'; the track file
+  // itself is created on first write
+  @Override
+  protected void allocateTrack(int schema_index) {
+    if (schema_index<files.length) return;
+    int new_length=Math.max(schema_index+1,files.length*2);
+    files=Arrays.copyOf(files,new_length);
+    maps=Arrays.copyOf(maps,new_length);
+    num_blocks=Arrays.copyOf(num_blocks,new_length);
+    capacity=Arrays.copyOf(capacity,new_length);
+  }
+
+  private File trackFile(int schema_index) {
+    return new File(directory,"track" + schema_index + ".dat");
+  }
+
+  // opens (or creates) the file of a track and maps it
+  private void openTrack(int schema_index) {
+    try {
+      RandomAccessFile f=new RandomAccessFile(trackFile(schema_index),"rw");
+      files[schema_index]=f;
+      if (f.length()>=TRACK_HEADER_SIZE) {
+        f.seek(0);
+        if (f.readInt()!=MAGIC || f.readInt()!=VERSION
+        		|| f.readInt()!=block_size) {
+          throw new IOException("incompatible track file "
+        		  + trackFile(schema_index));
+        }
+        num_blocks[schema_index]=f.readInt();
+      } else {
+        num_blocks[schema_index]=0;
+      }
+      map(schema_index,Math.max(MIN_CAPACITY,num_blocks[schema_index]));
+      writeHeader(schema_index);
+    } catch (IOException e) {
+      throw new RuntimeException("MappedDisk ERROR: " + e.getMessage(),e);
+    }
+  }
+
+  private void map(int schema_index, int blocks) throws IOException {
+    maps[schema_index]=files[schema_index].getChannel().map(
+    		FileChannel.MapMode.READ_WRITE,0,
+    		TRACK_HEADER_SIZE+(long)block_size*blocks);
+    capacity[schema_index]=blocks;
+  }
+
+  // makes sure the mapping of the track covers 'blocks' blocks
+  private void ensureCapacity(int schema_index, int blocks) {
+    if (files[schema_index]==null) openTrack(schema_index);
+    if (blocks<=capacity[schema_index]) return;
+    try {
+      map(schema_index,Math.max(blocks,capacity[schema_index]*2));
+    } catch (IOException e) {
+      throw new RuntimeException("MappedDisk ERROR: " + e.getMessage(),e);
+    }
+  }
+
+  private void writeHeader(int schema_index) {
+    MappedByteBuffer m=maps[schema_index];
+    m.putInt(0,MAGIC);
+    m.putInt(4,VERSION);
+    m.putInt(8,block_size);
+    m.putInt(12,num_blocks[schema_index]);
+  }
+
+  private int blockOffset(int block_index) {
+    return TRACK_HEADER_SIZE+block_size*block_index;
+  }
+
+  // writes block 'b' at 'block_index' of the track
+  private void encode(int schema_index, int block_index, Block b) {
+    MappedByteBuffer m=maps[schema_index];
+    int base=blockOffset(block_index);
+    m.putShort(base,(short)b.num_slots);
+    m.putShort(base+2,(short)0);
+    for (int i=0;i<Config.FIELDS_PER_BLOCK;i++) {
+      m.put(base+4+i,(byte)(i<b.num_slots && b.valid[i]?1:0));
+    }
+    int fields_base=base+4+Config.FIELDS_PER_BLOCK;
+    int used=b.num_slots*b.num_fields;
+    for (int i=0;i<used;i++) {
+      int pos=fields_base+i*FIELD_SIZE;
+      // both representations are kept; the twoSchema picks one on read
+      m.putInt(pos,b.ints[i]);
+      m.putShort(pos+4,b.lengths[i]);
+      int len=Math.max(0,(int)b.lengths[i]);
+      for (int k=0;k<len;k++) m.put(pos+6+k,b.chars[i*Block.STR_WIDTH+k]);
+    }
+  }
+
+  // rebuilds the block at 'block_index' of the track
+  private Block decode(int schema_index, int block_index) {
+    MappedByteBuffer m=maps[schema_index];
+    int base=blockOffset(block_index);
+    Block b=new Block();
+    b.num_slots=m.getShort(base);
+    if (b.num_slots==0) return b;
+    b.schema_manager=schema_manager;
+    b.schema_index=schema_index;
+    b.num_fields=schema_manager.schemas[schema_index].getNumOfFields();
+    for (int i=0;i<b.num_slots;i++) b.valid[i]=m.get(base+4+i)!=0;
+    int fields_base=base+4+Config.FIELDS_PER_BLOCK;
+    int used=b.num_slots*b.num_fields;
+    for (int i=0;i<used;i++) {
+      int pos=fields_base+i*FIELD_SIZE;
+      b.ints[i]=m.getInt(pos);
+      b.lengths[i]=m.getShort(pos+4);
+      int len=Math.max(0,(int)b.lengths[i]);
+      for (int k=0;k<len;k++) b.chars[i*Block.STR_WIDTH+k]=m.get(pos+6+k);
+    }
+    return b;
+  }
+
+  // writes a block of 'num_slots' invalid twoTuples
+  private void encodeHoles(int schema_index, int block_index,
+		  					int num_slots) {
+    MappedByteBuffer m=maps[schema_index];
+    int base=blockOffset(block_index);
+    m.putShort(base,(short)num_slots);
+    m.putShort(base+2,(short)0);
+    for (int i=0;i<Config.FIELDS_PER_BLOCK;i++) m.put(base+4+i,(byte)0);
+  }
+
+  private int tuplesPerBlock(int schema_index) {
+    return schema_manager.schemas[schema_index].getTuplesPerBlock();
+  }
+
+  @Override
+  protected boolean extendTrack(int schema_index, int block_index,
+		  						Tuple t) {
+    if (block_index<0) {
+      System.err.print("extendTrack ERROR: block index "
+    		  		+ block_index + " out of disk bound" + "\n");
+      return false;
+    }
+    int j=getNumOfBlocks(schema_index);
+    if (block_index>j) {
+      ensureCapacity(schema_index,block_index);
+      int per_block=tuplesPerBlock(schema_index);
+      MappedByteBuffer m=maps[schema_index];
+      if (j>0) {
+        // fill the last block with invalid twoTuples
+        m.putShort(blockOffset(j-1),(short)per_block);
+      }
+      // fill the gap with invalid twoTuples
+      for (int i=j;i<block_index-1;i++) {
+        encodeHoles(schema_index,i,per_block);
+      }
+      // the last block holds only one invalid tuple
+      encodeHoles(schema_index,block_index-1,1);
+      num_blocks[schema_index]=block_index;
+      writeHeader(schema_index);
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean shrinkTrack(int schema_index, int block_index) {
+    if (block_index<0 || block_index>=getNumOfBlocks(schema_index)) {
+      System.err.print("shrinkTrack ERROR: block index "
+    		  			+ block_index + " out of disk bound" + "\n");
+      return false;
+    }
+    num_blocks[schema_index]=block_index;
+    writeHeader(schema_index);
+    return true;
+  }
+
+  @Override
+  protected int getNumOfBlocks(int schema_index) {
+    return num_blocks[schema_index];
+  }
+
+  @Override
+  protected int getNumOfTuples(int schema_index) {
+    MappedByteBuffer m=maps[schema_index];
+    int total_tuples=0;
+    for (int i=0;i<num_blocks[schema_index];i++) {
+      int base=blockOffset(i);
+      int num_slots=m.getShort(base);
+      for (int k=0;k<num_slots;k++) {
+        if (m.get(base+4+k)!=0) total_tuples++;
+      }
+    }
+    return total_tuples;
+  }
+
+  @Override
+  protected Block peekBlock(int schema_index, int block_index) {
+    return decode(schema_index,block_index);
+  }
+
+  @Override
+  protected void clearTrack(int schema_index) {
+    if (files[schema_index]==null) return;
+    num_blocks[schema_index]=0;
+    writeHeader(schema_index);
+  }
+
+  @Override
+  protected Block getBlock(int schema_index, int block_index) {
+    if (block_index<0 || block_index>=getNumOfBlocks(schema_index))  {
+      System.err.print("getBlock ERROR: block index "
+    		  			+ block_index + " out of disk bound" + "\n");
+      return new Block();
+    }
+    incrementDiskIOs(1);
+    incrementDiskTimer(1);
+    return decode(schema_index,block_index);
+  }
+
+  @Override
+  protected ArrayList<Block> getBlocks(int schema_index,
+		  							int block_index, int num_blocks) {
+    if (block_index<0 || block_index>=getNumOfBlocks(schema_index))  {
+      System.err.print("getBlocks ERROR: block index "
+    		  			+ block_index + " out of disk bound" + "\n");
+      return new ArrayList<Block>();
+    }
+    int i;
+    if ((i=block_index+num_blocks-1)>=getNumOfBlocks(schema_index)) {
+      System.err.print("getBlocks ERROR: num of blocks " +
+      						" out of disk bound: " + i + "\n");
+      return new ArrayList<Block>();
+    }
+    incrementDiskIOs(num_blocks);
+    incrementDiskTimer(num_blocks);
+
+    ArrayList<Block> v=new ArrayList<Block>(num_blocks);
+    for (i=block_index;i<block_index+num_blocks;i++ ){
+      v.add(decode(schema_index,i));
+    }
+    return v;
+  }
+
+  @Override
+  protected boolean setBlock(int schema_index, int block_index,
+		  					Block b) {
+    if (block_index<0)  {
+      System.err.print("setBlock ERROR: block index " + block_index
+    		  			+ " out of disk bound" + "\n");
+      return false;
+    }
+    incrementDiskIOs(1);
+    incrementDiskTimer(1);
+    ensureCapacity(schema_index,block_index+1);
+    encode(schema_index,block_index,b);
+    return true;
+  }
+
+  @Override
+  protected boolean setBlocks(int schema_index, int block_index,
+		  					ArrayList<Block> vb) {
+    if (block_index<0)  {
+      System.err.print("setBlocks ERROR: block index " + block_index
+    		  			+ " out of disk bound" + "\n");
+      return false;
+    }
+    incrementDiskIOs(vb.size());
+    incrementDiskTimer(vb.size());
+    ensureCapacity(schema_index,block_index+vb.size());
+    for (int i=0;i<vb.size();i++)
+      encode(schema_index,block_index+i,vb.get(i));
+    return true;
+  }
+
+  // restores the relations saved by a previous run
+  @Override
+  protected void attach(SchemaManager schema_manager) {
+    super.attach(schema_manager);
+    File catalog=new File(directory,CATALOG_FILE);
+    if (!catalog.exists()) return;
+    boolean zones_restored=false;
+    try (DataInputStream in=new DataInputStream(
+    		new FileInputStream(catalog))) {
+      int offset=in.readInt();
+      int num_relations=in.readInt();
+      for (int i=0;i<num_relations;i++) {
+        String relation_name=in.readUTF();
+        int schema_index=in.readInt();
+        int num_fields=in.readInt();
+        ArrayList<String> field_names=new ArrayList<String>();
+        ArrayList<FieldType> field_types=new ArrayList<FieldType>();
+        for (int j=0;j<num_fields;j++) {
+          field_names.add(in.readUTF());
+          field_types.add(FieldType.valueOf(in.readUTF()));
+        }
+        schema_manager.restoreRelation(relation_name,schema_index,
+        		new Schema(field_names,field_types));
+      }
+      schema_manager.restoreOffset(offset);
+      // a catalog written before index definitions were kept ends here
+      if (in.available()>0) {
+        int num_indexes=in.readInt();
+        for (int i=0;i<num_indexes;i++) {
+          String index_name=in.readUTF();
+          String relation_name=in.readUTF();
+          String field_name=in.readUTF();
+          String kind=in.readUTF();
+          schema_manager.restoreIndex(index_name,relation_name,
+          		field_name,kind);
+        }
+      }
+      // the zone maps, only in a catalog saved by close()
+      if (in.available()>0) {
+        int num_zone_maps=in.readInt();
+        for (int i=0;i<num_zone_maps;i++) {
+          String relation_name=in.readUTF();
+          byte[] bytes=new byte[in.readInt()];
+          in.readFully(bytes);
+          try (ObjectInputStream zone_in=new ObjectInputStream(
+          		new ByteArrayInputStream(bytes))) {
+            schema_manager.restoreZoneMap(relation_name,
+            		(ZoneMap) zone_in.readObject());
+          } catch (ClassNotFoundException e) {
+            System.err.print("MappedDisk ERROR: cannot read zone map of "
+            		+ relation_name + "\n");
+          }
+        }
+        zones_restored=true;
+      }
+    } catch (IOException e) {
+      System.err.print("MappedDisk ERROR: cannot read catalog: "
+    		  + e.getMessage() + "\n");
+    }
+    if (zones_restored) storeCatalog();
+  }
+
+  @Override
+  protected void storeCatalog() {
+    storeCatalog(false);
+  }
+
+  // saves the catalog, with the zone maps if 'with_zones'
+  private void storeCatalog(boolean with_zones) {
+    File tmp=new File(directory,CATALOG_FILE + ".tmp");
+    try (DataOutputStream out=new DataOutputStream(
+    		new FileOutputStream(tmp))) {
+      Map<String,Integer> indexes=schema_manager.getRelationIndexes();
+      out.writeInt(schema_manager.getOffset());
+      out.writeInt(indexes.size());
+      for (Map.Entry<String,Integer> entry : indexes.entrySet()) {
+        Schema s=schema_manager.schemas[entry.getValue()];
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue());
+        out.writeInt(s.getNumOfFields());
+        for (int j=0;j<s.getNumOfFields();j++) {
+          out.writeUTF(s.getFieldName(j));
+          out.writeUTF(s.getFieldType(j).name());
+        }
+      }
+      ArrayList<String[]> definitions=
+    		  schema_manager.getIndexDefinitions();
+      out.writeInt(definitions.size());
+      for (String[] definition : definitions) {
+        for (String value : definition) out.writeUTF(value);
+      }
+      if (with_zones) {
+        out.writeInt(indexes.size());
+        for (Map.Entry<String,Integer> entry : indexes.entrySet()) {
+          ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+          try (ObjectOutputStream zone_out=new ObjectOutputStream(bytes)) {
+            zone_out.writeObject(schema_manager.zone_maps[entry.getValue()]);
+          }
+          out.writeUTF(entry.getKey());
+          out.writeInt(bytes.size());
+          bytes.writeTo(out);
+        }
+      }
+    } catch (IOException e) {
+      System.err.print("MappedDisk ERROR: cannot write catalog: "
+    		  + e.getMessage() + "\n");
+      return;
+    }
+    File catalog=new File(directory,CATALOG_FILE);
+    if (catalog.exists() && !catalog.delete() || !tmp.renameTo(catalog)) {
+      System.err.print("MappedDisk ERROR: cannot replace catalog" + "\n");
+    }
+  }
+
+  // Saves the catalog with the zone maps, the blocks being all written
+  @Override
+  public void close() {
+    if (schema_manager!=null) storeCatalog(true);
+    for (int i=0;i<files.length;i++) {
+      if (files[i]==null) continue;
+      try {
+        maps[i].force();
+        files[i].close();
+      } catch (IOException e) {
+        System.err.print("MappedDisk ERROR: " + e.getMessage() + "\n");
+      }
+      files[i]=null;
+      maps[i]=null;
+    }
+  }
+}
@@ -2,7 +2,6 @@ package storageManager;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.ListIterator;
 
 /* Each relation is assumed to be stored in consecutive disk blocks 
  * 	on a single track of the disk (in clustered way). 
@@ -72,20 +71,20 @@ public class Relation implements Serializable {
 	  //NOTE: Because the operation should not have disk latency,
 	  //      it is implemented in Relation instead of in Disk
 	  public int getNumOfBlocks()  {
-	    ArrayList<Block> data=disk.tracks.get(schema_index);
-	    return data.size();
+	    return disk.getNumOfBlocks(schema_index);
 	  }
 
 	  // returns actual number of Tuples in the relation
 	  //NOTE: Because the operation should not have disk latency,
 	  //      it is implemented in Relation instead of in Disk
 	  public int getNumOfTuples()  {
-	    ArrayList<Block> data=disk.tracks.get(schema_index);
-	    int total_tuples=0;
-	    for (ListIterator<Block> vit=data.listIterator();vit.hasNext();) {
-	      total_tuples+=vit.next().getNumTuples();
-	    }
-	    return total_tuples;
+	    return disk.getNumOfTuples(schema_index);
+	  }
+
+	  // returns the min/max summary of the blocks of the relation
+	  //NOTE: kept with the catalog, reading it has no disk latency
+	  public ZoneMap getZoneMap()  {
+	    return schema_manager.zone_maps[schema_index];
 	  }
 
 	  public boolean isNull()  {
@@ -164,23 +163,23 @@ public class Relation implements Serializable {
 	      return false;
 	    }
 	    // check if the twoSchema is correct
-	    ArrayList<Tuple> v = mem.getBlock(memory_block_index).getTuples();
+	    // (all twoTuples of a block share one twoSchema)
 	    Schema s = schema_manager.schemas[schema_index];
-	    for (int i=0;i<v.size();i++) {
-	      if (!v.get(i).getSchema().equals(s)) {
-	        System.err.print("setBlock ERROR: The tuple at offest " 
-	        		+ i + " of memory block "
-	            + memory_block_index + " has a different twoSchema." + "\n");
-	        return false;
-	      }
+	    if (!mem.getBlock(memory_block_index).hasSchema(s)) {
+	      System.err.print("setBlock ERROR: The twoTuples of memory block "
+	          + memory_block_index + " have a different twoSchema." + "\n");
+	      return false;
 	    }
 
 	    Tuple t=new Tuple(schema_manager,schema_index);
 	    t.invalidate(); //invalidates the tuple
 	    if (disk.extendTrack(schema_index,relation_block_index+1,t)) {
 	      //Actual writing on disk
-	      return disk.setBlock(schema_index,relation_block_index,
+	      if (!disk.setBlock(schema_index,relation_block_index,
+	    		  mem.getBlock(memory_block_index))) return false;
+	      getZoneMap().update(relation_block_index,
 	    		  mem.getBlock(memory_block_index));
+	      return true;
 	    }
 	    return false;
 	  }
@@ -214,17 +213,12 @@ public class Relation implements Serializable {
 
 	    ArrayList<Block> vb=new ArrayList<Block>();
 	    Schema s = schema_manager.schemas[schema_index];
-	    int j,k;
-	    for (j=memory_block_index;j<memory_block_index+num_blocks;j++) {
+	    for (int j=memory_block_index;j<memory_block_index+num_blocks;j++) {
 	      // check if the twoSchema is correct
-	      ArrayList<Tuple> v = mem.getBlock(j).getTuples();
-	      for (k=0;k<v.size();k++) {
-	        if (!v.get(k).getSchema().equals(s)) {
-	          System.err.print("setBlocks ERROR: The tuple at offest " 
-	        		  + k + " of memory block "
-	          + j + " has a different twoSchema." + "\n");
-	          return false;
-	        }
+	      if (!mem.getBlock(j).hasSchema(s)) {
+	        System.err.print("setBlocks ERROR: The twoTuples of memory block "
+	          + j + " have a different twoSchema." + "\n");
+	        return false;
 	      }
 	      vb.add(mem.getBlock(j));
 	    }
@@ -233,7 +227,12 @@ public class Relation implements Serializable {
 	    t.invalidate(); //invalidates the tuple
 	    if (disk.extendTrack(schema_index,relation_block_index+num_blocks,t)) {
 	      //Actual writing on disk
-	      return disk.setBlocks(schema_index,relation_block_index,vb);
+	      if (!disk.setBlocks(schema_index,relation_block_index,vb)) 
+	    	  return false;
+	      for (int j=0;j<num_blocks;j++) {
+	        getZoneMap().update(relation_block_index+j,vb.get(j));
+	      }
+	      return true;
 	    }
 	    return false;
 	  }
@@ -241,22 +240,22 @@ public class Relation implements Serializable {
 	  //delete the block from starting_block_index to the last block
 	  // return false if out of bound
 	  public boolean deleteBlocks(int starting_block_index) {
-	    return disk.shrinkTrack(schema_index,starting_block_index);
+	    if (!disk.shrinkTrack(schema_index,starting_block_index)) 
+	    	return false;
+	    getZoneMap().truncate(starting_block_index);
+	    return true;
 	  }
 
 	  public String toString()  {
 	    String str="";
-	    ArrayList<Block> data=disk.tracks.get(schema_index);
-	    int i=0;
+	    int num_blocks=disk.getNumOfBlocks(schema_index);
 	    str+=("******RELATION DUMP BEGIN******" + "\n");
 	    str+=schema_manager.schemas[schema_index].fieldNamesToString();
 	    str+=("\n");
-	    for (ListIterator<Block> vit=data.listIterator();vit.hasNext();) {
-	      Block b=vit.next();
+	    for (int i=0;i<num_blocks;i++) {
 	      str+=i + ": ";
-	      str+=b.toString();
+	      str+=disk.peekBlock(schema_index,i).toString();
 	      str+=("\n");
-	      i++;
 	    }
 	    str+="******RELATION DUMP END******";
 	    return str;
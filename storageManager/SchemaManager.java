@@ -1,6 +1,10 @@
 package storageManager;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.TreeMap;
 
 /* A twoSchema manager maps a relation name to a relation and
@@ -16,28 +20,66 @@ import java.util.TreeMap;
  *        	relation name and twoSchema
  *        Every relation name must be unique.
  *        Once a relation is created, the twoSchema cannot be changed
+ * The twoSchema manager also keeps the zone map of each relation, 
+ *   the min/max summary of its blocks (see ZoneMap).
+ * The tables of relations and schemas grow on demand, and the 
+ *   twoSchema index of a deleted relation is kept in a free list and
+ *   reused by the next relation created.
+ * It also records the definitions of the secondary indexes built on
+ *   the relations (name, relation, field, kind), so that a persistent
+ *   disk saves them in its catalog with the relations.
  */
 
 public class SchemaManager implements Serializable {
-	  public final static int MAX_NUM_CREATING_RELATIONS = 100;
+	  public final static int INITIAL_NUM_RELATIONS = 100;
 	  private MainMemory mem;
 	  private Disk disk;
 	  private TreeMap<String,Integer> relation_name_to_index;
 	  private Relation[] relations
-	  						=new Relation[MAX_NUM_CREATING_RELATIONS];
+	  						=new Relation[INITIAL_NUM_RELATIONS];
 	  protected Schema[] schemas
-	  						=new Schema[MAX_NUM_CREATING_RELATIONS];
+	  						=new Schema[INITIAL_NUM_RELATIONS];
+	  protected ZoneMap[] zone_maps
+	  						=new ZoneMap[INITIAL_NUM_RELATIONS];
 	  private int offset;
+	  // twoSchema indexes below offset released by deleteRelation
+	  private ArrayDeque<Integer> free_indexes;
+	  // index name -> {index name, relation name, field name, kind}
+	  private TreeMap<String,String[]> index_definitions;
 
 	  public SchemaManager(MainMemory mem, Disk disk) {
 		    this.mem=mem;
 		    this.disk=disk;
 		    offset=0;
-		    for (int i=0;i<MAX_NUM_CREATING_RELATIONS;i++) {
+		    for (int i=0;i<INITIAL_NUM_RELATIONS;i++) {
 		    	relations[i]=new Relation();
 		    	schemas[i]=new Schema();
 		    }
 		    relation_name_to_index=new TreeMap<String,Integer>();
+		    free_indexes=new ArrayDeque<Integer>();
+		    index_definitions=new TreeMap<String,String[]>();
+		    disk.attach(this);
+	  }
+
+	  // makes room for twoSchema index 'schema_index', doubling the tables
+	  private void ensureCapacity(int schema_index) {
+	    if (schema_index<relations.length) return;
+	    int old_length=relations.length;
+	    int new_length=Math.max(schema_index+1,old_length*2);
+	    relations=Arrays.copyOf(relations,new_length);
+	    schemas=Arrays.copyOf(schemas,new_length);
+	    zone_maps=Arrays.copyOf(zone_maps,new_length);
+	    for (int i=old_length;i<new_length;i++) {
+	      relations[i]=new Relation();
+	      schemas[i]=new Schema();
+	    }
+	  }
+
+	  // takes a released twoSchema index if any, or the next unused one
+	  private int allocateIndex() {
+	    if (!free_indexes.isEmpty()) return free_indexes.pop();
+	    ensureCapacity(offset);
+	    return offset++; // increase the boundary
 	  }
 
 	//returns empty twoSchema if the relation is not found
@@ -76,17 +118,15 @@ public class SchemaManager implements Serializable {
 	    		  + "\n");
 	      return null;
 	    }
-	    if (offset==MAX_NUM_CREATING_RELATIONS) {
-	      System.err.print("createRelation ERROR: no more " +
-	      		"relations can be created." + "\n");
-	      return null;
-	    }
-	    relation_name_to_index.put(relation_name,offset);
-	    relations[offset]=new Relation(this,offset,relation_name,
+	    int index=allocateIndex();
+	    disk.allocateTrack(index);
+	    relation_name_to_index.put(relation_name,index);
+	    relations[index]=new Relation(this,index,relation_name,
 	    		mem,disk);
-	    schemas[offset]=new Schema(schema);
-	    offset++; // increase the boundary
-	    return relations[offset-1];
+	    schemas[index]=new Schema(schema);
+	    zone_maps[index]=new ZoneMap(schema);
+	    disk.storeCatalog();
+	    return relations[index];
 	  }
 
 	//returns null if the relation is not found
@@ -111,10 +151,106 @@ public class SchemaManager implements Serializable {
 	    int offset=relation_name_to_index.get(relation_name);
 	    relations[offset].invalidate();
 	    schemas[offset].clear();
+	    zone_maps[offset]=null;
 	    relation_name_to_index.remove(relation_name);
+	    Iterator<String[]> it=index_definitions.values().iterator();
+	    while (it.hasNext()) {
+	      if (it.next()[1].equals(relation_name)) it.remove();
+	    }
+	    disk.clearTrack(offset);
+	    free_indexes.push(offset);
+	    disk.storeCatalog();
+	    return true;
+	  }
+
+	// records a secondary index on field 'field_name' of relation
+	// 'relation_name'; 'kind' names its structure and is kept as given.
+	// The index itself is built and maintained by the caller
+	  public void addIndex(String index_name, String relation_name,
+			  String field_name, String kind) {
+	    if (!relation_name_to_index.containsKey(relation_name)) {
+	      System.err.print("addIndex ERROR: relation " + 
+	    		  relation_name + " does not exist" + "\n");
+	      return;
+	    }
+	    index_definitions.put(index_name,new String[]{index_name,
+	    		relation_name,field_name,kind});
+	    disk.storeCatalog();
+	  }
+
+	//returns false if the index is not found
+	  public boolean removeIndex(String index_name) {
+	    if (index_definitions.remove(index_name)==null) return false;
+	    disk.storeCatalog();
 	    return true;
 	  }
 
+	// returns the recorded indexes, each as {index name, relation name,
+	// field name, kind}; they are dropped with their relation
+	  public ArrayList<String[]> getIndexDefinitions() {
+	    ArrayList<String[]> definitions=new ArrayList<String[]>();
+	    for (String[] definition : index_definitions.values())
+	      definitions.add(definition.clone());
+	    return definitions;
+	  }
+
+	  // For internal use: re-registers an index definition restored
+	  // by a persistent disk
+	  protected void restoreIndex(String index_name, 
+			  String relation_name, String field_name, String kind) {
+	    index_definitions.put(index_name,new String[]{index_name,
+	    		relation_name,field_name,kind});
+	  }
+
+	  // For internal use: the live relation names mapped to their
+	  // twoSchema index, used by a persistent disk to save the catalog
+	  protected TreeMap<String,Integer> getRelationIndexes() {
+	    return relation_name_to_index;
+	  }
+
+	  // For internal use: the boundary of used twoSchema indexes
+	  protected int getOffset() {
+	    return offset;
+	  }
+
+	  // For internal use: re-registers a relation restored by a 
+	  // persistent disk at its original twoSchema index
+	  protected void restoreRelation(String relation_name, 
+			  int schema_index, Schema schema) {
+	    ensureCapacity(schema_index);
+	    disk.allocateTrack(schema_index);
+	    relation_name_to_index.put(relation_name,schema_index);
+	    relations[schema_index]=new Relation(this,schema_index,
+	    		relation_name,mem,disk);
+	    schemas[schema_index]=new Schema(schema);
+	    zone_maps[schema_index]=new ZoneMap(schema);
+	    if (schema_index>=offset) offset=schema_index+1;
+	  }
+
+	  // For internal use: replaces the zone map of a relation by one
+	  // a persistent disk saved, if it still fits the relation; the
+	  // summaries past the blocks of the relation are dropped
+	  protected void restoreZoneMap(String relation_name, 
+			  ZoneMap zone_map) {
+	    if (!relation_name_to_index.containsKey(relation_name)) return;
+	    int schema_index=relation_name_to_index.get(relation_name);
+	    if (zone_map==null || !zone_map.fits(schemas[schema_index])) 
+	    	return;
+	    zone_map.truncate(relations[schema_index].getNumOfBlocks());
+	    zone_maps[schema_index]=zone_map;
+	  }
+
+	  // For internal use: restores the boundary of used indexes;
+	  // the unused indexes below it go back to the free list
+	  protected void restoreOffset(int offset) {
+	    if (offset>this.offset) this.offset=offset;
+	    ensureCapacity(this.offset);
+	    free_indexes.clear();
+	    for (int i=this.offset-1;i>=0;i--) {
+	      if (relations[i].isNull()) free_indexes.push(i);
+	    }
+	  }
+
 	  public String toString()  {
 	    String str="";
 	    if (offset>0) {
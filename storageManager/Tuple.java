@@ -1,8 +1,7 @@
 package storageManager;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.ListIterator;
+import java.nio.charset.StandardCharsets;
 
 /* A tuple equals a record/row in a relation/table. 
  * A tuple contains at most MAX_NUM_OF_FIELDS_IN_RELATION=8 fields. 
@@ -17,13 +16,19 @@ import java.util.ListIterator;
  *          "invalidate" the tuple
  *          by using Tuple::invalidate() or Block::invalidateTuple() .
  *        You are able to get twoSchema of a particular tuple through here.
+ *        getInt(), getBytes(), compareField() and copyField() read the packed 
+ *          fields directly and allocate nothing; prefer them in loops 
+ *          over getField(), which returns a new Field every call.
+ * Storage: a tuple is a view on one slot of a Block. A tuple that 
+ *   is not inside a memory block owns a private one-slot block.
  */
 
 public class Tuple implements Serializable {
 	  protected SchemaManager schema_manager;
 	  protected int schema_index; // points to the twoSchema of the
 	                            // relation which the tuple belongs to
-	  private ArrayList<Field> fields; // stores int and string fields
+	  protected Block block; // stores int and string fields
+	  protected int slot; // the slot of this tuple inside the block
 
 	  // DO NOT use the constructor here. 
 	  // Create an empty tuple only through Schema
@@ -32,37 +37,66 @@ public class Tuple implements Serializable {
 	  protected Tuple() {
 	    this.schema_manager=null;
 	    this.schema_index=-1;
-	    this.fields=new ArrayList<Field>();		
+	    this.block=new Block(1);
+	    this.block.num_slots=1;
+	    this.slot=0;
 	  }
 	  
 	  protected Tuple(Tuple t) {
 	    schema_manager=t.schema_manager;
 	    schema_index=t.schema_index;
-	    //fields=(ArrayList<Field>) DeepCopy.copy(t.fields);
-	    this.fields=new ArrayList<Field>();
-	    ListIterator<Field> lit=t.fields.listIterator();
-	    while (lit.hasNext())
-	      this.fields.add(new Field(lit.next()));
+	    block=new Block(Math.max(1,t.block.num_fields));
+	    block.schema_manager=t.schema_manager;
+	    block.schema_index=t.schema_index;
+	    block.num_fields=t.block.num_fields;
+	    block.num_slots=1;
+	    slot=0;
+	    block.valid[0]=t.block.valid[t.slot];
+	    int from=t.slot*t.block.num_fields;
+	    int n=t.block.num_fields;
+	    System.arraycopy(t.block.ints,from,block.ints,0,n);
+	    System.arraycopy(t.block.lengths,from,block.lengths,0,n);
+	    System.arraycopy(t.block.chars,from*Block.STR_WIDTH,block.chars,0,
+	    		n*Block.STR_WIDTH);
+	  }
+
+	  // for internal use: a view on slot 'slot' of block b
+	  protected Tuple(Block b, int slot) {
+	    this.schema_manager=b.schema_manager;
+	    this.schema_index=b.schema_index;
+	    this.block=b;
+	    this.slot=slot;
 	  }
 
 	  protected Tuple(SchemaManager schema_manager, int schema_index){
 	    this.schema_manager=schema_manager;
 	    this.schema_index=schema_index;
-	    this.fields=new ArrayList<Field>();
+	    this.slot=0;
+	    int numberOfFields=0;
 	    if (this.schema_manager!=null) {
 	      Schema schema=schema_manager.schemas[schema_index];
-	      Field f;
-	      int numberOfFields=schema.getNumOfFields();
-	      for (int i=0;i<numberOfFields;i++) {
-	        fields.add(f=new Field());
-	        f.type=schema.getFieldType(i);
-	      }
+	      numberOfFields=schema.getNumOfFields();
+	    }
+	    block=new Block(Math.max(1,numberOfFields));
+	    block.schema_manager=schema_manager;
+	    block.schema_index=schema_index;
+	    block.num_fields=numberOfFields;
+	    block.num_slots=1;
+	    block.valid[0]=numberOfFields>0;
+	    for (int i=0;i<numberOfFields;i++) {
+	      block.ints[i]=Integer.MIN_VALUE;
+	      block.lengths[i]=-1;
 	    }
 	  }
+
+	  // for internal use: position of the field in the block storage
+	  private int index(int offset) {
+	    return slot*block.num_fields+offset;
+	  }
 	
 	//returns true if the tuple is invalid
 	  public boolean isNull()  {
-	    return fields.size()==0;
+	    return !block.valid[slot];
 	  }
 	// returns the twoSchema of the tuple
 	  public Schema getSchema()  {
@@ -83,7 +117,26 @@ public class Tuple implements Serializable {
 	
 	// invalidates the tuple
 	  public void invalidate() {
-	    fields.clear();
+	    block.ensureOwned();
+	    block.valid[slot]=false;
+	  }
+
+	  // for internal use: stores s as a STR20 field
+	  private void putString(int offset, String s) {
+	    block.ensureOwned();
+	    int i=index(offset);
+	    if (s==null) {
+	      block.lengths[i]=-1;
+	      return;
+	    }
+	    byte[] bytes=s.getBytes(StandardCharsets.UTF_8);
+	    // keep at most STR_WIDTH bytes without splitting a character
+	    while (bytes.length>Block.STR_WIDTH) {
+	      s=s.substring(0,s.length()-1);
+	      bytes=s.getBytes(StandardCharsets.UTF_8);
+	    }
+	    System.arraycopy(bytes,0,block.chars,i*Block.STR_WIDTH,bytes.length);
+	    block.lengths[i]=(short)bytes.length;
 	  }
 	
 	// returns false if the type is wrong or out of bound
@@ -96,7 +149,7 @@ public class Tuple implements Serializable {
 	      System.err.print("setField ERROR: field type not FieldType.STR20!"+"\n");
 	      return false;
 	    } else {
-	      fields.get(offset).str=s;
+	      putString(offset,s);
 	    }
 	    return true;
 	  }
@@ -111,7 +164,8 @@ public class Tuple implements Serializable {
 	      System.err.print("setField ERROR: field type not FieldType.INT!"+"\n");
 	      return false;
 	    } else {
-	      fields.get(offset).integer=i;
+	      block.ensureOwned();
+	      block.ints[index(offset)]=i;
 	    }
 	    return true;
 	  }
@@ -128,7 +182,7 @@ public class Tuple implements Serializable {
 	      System.err.print("setField ERROR: field type not FieldType.STR20!"+"\n");
 	      return false;
 	    } else {
-	      fields.get(offset).str=s;
+	      putString(offset,s);
 	    }
 	    return true;
 	  }
@@ -145,15 +199,117 @@ public class Tuple implements Serializable {
 	      System.err.print("setField ERROR: field type not FieldType.INT!"+"\n");
 	      return false;
 	    } else {
-	      fields.get(offset).integer=i;
+	      block.ensureOwned();
+	      block.ints[index(offset)]=i;
+	    }
+	    return true;
+	  }
+
+	  // copies the field at from_offset of tuple 'from' into the field
+	  // at 'offset' without building Field objects;
+	  // returns false if the types differ or an offset is out of bound
+	  public boolean copyField(int offset, Tuple from, int from_offset) {
+	    if (offset<0 || offset>=block.num_fields 
+	    		|| from_offset<0 || from_offset>=from.block.num_fields) {
+	      System.err.print("copyField ERROR: offset is out of bound!"+"\n");
+	      return false;
+	    }
+	    FieldType type=schema_manager.schemas[schema_index].getFieldType(offset);
+	    if (type!=from.schema_manager.schemas[from.schema_index]
+	    		.getFieldType(from_offset)) {
+	      System.err.print("copyField ERROR: field types do not match!"+"\n");
+	      return false;
+	    }
+	    block.ensureOwned();
+	    int i=index(offset);
+	    int j=from.index(from_offset);
+	    if (type==FieldType.INT) {
+	      block.ints[i]=from.block.ints[j];
+	    } else {
+	      block.lengths[i]=from.block.lengths[j];
+	      System.arraycopy(from.block.chars,j*Block.STR_WIDTH,
+	    		  block.chars,i*Block.STR_WIDTH,Block.STR_WIDTH);
 	    }
 	    return true;
 	  }
+
+	  // returns the INT field at the offset without allocation;
+	  // the offset and type are not checked
+	  public int getInt(int offset) {
+	    return block.ints[index(offset)];
+	  }
+
+	  // returns true if the field at the offset is NULL: Integer.MIN_VALUE
+	  // for INT, not set for STR20; the offset is not checked
+	  public boolean isNullField(int offset) {
+	    int i=index(offset);
+	    if (schema_manager.schemas[schema_index].getFieldType(offset)
+	    		==FieldType.INT) {
+	      return block.ints[i]==Integer.MIN_VALUE;
+	    }
+	    return block.lengths[i]<0;
+	  }
+
+	  // returns true if the field at the offset holds NULL: as
+	  // isNullField(), or for STR20 the value NULL, stored as "null"
+	  // by INSERT and LOAD DATA; the offset is not checked
+	  public boolean isNullValue(int offset) {
+	    if (isNullField(offset)) return true;
+	    if (schema_manager.schemas[schema_index].getFieldType(offset)
+	    		==FieldType.INT) return false;
+	    int i=index(offset);
+	    if (block.lengths[i]!=4) return false;
+	    String value=new String(block.chars,i*Block.STR_WIDTH,4,
+	    		StandardCharsets.UTF_8);
+	    return value.equalsIgnoreCase("null");
+	  }
+
+	  // returns the STR20 field at the offset; null if not set
+	  public String getString(int offset) {
+	    int i=index(offset);
+	    if (block.lengths[i]<0) return null;
+	    return new String(block.chars,i*Block.STR_WIDTH,block.lengths[i],
+	    		StandardCharsets.UTF_8);
+	  }
+
+	  // copies the bytes of the STR20 field at the offset into dest from
+	  // dest_pos without allocation; returns the length, -1 if not set
+	  public int getBytes(int offset, byte[] dest, int dest_pos) {
+	    int i=index(offset);
+	    int len=block.lengths[i];
+	    if (len>0) System.arraycopy(block.chars,i*Block.STR_WIDTH,dest,dest_pos,len);
+	    return len;
+	  }
+
+	  // compares the field at 'offset' with the field at other_offset of
+	  // 'other' without allocation: INT numerically, STR20 by bytes with
+	  // null before any string; both fields must have the same type
+	  public int compareField(int offset, Tuple other, int other_offset) {
+	    int i=index(offset);
+	    int j=other.index(other_offset);
+	    if (schema_manager.schemas[schema_index].getFieldType(offset)
+	    		==FieldType.INT) {
+	      return Integer.compare(block.ints[i],other.block.ints[j]);
+	    }
+	    int len1=block.lengths[i];
+	    int len2=other.block.lengths[j];
+	    if (len1<0 || len2<0) return Integer.compare(len1,len2);
+	    byte[] c1=block.chars;
+	    byte[] c2=other.block.chars;
+	    int p1=i*Block.STR_WIDTH;
+	    int p2=j*Block.STR_WIDTH;
+	    int n=Math.min(len1,len2);
+	    for (int k=0;k<n;k++) {
+	      int d=(c1[p1+k]&0xff)-(c2[p2+k]&0xff);
+	      if (d!=0) return d;
+	    }
+	    return len1-len2;
+	  }
 	
 	// returns default field if out of bound
 	  public Field getField(int offset) {
-	    if(offset<fields.size() && offset>=0){
-	      return new Field(fields.get(offset));
+	    if(!isNull() && offset<block.num_fields && offset>=0){
+	      return toField(offset);
 	    } else {
 	      System.err.print("getField ERROR: offset "+offset+" is out of bound!"+"\n");
 	      return new Field();
@@ -164,13 +320,22 @@ public class Tuple implements Serializable {
 	  public Field getField(String field_name) {
 	    Schema schema=schema_manager.schemas[schema_index];
 	    int offset=schema.getFieldOffset(field_name);
-	    if(offset<fields.size() && offset>=0){
-	      return new Field(fields.get(offset));
+	    if(!isNull() && offset<block.num_fields && offset>=0){
+	      return toField(offset);
 	    } else {
-	      System.err.print("fuck getField ERROR: offset "+offset+" is out of bound!"+"\n");
+	      System.err.print("getField ERROR: offset "+offset+" is out of bound!"+"\n");
 	      return new Field();
 	    }
 	  }
+
+	  // for internal use: builds a Field from the packed storage
+	  private Field toField(int offset) {
+	    Field f=new Field();
+	    f.type=schema_manager.schemas[schema_index].getFieldType(offset);
+	    if (f.type==FieldType.INT) f.integer=getInt(offset);
+	    else f.str=getString(offset);
+	    return f;
+	  }
 	
 	  public String toString(boolean print_field_names)  {
 	    String str="";
@@ -179,8 +344,9 @@ public class Tuple implements Serializable {
 	      str+=schema.fieldNamesToString();
 	      str+=("\n");
 	    }
-	    for (int i=0;i<fields.size();i++) {
-	      str+=fields.get(i)+"\t";
+	    if (isNull()) return str;
+	    for (int i=0;i<block.num_fields;i++) {
+	      str+=toField(i)+"\t";
 	    }
 	    return str;
 	  }
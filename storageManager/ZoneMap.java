@@ -0,0 +1,133 @@
+package storageManager;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/* A zone map summarizes each disk block of a relation: the number of
+ * 	valid twoTuples and, for each field, the smallest and the largest
+ * 	value in the block.
+ * INT values compare as integers, NULL being Integer.MIN_VALUE;
+ * 	STR20 values compare lowercased, NULL as "null", the way the
+ * 	WHERE clause sees them.
+ * The zone maps are kept by the twoSchema manager with the catalog and
+ * 	updated each time blocks are written by Relation::setBlock() or
+ * 	Relation::setBlocks(). A persistent disk saves them when it is
+ * 	closed and restores them with the relations. A block not written
+ * 	that way, e.g. one of a disk not closed, has no summary and may
+ * 	hold any value until it is written again.
+ * Usage: Get the zone map of a relation through Relation::getZoneMap().
+ *        Reading a zone map has no disk latency.
+ */
+
+public class ZoneMap implements Serializable {
+	  // the summary of one block
+	  private static class Zone implements Serializable {
+		    int num_tuples;
+		    int[] int_min;
+		    int[] int_max;
+		    String[] str_min;
+		    String[] str_max;
+	  }
+
+	  private FieldType[] field_types;
+	  private ArrayList<Zone> zones; // null for a block without summary
+
+	  protected ZoneMap(Schema schema) {
+	    field_types=new FieldType[schema.getNumOfFields()];
+	    for (int i=0;i<field_types.length;i++) {
+	      field_types[i]=schema.getFieldType(i);
+	    }
+	    zones=new ArrayList<Zone>();
+	  }
+
+	// for internal use: summarizes the block written at block_index
+	  protected void update(int block_index, Block b) {
+	    while (zones.size()<=block_index) zones.add(null);
+	    int num_fields=field_types.length;
+	    Zone z=new Zone();
+	    z.int_min=new int[num_fields];
+	    z.int_max=new int[num_fields];
+	    z.str_min=new String[num_fields];
+	    z.str_max=new String[num_fields];
+	    for (int i=0;i<b.num_slots;i++) {
+	      if (!b.valid[i]) continue;
+	      for (int j=0;j<num_fields;j++) {
+	        int s=i*num_fields+j;
+	        if (field_types[j]==FieldType.INT) {
+	          int v=b.ints[s];
+	          if (z.num_tuples==0 || v<z.int_min[j]) z.int_min[j]=v;
+	          if (z.num_tuples==0 || v>z.int_max[j]) z.int_max[j]=v;
+	        } else {
+	          String v=(b.lengths[s]<0) ? "null" : lowercase(new String(
+	        		  b.chars,s*Block.STR_WIDTH,b.lengths[s],
+	        		  StandardCharsets.UTF_8));
+	          if (z.num_tuples==0 || v.compareTo(z.str_min[j])<0)
+	        	  z.str_min[j]=v;
+	          if (z.num_tuples==0 || v.compareTo(z.str_max[j])>0)
+	        	  z.str_max[j]=v;
+	        }
+	      }
+	      z.num_tuples++;
+	    }
+	    zones.set(block_index,z);
+	  }
+
+	// for internal use: returns true if the zone map has the field
+	//  types of the twoSchema
+	  protected boolean fits(Schema schema) {
+	    if (field_types.length!=schema.getNumOfFields()) return false;
+	    for (int i=0;i<field_types.length;i++) {
+	      if (field_types[i]!=schema.getFieldType(i)) return false;
+	    }
+	    return true;
+	  }
+
+	// for internal use: forgets the blocks from block_index on
+	  protected void truncate(int block_index) {
+	    while (zones.size()>Math.max(0,block_index)) {
+	      zones.remove(zones.size()-1);
+	    }
+	  }
+
+	  // returns true if the block has a summary
+	  public boolean isKnown(int block_index) {
+	    return block_index>=0 && block_index<zones.size()
+	    		&& zones.get(block_index)!=null;
+	  }
+
+	  // returns the number of valid twoTuples in the block,
+	  //  -1 if the block has no summary
+	  public int getNumOfTuples(int block_index) {
+	    if (!isKnown(block_index)) return -1;
+	    return zones.get(block_index).num_tuples;
+	  }
+
+	  // returns false only if no value of the INT field in the block
+	  //  lies in [low, high]
+	  public boolean mayHaveInt(int block_index, int field_offset,
+			  long low, long high) {
+	    if (!isKnown(block_index)) return true;
+	    Zone z=zones.get(block_index);
+	    if (z.num_tuples==0) return false;
+	    return z.int_max[field_offset]>=low && z.int_min[field_offset]<=high;
+	  }
+
+	  // returns false only if no lowercased value of the STR20 field
+	  //  in the block is equal to value
+	  public boolean mayHaveString(int block_index, int field_offset,
+			  String value) {
+	    if (!isKnown(block_index)) return true;
+	    Zone z=zones.get(block_index);
+	    if (z.num_tuples==0) return false;
+	    return z.str_min[field_offset].compareTo(value)<=0
+	    		&& z.str_max[field_offset].compareTo(value)>=0;
+	  }
+
+	  // lowercased character by character, as the WHERE clause compares
+	  private static String lowercase(String s) {
+	    char[] c=s.toCharArray();
+	    for (int i=0;i<c.length;i++) c[i]=Character.toLowerCase(c[i]);
+	    return new String(c);
+	  }
+}